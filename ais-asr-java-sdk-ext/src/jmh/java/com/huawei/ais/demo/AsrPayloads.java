@@ -0,0 +1,45 @@
+package com.huawei.ais.demo;
+
+import java.util.Random;
+
+/**
+ * 生成基准测试用的识别结果，格式与service.asr.format=2（带时间戳）的长语音识别结果一致
+ */
+public class AsrPayloads {
+
+    private static final String[] PHRASES = {"今天天气不错", "我们下午三点开会", "请把报表发给我",
+            "这个方案还需要再讨论一下", "好的没问题", "麻烦确认一下订单号", "谢谢大家"};
+
+    private AsrPayloads() {
+    }
+
+    /**
+     * @param sentences 句子数，每句约60字节，50万句约30MB
+     * @return 识别结果的words字段
+     */
+    public static String words(int sentences) {
+        Random random = new Random(sentences);
+        StringBuilder words = new StringBuilder(sentences * 64);
+        long startMillis = 0;
+        for (int i = 0; i < sentences; i++) {
+            long endMillis = startMillis + 800 + random.nextInt(4000);
+            words.append('[').append(timestamp(startMillis)).append(',').append(timestamp(endMillis)).append("] ")
+                    .append(PHRASES[random.nextInt(PHRASES.length)]).append('。').append('\n');
+            startMillis = endMillis;
+        }
+        return words.toString();
+    }
+
+    /**
+     * @return 查询任务结果接口的完整响应体，结果包在result节点中
+     */
+    public static String getResultJson(int sentences) {
+        return "{\"result\":{\"status_code\":2,\"status_msg\":\"Finished\",\"words\":"
+                + HttpJsonDataUtils.objectToJsonString(words(sentences)) + "}}";
+    }
+
+    private static String timestamp(long millis) {
+        return String.format("%02d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60,
+                millis % 1000);
+    }
+}
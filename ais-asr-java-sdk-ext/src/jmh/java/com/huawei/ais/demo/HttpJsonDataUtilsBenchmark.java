@@ -0,0 +1,57 @@
+package com.huawei.ais.demo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.huawei.ais.demo.asr.model.GetResultRes;
+
+/**
+ * 解析查询任务结果的响应：HttpJsonDataUtils.getResponseObject(response, GetResultRes.class, "result")
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class HttpJsonDataUtilsBenchmark {
+
+    /**
+     * 识别结果的句子数，约60字节/句：10句不到1KB，50万句约30MB
+     */
+    @Param({"10", "1000", "100000", "500000"})
+    public int sentences;
+
+    private HttpResponse response;
+
+    @Setup
+    public void setUp() {
+        byte[] body = AsrPayloads.getResultJson(sentences).getBytes(StandardCharsets.UTF_8);
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        //ByteArrayEntity可重复读取，同一个响应可以在每次调用中重新解析
+        response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    @Benchmark
+    public GetResultRes getResponseObjectWithRoot() throws IOException {
+        return HttpJsonDataUtils.getResponseObject(response, GetResultRes.class, "result");
+    }
+}
@@ -0,0 +1,115 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 失败回调重试的调度开销<p/>
+ * 原先的FailedCallbackTasksScanner每次扫描全部失败任务，已由按到期时间排序的CallbackRetryQueue取代。
+ * 此基准在队列中积压pending个尚未到期的重试，测量一个到期重试从入队到被提交给回调线程池的耗时，
+ * 用来确认调度开销不随积压数量线性增长
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CallbackRetryQueueBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int pending;
+
+    private CountingExecutor callbackExecutors;
+    private CallbackRetryQueue callbackRetryQueue;
+    private CallbackRetryQueue.RetryRecord dueRecord;
+
+    @Setup
+    public void setUp() {
+        //每次调度都会打印info日志，基准中只测量调度本身
+        Logger.getLogger(CallbackRetryQueue.class).setLevel(Level.WARN);
+
+        callbackExecutors = new CountingExecutor();
+        callbackRetryQueue = new CallbackRetryQueue(callbackExecutors);
+        CallbackTask.CachedNotification notification = CallbackTask.CachedNotification.of("{\"job_id\":\"1\"}");
+        for (int i = 0; i < pending; i++) {
+            String callbackUrl = "http://callback-" + (i % 100) + ".example.com/asr";
+            CallbackTask task = new CallbackTask("a.wav", "job-" + i, callbackUrl, null);
+            callbackRetryQueue.schedule(new CallbackRetryQueue.RetryRecord(task, callbackUrl, 0, notification),
+                    TimeUnit.HOURS.toMillis(1));
+        }
+        String dueUrl = "http://due.example.com/asr";
+        dueRecord = new CallbackRetryQueue.RetryRecord(new CallbackTask("b.wav", "job-due", dueUrl, null), dueUrl, 0,
+                notification);
+    }
+
+    @TearDown
+    public void tearDown() {
+        callbackRetryQueue.destroy();
+    }
+
+    @Benchmark
+    public long dispatchDueRetry() {
+        long before = callbackExecutors.submitted;
+        callbackRetryQueue.schedule(dueRecord, 0);
+        while (callbackExecutors.submitted == before) {
+            //等待分发线程取出到期的重试
+        }
+        callbackRetryQueue.attemptDone(dueRecord);
+        return callbackExecutors.submitted;
+    }
+
+    /**
+     * 只计数不执行的线程池，排除回调本身的开销
+     */
+    private static class CountingExecutor extends AbstractExecutorService {
+
+        private volatile long submitted;
+
+        @Override
+        public void execute(Runnable command) {
+            submitted++;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huawei.ais.demo.AsrPayloads;
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.model.GetResultRes;
+
+/**
+ * 把识别结果包装成回调内容并序列化：一次性生成完整json的objectToHttpEntity，
+ * 与回调实际使用的、由JsonGenerator直接写入连接的objectToStreamingHttpEntity（可选gzip）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class NotificationBenchmark {
+
+    @Param({"10", "1000", "100000", "500000"})
+    public int sentences;
+
+    private GetResultRes result;
+
+    @Setup
+    public void setUp() throws IOException {
+        result = new ObjectMapper().readerFor(GetResultRes.class).withRootName("result")
+                .readValue(AsrPayloads.getResultJson(sentences));
+    }
+
+    @Benchmark
+    public HttpEntity objectToHttpEntity() {
+        return HttpJsonDataUtils.objectToHttpEntity(new CallbackTask.Notification("job-1", result));
+    }
+
+    @Benchmark
+    public long streamingEntity() throws IOException {
+        return writeTo(HttpJsonDataUtils.objectToStreamingHttpEntity(
+                new CallbackTask.Notification("job-1", result), false));
+    }
+
+    @Benchmark
+    public long streamingGzipEntity() throws IOException {
+        return writeTo(HttpJsonDataUtils.objectToStreamingHttpEntity(
+                new CallbackTask.Notification("job-1", result), true));
+    }
+
+    /**
+     * @return 写入连接的字节数
+     */
+    private static long writeTo(HttpEntity entity) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        entity.writeTo(out);
+        return out.getByteCount();
+    }
+}
@@ -0,0 +1,39 @@
+package com.huawei.ais.demo.asr.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JobStatus.valueFrom，每次查询任务状态都会调用
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JobStatusBenchmark {
+
+    //轮询中最常见的是RUNNING，FAILED排在最后
+    public int running = 1;
+    public int failed = -1;
+
+    @Benchmark
+    public JobStatus valueFromRunning() {
+        return JobStatus.valueFrom(running);
+    }
+
+    @Benchmark
+    public JobStatus valueFromFailed() {
+        return JobStatus.valueFrom(failed);
+    }
+}
@@ -1,6 +1,17 @@
 package com.huawei.ais.demo;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -8,14 +19,17 @@ import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * http数据转换工具，适用于请求响应均为Json格式的情况
@@ -24,6 +38,9 @@ public class HttpJsonDataUtils {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final ConcurrentMap<String, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
     public static String requestToString(HttpRequestBase httpReq) throws ParseException, IOException {
         final StringBuilder builder = new StringBuilder("\n")
                 .append(httpReq.getMethod())
@@ -64,22 +81,39 @@ public class HttpJsonDataUtils {
         if (!isOKResponded(response)) {
             throw new IllegalArgumentException("the response status is not '200 OK'");
         }
-        return objectMapper.readValue(EntityUtils.toString(response.getEntity(),
-                ContentType.APPLICATION_JSON.getCharset()), responseType);
+        return readEntity(readerFor(responseType, null), response.getEntity());
     }
 
+    /**
+     * 从响应体的数据流中直接解析对象，不先把整个响应体读成字符串；同一类型与根节点的ObjectReader只创建一次
+     *
+     * @param response     响应
+     * @param responseType 对象类型
+     * @param jsonRootName 对象所在的根节点名称
+     */
     public static <T> T getResponseObject(HttpResponse response, Class<T> responseType, String jsonRootName)
             throws IOException {
         if (!isOKResponded(response)) {
             throw new IllegalArgumentException("the response status code is not in [200, 300)!");
         }
-        ObjectReader reader = objectMapper.readerFor(responseType).withRootName(jsonRootName);
-        return reader.readValue(EntityUtils.toString(response.getEntity(), ContentType.APPLICATION_JSON.getCharset()));
+        return readEntity(readerFor(responseType, jsonRootName), response.getEntity());
     }
 
     public static String objectToJsonString(Object object) {
         try {
-            return objectMapper.writeValueAsString(object);
+            return object == null ? "null" : writerFor(object.getClass()).writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 直接序列化为UTF-8字节，不经过中间的字符串
+     */
+    public static byte[] objectToJsonBytes(Object object) {
+        try {
+            return object == null ? "null".getBytes(StandardCharsets.UTF_8)
+                    : writerFor(object.getClass()).writeValueAsBytes(object);
         } catch (JsonProcessingException e) {
             throw new IllegalStateException(e);
         }
@@ -115,10 +149,107 @@ public class HttpJsonDataUtils {
     }
 
     public static HttpEntity objectToHttpEntity(Object object) {
-        try {
-            return new StringEntity(objectMapper.writeValueAsString(object), ContentType.APPLICATION_JSON.getCharset());
-        } catch (JsonProcessingException e) {
-            throw new IllegalStateException(e);
+        return new StringEntity(objectToJsonString(object), ContentType.APPLICATION_JSON.getCharset());
+    }
+
+    /**
+     * 发送时才序列化的请求体，由JsonGenerator直接写入连接（分块传输），不在内存中生成完整的json；
+     * 每次发送重新序列化，可重复发送
+     *
+     * @param object 要序列化的对象
+     * @param gzip   是否以gzip压缩，压缩时设置Content-Encoding: gzip
+     */
+    public static HttpEntity objectToStreamingHttpEntity(Object object, boolean gzip) {
+        return new JsonStreamingEntity(object, gzip);
+    }
+
+    private static ObjectReader readerFor(Class<?> type, String jsonRootName) {
+        String key = jsonRootName == null ? type.getName() : type.getName() + "/" + jsonRootName;
+        ObjectReader reader = readers.get(key);
+        if (reader == null) {
+            reader = jsonRootName == null ? objectMapper.readerFor(type)
+                    : objectMapper.readerFor(type).withRootName(jsonRootName);
+            readers.putIfAbsent(key, reader);
+        }
+        return reader;
+    }
+
+    private static ObjectWriter writerFor(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = objectMapper.writerFor(type);
+            writers.putIfAbsent(type, writer);
+        }
+        return writer;
+    }
+
+    private static <T> T readEntity(ObjectReader reader, HttpEntity entity) throws IOException {
+        if (entity == null) {
+            throw new IllegalArgumentException("the response has no entity!");
+        }
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        try (InputStream content = entity.getContent()) {
+            //未声明字符集或为UTF-8时交给Jackson按字节解析，省去解码成字符的开销
+            if (charset == null || StandardCharsets.UTF_8.equals(charset)) {
+                return reader.readValue(content);
+            }
+            return reader.readValue(new InputStreamReader(content, charset));
+        }
+    }
+
+    private static class JsonStreamingEntity extends AbstractHttpEntity {
+
+        private final Object object;
+        private final boolean gzip;
+
+        private JsonStreamingEntity(Object object, boolean gzip) {
+            this.object = object;
+            this.gzip = gzip;
+            setContentType(ContentType.APPLICATION_JSON.toString());
+            setChunked(true);
+            if (gzip) {
+                setContentEncoding("gzip");
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            writeTo(buffer);
+            return new ByteArrayInputStream(buffer.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            ObjectWriter writer = (object == null ? objectMapper.writer() : writerFor(object.getClass()))
+                    .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (!gzip) {
+                writer.writeValue(outStream, object);
+                return;
+            }
+            //识别结果重复度高，最快的压缩级别已能把体积压到几分之一，CPU开销只有默认级别的一小部分
+            GZIPOutputStream gzipStream = new GZIPOutputStream(outStream, 8192) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            writer.writeValue(gzipStream, object);
+            gzipStream.finish();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
         }
     }
 
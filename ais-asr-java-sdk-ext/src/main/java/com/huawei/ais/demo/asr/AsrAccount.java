@@ -0,0 +1,65 @@
+package com.huawei.ais.demo.asr;
+
+/**
+ * 一组可用于提交识别任务的账号、区域和桶，配置多组时按负载在它们之间分配任务
+ */
+public class AsrAccount {
+
+    private final String name;
+    private final String ak;
+    private final String sk;
+    private final String region;
+    private final String asrEndpoint;
+    private final String obsEndpoint;
+    private final String obsBucketName;
+
+    public AsrAccount(String name, String ak, String sk, String region, String asrEndpoint, String obsEndpoint,
+                      String obsBucketName) {
+        this.name = name;
+        this.ak = ak;
+        this.sk = sk;
+        this.region = region;
+        this.asrEndpoint = asrEndpoint;
+        this.obsEndpoint = obsEndpoint;
+        this.obsBucketName = obsBucketName;
+    }
+
+    /**
+     * @return 账号名称，记录在任务日志中，重启后用它找回提交任务的账号
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getAk() {
+        return ak;
+    }
+
+    public String getSk() {
+        return sk;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public String getAsrEndpoint() {
+        return asrEndpoint;
+    }
+
+    /**
+     * @return obs服务地址，为空时使用region对应的公有云地址
+     */
+    public String getObsEndpoint() {
+        return obsEndpoint;
+    }
+
+    public String getObsBucketName() {
+        return obsBucketName;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + region + ", " + asrEndpoint + ")";
+    }
+}
@@ -64,4 +64,25 @@ public class CommonUtils {
             }
         };
     }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池，需要Java 21及以上；通过反射调用，源码仍兼容Java 8
+     *
+     * @param threadNamePrefix 线程名称前缀，后接从0开始的序号
+     * @return 线程池，当前JVM不支持虚拟线程时返回null
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn(String.format("Virtual threads are not supported by java %s.",
+                    System.getProperty("java.version")));
+            return null;
+        }
+    }
 }
@@ -1,8 +1,13 @@
 package com.huawei.ais.demo.asr;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.configuration2.CompositeConfiguration;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.SystemConfiguration;
 import org.apache.commons.configuration2.builder.fluent.Configurations;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 
@@ -17,6 +22,7 @@ public class Config {
     private String asrEndpoint;
     private int asrFormatType;
     private int queryInterval;
+    private int queryPoolSize;
     private int connectionTimeout;
     private int connectionRequestTimeout;
     private int socketTimeout;
@@ -34,6 +40,95 @@ public class Config {
     private int retryCallbackTimes;
     private int retryCallbackInterval;
 
+    private boolean downloadStreaming;
+    private int downloadMemoryBufferSize;
+
+    private int asyncIoThreadCount;
+    private int asyncMaxConnections;
+
+    private int obsPartSizeInMB;
+    private int obsPartParallelism;
+    private int obsPartRetryTimes;
+    private int obsPartPoolSize;
+    private int obsPartPoolQueueSize;
+    private String obsCheckpointDir;
+    private int obsCheckpointExpiry;
+
+    private boolean dedupEnabled;
+    private int dedupCacheSize;
+    private long dedupCacheTtl;
+
+    private double retryCallbackMultiplier;
+    private int retryCallbackMaxInterval;
+    private double retryCallbackJitter;
+    private int retryCallbackMaxPerEndpoint;
+
+    private int callbackMaxConnections;
+    private int callbackMaxConnectionsPerRoute;
+    private int callbackKeepAlive;
+
+    private boolean callbackBatchEnabled;
+    private int callbackBatchSize;
+    private int callbackBatchLinger;
+
+    private String journalDir;
+    private int journalSyncInterval;
+    private int journalCompactThreshold;
+
+    private double asrSubmitQps;
+    private double asrQueryQps;
+
+    private boolean queryAdaptiveEnabled;
+    private int queryMinInterval;
+    private int queryMaxInterval;
+    private double queryBackoffMultiplier;
+    private int queryPriorMillisPerMb;
+
+    private boolean metricsJmxEnabled;
+    private int metricsReportInterval;
+
+    private String obsEndpoint;
+
+    private boolean callbackGzipEnabled;
+
+    private boolean virtualThreadsEnabled;
+    private int virtualMaxJobs;
+    private int asrMaxConcurrency;
+    private int obsMaxConcurrency;
+    private int downloadMaxConcurrencyPerHost;
+    private int callbackMaxConcurrencyPerHost;
+
+    private int routerThrottleCooldown;
+    private double routerLatencyWeight;
+    private List<AsrAccount> accounts;
+
+    private int inlineMaxBytes;
+
+    private boolean segmentEnabled;
+    private int segmentDuration;
+    private int segmentSilenceWindow;
+    private int segmentPoolSize;
+
+    private boolean pipelineEnabled;
+    private int pipelineDownloadThreads;
+    private int pipelineDownloadQueueSize;
+    private int pipelineUploadThreads;
+    private int pipelineUploadQueueSize;
+    private int pipelineSubmitThreads;
+    private int pipelineSubmitQueueSize;
+
+    private boolean storageCleanupEnabled;
+    private int storageObsRetention;
+    private int storageCleanupInterval;
+
+    private int downloadConnTimeout;
+    private int downloadSocketTimeout;
+    private int downloadRangePartSize;
+    private int downloadRangeParallelism;
+    private int downloadRangeRetries;
+    private int downloadRangePoolSize;
+    private int queryMaxErrors;
+
     private Config() {
         init("config.properties");
     }
@@ -41,7 +136,10 @@ public class Config {
     private void init(String propertyFilePath) {
         Configurations propertiesConfigs = new Configurations();
         try {
-            PropertiesConfiguration propertiesConfig = propertiesConfigs.properties(new File("config.properties"));
+            //同名的系统属性（-Dkey=value）优先于配置文件，便于测试和压测时覆盖个别配置
+            CompositeConfiguration propertiesConfig = new CompositeConfiguration();
+            propertiesConfig.addConfiguration(new SystemConfiguration());
+            propertiesConfig.addConfiguration(propertiesConfigs.properties(new File("config.properties")));
             propertiesConfig.setThrowExceptionOnMissing(true);
 
             int availableProcessors = Runtime.getRuntime().availableProcessors();
@@ -54,6 +152,7 @@ public class Config {
             setAsrEndpoint(propertiesConfig.getString("service.asr.endpint", "https://ais.cn-north-1.myhuaweicloud.com"));
             setAsrFormatType(propertiesConfig.getInt("service.asr.format", 1));
             setQueryInterval(propertiesConfig.getInt("service.asr.query.interval", 30000));
+            setQueryPoolSize(propertiesConfig.getInt("query.pool.size", 2));
             setConnectionTimeout(propertiesConfig.getInt("service.asr.conn.timeout", 5000));
             setConnectionRequestTimeout(propertiesConfig.getInt("service.asr.conn.request.timeout", 1000));
             setSocketTimeout(propertiesConfig.getInt("service.asr.socket.timeout", 20000));
@@ -71,6 +170,96 @@ public class Config {
             setRetryCallbackTimes(propertiesConfig.getInt("callback.retry.times", 0));
             setRetryCallbackInterval(propertiesConfig.getInt("callback.retry.interval", 30));
 
+            setDownloadStreaming(propertiesConfig.getBoolean("download.streaming", false));
+            setDownloadMemoryBufferSize(propertiesConfig.getInt("download.memory.buffer.size", 16 * 1024 * 1024));
+
+            setAsyncIoThreadCount(propertiesConfig.getInt("async.io.thread.count", 2));
+            setAsyncMaxConnections(propertiesConfig.getInt("async.max.connections", 1000));
+
+            setObsPartSizeInMB(propertiesConfig.getInt("service.obs.multipart.part.size", 5));
+            setObsPartParallelism(propertiesConfig.getInt("service.obs.multipart.parallelism", 5));
+            setObsPartRetryTimes(propertiesConfig.getInt("service.obs.multipart.part.retry.times", 2));
+            setObsPartPoolSize(propertiesConfig.getInt("service.obs.multipart.pool.size", 4 * availableProcessors));
+            setObsPartPoolQueueSize(propertiesConfig.getInt("service.obs.multipart.pool.queue.size", 64));
+            setObsCheckpointDir(propertiesConfig.getString("service.obs.multipart.checkpoint.dir", "data/checkpoint"));
+            setObsCheckpointExpiry(propertiesConfig.getInt("service.obs.multipart.checkpoint.expiry", 3600));
+
+            setDedupEnabled(propertiesConfig.getBoolean("dedup.enabled", false));
+            setDedupCacheSize(propertiesConfig.getInt("dedup.cache.size", 1000));
+            setDedupCacheTtl(propertiesConfig.getLong("dedup.cache.ttl", 3600L));
+
+            setRetryCallbackMultiplier(propertiesConfig.getDouble("callback.retry.multiplier", 2.0));
+            setRetryCallbackMaxInterval(propertiesConfig.getInt("callback.retry.max.interval", 600));
+            setRetryCallbackJitter(propertiesConfig.getDouble("callback.retry.jitter", 0.5));
+            setRetryCallbackMaxPerEndpoint(propertiesConfig.getInt("callback.retry.max.per.endpoint", 8));
+
+            setCallbackMaxConnections(propertiesConfig.getInt("callback.http.max.total", 200));
+            setCallbackMaxConnectionsPerRoute(propertiesConfig.getInt("callback.http.max.per.route", 20));
+            setCallbackKeepAlive(propertiesConfig.getInt("callback.http.keep.alive", 30));
+
+            setCallbackBatchEnabled(propertiesConfig.getBoolean("callback.batch.enabled", false));
+            setCallbackBatchSize(propertiesConfig.getInt("callback.batch.size", 100));
+            setCallbackBatchLinger(propertiesConfig.getInt("callback.batch.linger", 200));
+
+            setJournalDir(propertiesConfig.getString("journal.dir", "data/journal"));
+            setJournalSyncInterval(propertiesConfig.getInt("journal.sync.interval", 200));
+            setJournalCompactThreshold(propertiesConfig.getInt("journal.compact.threshold", 10000));
+
+            setAsrSubmitQps(propertiesConfig.getDouble("asr.submit.qps", 0));
+            setAsrQueryQps(propertiesConfig.getDouble("asr.query.qps", 0));
+
+            setQueryAdaptiveEnabled(propertiesConfig.getBoolean("query.adaptive.enabled", false));
+            setQueryMinInterval(propertiesConfig.getInt("query.min.interval", 2000));
+            setQueryMaxInterval(propertiesConfig.getInt("query.max.interval", 120000));
+            setQueryBackoffMultiplier(propertiesConfig.getDouble("query.backoff.multiplier", 1.5));
+            setQueryPriorMillisPerMb(propertiesConfig.getInt("query.prior.millis.per.mb", 15000));
+
+            setMetricsJmxEnabled(propertiesConfig.getBoolean("metrics.jmx.enabled", true));
+            setMetricsReportInterval(propertiesConfig.getInt("metrics.report.interval", 60));
+
+            setObsEndpoint(propertiesConfig.getString("service.obs.endpoint", ""));
+
+            setCallbackGzipEnabled(propertiesConfig.getBoolean("callback.gzip.enabled", false));
+
+            setVirtualThreadsEnabled(propertiesConfig.getBoolean("virtual.threads.enabled", false));
+            setVirtualMaxJobs(propertiesConfig.getInt("virtual.max.jobs", 10000));
+            setAsrMaxConcurrency(propertiesConfig.getInt("asr.max.concurrency", 32));
+            setObsMaxConcurrency(propertiesConfig.getInt("obs.max.concurrency", 64));
+            setDownloadMaxConcurrencyPerHost(propertiesConfig.getInt("download.max.concurrency.per.host", 32));
+            setCallbackMaxConcurrencyPerHost(propertiesConfig.getInt("callback.max.concurrency.per.host",
+                    getCallbackMaxConnectionsPerRoute()));
+
+            setRouterThrottleCooldown(propertiesConfig.getInt("router.throttle.cooldown", 30000));
+            setRouterLatencyWeight(propertiesConfig.getDouble("router.latency.weight", 0.2));
+            setAccounts(loadAccounts(propertiesConfig));
+
+            setInlineMaxBytes(propertiesConfig.getInt("inline.max.bytes", 0));
+
+            setSegmentEnabled(propertiesConfig.getBoolean("segment.enabled", false));
+            setSegmentDuration(propertiesConfig.getInt("segment.duration", 600));
+            setSegmentSilenceWindow(propertiesConfig.getInt("segment.silence.window", 3000));
+            setSegmentPoolSize(propertiesConfig.getInt("segment.pool.size", 4));
+
+            setPipelineEnabled(propertiesConfig.getBoolean("pipeline.enabled", false));
+            setPipelineDownloadThreads(propertiesConfig.getInt("pipeline.download.threads", 4 * availableProcessors));
+            setPipelineDownloadQueueSize(propertiesConfig.getInt("pipeline.download.queue.size", 100));
+            setPipelineUploadThreads(propertiesConfig.getInt("pipeline.upload.threads", 2 * availableProcessors));
+            setPipelineUploadQueueSize(propertiesConfig.getInt("pipeline.upload.queue.size", 20));
+            setPipelineSubmitThreads(propertiesConfig.getInt("pipeline.submit.threads", availableProcessors));
+            setPipelineSubmitQueueSize(propertiesConfig.getInt("pipeline.submit.queue.size", 20));
+
+            setStorageCleanupEnabled(propertiesConfig.getBoolean("storage.cleanup.enabled", false));
+            setStorageObsRetention(propertiesConfig.getInt("storage.obs.retention", 300));
+            setStorageCleanupInterval(propertiesConfig.getInt("storage.cleanup.interval", 10));
+
+            setDownloadConnTimeout(propertiesConfig.getInt("download.conn.timeout", 5000));
+            setDownloadSocketTimeout(propertiesConfig.getInt("download.socket.timeout", 20000));
+            setDownloadRangePartSize(propertiesConfig.getInt("download.range.part.size", 8 * 1024 * 1024));
+            setDownloadRangeParallelism(propertiesConfig.getInt("download.range.parallelism", 4));
+            setDownloadRangeRetries(propertiesConfig.getInt("download.range.retries", 3));
+            setDownloadRangePoolSize(propertiesConfig.getInt("download.range.pool.size", 4 * availableProcessors));
+            setQueryMaxErrors(propertiesConfig.getInt("query.max.errors", 10));
+
         } catch (ConfigurationException e) {
             throw new RuntimeException("config.properties not found.", e);
         }
@@ -134,6 +323,14 @@ public class Config {
         this.queryInterval = queryInterval;
     }
 
+    public int getQueryPoolSize() {
+        return queryPoolSize;
+    }
+
+    private void setQueryPoolSize(int queryPoolSize) {
+        this.queryPoolSize = queryPoolSize;
+    }
+
     public int getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -238,6 +435,588 @@ public class Config {
         this.retryCallbackInterval = retryCallbackInterval;
     }
 
+    public boolean isDownloadStreaming() {
+        return downloadStreaming;
+    }
+
+    private void setDownloadStreaming(boolean downloadStreaming) {
+        this.downloadStreaming = downloadStreaming;
+    }
+
+    public int getDownloadMemoryBufferSize() {
+        return downloadMemoryBufferSize;
+    }
+
+    private void setDownloadMemoryBufferSize(int downloadMemoryBufferSize) {
+        this.downloadMemoryBufferSize = downloadMemoryBufferSize;
+    }
+
+    public int getAsyncIoThreadCount() {
+        return asyncIoThreadCount;
+    }
+
+    private void setAsyncIoThreadCount(int asyncIoThreadCount) {
+        this.asyncIoThreadCount = asyncIoThreadCount;
+    }
+
+    public int getAsyncMaxConnections() {
+        return asyncMaxConnections;
+    }
+
+    private void setAsyncMaxConnections(int asyncMaxConnections) {
+        this.asyncMaxConnections = asyncMaxConnections;
+    }
+
+    public int getObsPartSizeInMB() {
+        return obsPartSizeInMB;
+    }
+
+    private void setObsPartSizeInMB(int obsPartSizeInMB) {
+        this.obsPartSizeInMB = obsPartSizeInMB;
+    }
+
+    public int getObsPartParallelism() {
+        return obsPartParallelism;
+    }
+
+    private void setObsPartParallelism(int obsPartParallelism) {
+        this.obsPartParallelism = obsPartParallelism;
+    }
+
+    public int getObsPartRetryTimes() {
+        return obsPartRetryTimes;
+    }
+
+    private void setObsPartRetryTimes(int obsPartRetryTimes) {
+        this.obsPartRetryTimes = obsPartRetryTimes;
+    }
+
+    public int getObsPartPoolSize() {
+        return obsPartPoolSize;
+    }
+
+    private void setObsPartPoolSize(int obsPartPoolSize) {
+        this.obsPartPoolSize = obsPartPoolSize;
+    }
+
+    public int getObsPartPoolQueueSize() {
+        return obsPartPoolQueueSize;
+    }
+
+    private void setObsPartPoolQueueSize(int obsPartPoolQueueSize) {
+        this.obsPartPoolQueueSize = obsPartPoolQueueSize;
+    }
+
+    public String getObsCheckpointDir() {
+        return obsCheckpointDir;
+    }
+
+    private void setObsCheckpointDir(String obsCheckpointDir) {
+        this.obsCheckpointDir = obsCheckpointDir;
+    }
+
+    public int getObsCheckpointExpiry() {
+        return obsCheckpointExpiry;
+    }
+
+    private void setObsCheckpointExpiry(int obsCheckpointExpiry) {
+        this.obsCheckpointExpiry = obsCheckpointExpiry;
+    }
+
+    public boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+
+    private void setDedupEnabled(boolean dedupEnabled) {
+        this.dedupEnabled = dedupEnabled;
+    }
+
+    public int getDedupCacheSize() {
+        return dedupCacheSize;
+    }
+
+    private void setDedupCacheSize(int dedupCacheSize) {
+        this.dedupCacheSize = dedupCacheSize;
+    }
+
+    public long getDedupCacheTtl() {
+        return dedupCacheTtl;
+    }
+
+    private void setDedupCacheTtl(long dedupCacheTtl) {
+        this.dedupCacheTtl = dedupCacheTtl;
+    }
+
+    public double getRetryCallbackMultiplier() {
+        return retryCallbackMultiplier;
+    }
+
+    private void setRetryCallbackMultiplier(double retryCallbackMultiplier) {
+        this.retryCallbackMultiplier = retryCallbackMultiplier;
+    }
+
+    public int getRetryCallbackMaxInterval() {
+        return retryCallbackMaxInterval;
+    }
+
+    private void setRetryCallbackMaxInterval(int retryCallbackMaxInterval) {
+        this.retryCallbackMaxInterval = retryCallbackMaxInterval;
+    }
+
+    public double getRetryCallbackJitter() {
+        return retryCallbackJitter;
+    }
+
+    private void setRetryCallbackJitter(double retryCallbackJitter) {
+        this.retryCallbackJitter = retryCallbackJitter;
+    }
+
+    public int getRetryCallbackMaxPerEndpoint() {
+        return retryCallbackMaxPerEndpoint;
+    }
+
+    private void setRetryCallbackMaxPerEndpoint(int retryCallbackMaxPerEndpoint) {
+        this.retryCallbackMaxPerEndpoint = retryCallbackMaxPerEndpoint;
+    }
+
+    public int getCallbackMaxConnections() {
+        return callbackMaxConnections;
+    }
+
+    private void setCallbackMaxConnections(int callbackMaxConnections) {
+        this.callbackMaxConnections = callbackMaxConnections;
+    }
+
+    public int getCallbackMaxConnectionsPerRoute() {
+        return callbackMaxConnectionsPerRoute;
+    }
+
+    private void setCallbackMaxConnectionsPerRoute(int callbackMaxConnectionsPerRoute) {
+        this.callbackMaxConnectionsPerRoute = callbackMaxConnectionsPerRoute;
+    }
+
+    public int getCallbackKeepAlive() {
+        return callbackKeepAlive;
+    }
+
+    private void setCallbackKeepAlive(int callbackKeepAlive) {
+        this.callbackKeepAlive = callbackKeepAlive;
+    }
+
+    public boolean isCallbackBatchEnabled() {
+        return callbackBatchEnabled;
+    }
+
+    private void setCallbackBatchEnabled(boolean callbackBatchEnabled) {
+        this.callbackBatchEnabled = callbackBatchEnabled;
+    }
+
+    public int getCallbackBatchSize() {
+        return callbackBatchSize;
+    }
+
+    private void setCallbackBatchSize(int callbackBatchSize) {
+        this.callbackBatchSize = callbackBatchSize;
+    }
+
+    public int getCallbackBatchLinger() {
+        return callbackBatchLinger;
+    }
+
+    private void setCallbackBatchLinger(int callbackBatchLinger) {
+        this.callbackBatchLinger = callbackBatchLinger;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    private void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getJournalSyncInterval() {
+        return journalSyncInterval;
+    }
+
+    private void setJournalSyncInterval(int journalSyncInterval) {
+        this.journalSyncInterval = journalSyncInterval;
+    }
+
+    public int getJournalCompactThreshold() {
+        return journalCompactThreshold;
+    }
+
+    private void setJournalCompactThreshold(int journalCompactThreshold) {
+        this.journalCompactThreshold = journalCompactThreshold;
+    }
+
+    public double getAsrSubmitQps() {
+        return asrSubmitQps;
+    }
+
+    private void setAsrSubmitQps(double asrSubmitQps) {
+        this.asrSubmitQps = asrSubmitQps;
+    }
+
+    public double getAsrQueryQps() {
+        return asrQueryQps;
+    }
+
+    private void setAsrQueryQps(double asrQueryQps) {
+        this.asrQueryQps = asrQueryQps;
+    }
+
+    public boolean isQueryAdaptiveEnabled() {
+        return queryAdaptiveEnabled;
+    }
+
+    private void setQueryAdaptiveEnabled(boolean queryAdaptiveEnabled) {
+        this.queryAdaptiveEnabled = queryAdaptiveEnabled;
+    }
+
+    public int getQueryMinInterval() {
+        return queryMinInterval;
+    }
+
+    private void setQueryMinInterval(int queryMinInterval) {
+        this.queryMinInterval = queryMinInterval;
+    }
+
+    public int getQueryMaxInterval() {
+        return queryMaxInterval;
+    }
+
+    private void setQueryMaxInterval(int queryMaxInterval) {
+        this.queryMaxInterval = queryMaxInterval;
+    }
+
+    public double getQueryBackoffMultiplier() {
+        return queryBackoffMultiplier;
+    }
+
+    private void setQueryBackoffMultiplier(double queryBackoffMultiplier) {
+        this.queryBackoffMultiplier = queryBackoffMultiplier;
+    }
+
+    public int getQueryPriorMillisPerMb() {
+        return queryPriorMillisPerMb;
+    }
+
+    private void setQueryPriorMillisPerMb(int queryPriorMillisPerMb) {
+        this.queryPriorMillisPerMb = queryPriorMillisPerMb;
+    }
+
+    public boolean isMetricsJmxEnabled() {
+        return metricsJmxEnabled;
+    }
+
+    private void setMetricsJmxEnabled(boolean metricsJmxEnabled) {
+        this.metricsJmxEnabled = metricsJmxEnabled;
+    }
+
+    public int getMetricsReportInterval() {
+        return metricsReportInterval;
+    }
+
+    private void setMetricsReportInterval(int metricsReportInterval) {
+        this.metricsReportInterval = metricsReportInterval;
+    }
+
+    public String getObsEndpoint() {
+        return obsEndpoint;
+    }
+
+    private void setObsEndpoint(String obsEndpoint) {
+        this.obsEndpoint = obsEndpoint;
+    }
+
+    public boolean isCallbackGzipEnabled() {
+        return callbackGzipEnabled;
+    }
+
+    private void setCallbackGzipEnabled(boolean callbackGzipEnabled) {
+        this.callbackGzipEnabled = callbackGzipEnabled;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    private void setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    public int getVirtualMaxJobs() {
+        return virtualMaxJobs;
+    }
+
+    private void setVirtualMaxJobs(int virtualMaxJobs) {
+        this.virtualMaxJobs = virtualMaxJobs;
+    }
+
+    public int getAsrMaxConcurrency() {
+        return asrMaxConcurrency;
+    }
+
+    private void setAsrMaxConcurrency(int asrMaxConcurrency) {
+        this.asrMaxConcurrency = asrMaxConcurrency;
+    }
+
+    public int getObsMaxConcurrency() {
+        return obsMaxConcurrency;
+    }
+
+    private void setObsMaxConcurrency(int obsMaxConcurrency) {
+        this.obsMaxConcurrency = obsMaxConcurrency;
+    }
+
+    public int getDownloadMaxConcurrencyPerHost() {
+        return downloadMaxConcurrencyPerHost;
+    }
+
+    private void setDownloadMaxConcurrencyPerHost(int downloadMaxConcurrencyPerHost) {
+        this.downloadMaxConcurrencyPerHost = downloadMaxConcurrencyPerHost;
+    }
+
+    public int getCallbackMaxConcurrencyPerHost() {
+        return callbackMaxConcurrencyPerHost;
+    }
+
+    private void setCallbackMaxConcurrencyPerHost(int callbackMaxConcurrencyPerHost) {
+        this.callbackMaxConcurrencyPerHost = callbackMaxConcurrencyPerHost;
+    }
+
+    public int getRouterThrottleCooldown() {
+        return routerThrottleCooldown;
+    }
+
+    private void setRouterThrottleCooldown(int routerThrottleCooldown) {
+        this.routerThrottleCooldown = routerThrottleCooldown;
+    }
+
+    public double getRouterLatencyWeight() {
+        return routerLatencyWeight;
+    }
+
+    private void setRouterLatencyWeight(double routerLatencyWeight) {
+        this.routerLatencyWeight = routerLatencyWeight;
+    }
+
+    /**
+     * @return 用于提交识别任务的账号，未配置service.accounts时只有一个由user.ak、service.asr.region等组成的default账号
+     */
+    public List<AsrAccount> getAccounts() {
+        return accounts;
+    }
+
+    private void setAccounts(List<AsrAccount> accounts) {
+        this.accounts = Collections.unmodifiableList(accounts);
+    }
+
+    /**
+     * service.accounts列出账号名称，每个账号的service.account.{名称}.ak、.sk、.region、.endpoint、.obs.endpoint、
+     * .bucket.name未配置时沿用user.ak、user.sk、service.asr.region等全局配置
+     */
+    private List<AsrAccount> loadAccounts(Configuration propertiesConfig) {
+        List<AsrAccount> accounts = new ArrayList<>();
+        for (String name : propertiesConfig.getString("service.accounts", "").split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            String prefix = "service.account." + name + ".";
+            accounts.add(new AsrAccount(name,
+                    propertiesConfig.getString(prefix + "ak", getAk()),
+                    propertiesConfig.getString(prefix + "sk", getSk()),
+                    propertiesConfig.getString(prefix + "region", getAsrRegion()),
+                    propertiesConfig.getString(prefix + "endpoint", getAsrEndpoint()),
+                    propertiesConfig.getString(prefix + "obs.endpoint", getObsEndpoint()),
+                    propertiesConfig.getString(prefix + "bucket.name", getObsBucketName())));
+        }
+        if (accounts.isEmpty()) {
+            accounts.add(new AsrAccount("default", getAk(), getSk(), getAsrRegion(), getAsrEndpoint(),
+                    getObsEndpoint(), getObsBucketName()));
+        }
+        return accounts;
+    }
+
+    public int getInlineMaxBytes() {
+        return inlineMaxBytes;
+    }
+
+    private void setInlineMaxBytes(int inlineMaxBytes) {
+        this.inlineMaxBytes = inlineMaxBytes;
+    }
+
+    public boolean isSegmentEnabled() {
+        return segmentEnabled;
+    }
+
+    private void setSegmentEnabled(boolean segmentEnabled) {
+        this.segmentEnabled = segmentEnabled;
+    }
+
+    public int getSegmentDuration() {
+        return segmentDuration;
+    }
+
+    private void setSegmentDuration(int segmentDuration) {
+        this.segmentDuration = segmentDuration;
+    }
+
+    public int getSegmentSilenceWindow() {
+        return segmentSilenceWindow;
+    }
+
+    private void setSegmentSilenceWindow(int segmentSilenceWindow) {
+        this.segmentSilenceWindow = segmentSilenceWindow;
+    }
+
+    public int getSegmentPoolSize() {
+        return segmentPoolSize;
+    }
+
+    private void setSegmentPoolSize(int segmentPoolSize) {
+        this.segmentPoolSize = segmentPoolSize;
+    }
+
+    public boolean isPipelineEnabled() {
+        return pipelineEnabled;
+    }
+
+    private void setPipelineEnabled(boolean pipelineEnabled) {
+        this.pipelineEnabled = pipelineEnabled;
+    }
+
+    public int getPipelineDownloadThreads() {
+        return pipelineDownloadThreads;
+    }
+
+    private void setPipelineDownloadThreads(int pipelineDownloadThreads) {
+        this.pipelineDownloadThreads = pipelineDownloadThreads;
+    }
+
+    public int getPipelineDownloadQueueSize() {
+        return pipelineDownloadQueueSize;
+    }
+
+    private void setPipelineDownloadQueueSize(int pipelineDownloadQueueSize) {
+        this.pipelineDownloadQueueSize = pipelineDownloadQueueSize;
+    }
+
+    public int getPipelineUploadThreads() {
+        return pipelineUploadThreads;
+    }
+
+    private void setPipelineUploadThreads(int pipelineUploadThreads) {
+        this.pipelineUploadThreads = pipelineUploadThreads;
+    }
+
+    public int getPipelineUploadQueueSize() {
+        return pipelineUploadQueueSize;
+    }
+
+    private void setPipelineUploadQueueSize(int pipelineUploadQueueSize) {
+        this.pipelineUploadQueueSize = pipelineUploadQueueSize;
+    }
+
+    public int getPipelineSubmitThreads() {
+        return pipelineSubmitThreads;
+    }
+
+    private void setPipelineSubmitThreads(int pipelineSubmitThreads) {
+        this.pipelineSubmitThreads = pipelineSubmitThreads;
+    }
+
+    public int getPipelineSubmitQueueSize() {
+        return pipelineSubmitQueueSize;
+    }
+
+    private void setPipelineSubmitQueueSize(int pipelineSubmitQueueSize) {
+        this.pipelineSubmitQueueSize = pipelineSubmitQueueSize;
+    }
+
+    public boolean isStorageCleanupEnabled() {
+        return storageCleanupEnabled;
+    }
+
+    private void setStorageCleanupEnabled(boolean storageCleanupEnabled) {
+        this.storageCleanupEnabled = storageCleanupEnabled;
+    }
+
+    public int getStorageObsRetention() {
+        return storageObsRetention;
+    }
+
+    private void setStorageObsRetention(int storageObsRetention) {
+        this.storageObsRetention = storageObsRetention;
+    }
+
+    public int getStorageCleanupInterval() {
+        return storageCleanupInterval;
+    }
+
+    private void setStorageCleanupInterval(int storageCleanupInterval) {
+        this.storageCleanupInterval = storageCleanupInterval;
+    }
+
+    public int getDownloadConnTimeout() {
+        return downloadConnTimeout;
+    }
+
+    private void setDownloadConnTimeout(int downloadConnTimeout) {
+        this.downloadConnTimeout = downloadConnTimeout;
+    }
+
+    public int getDownloadSocketTimeout() {
+        return downloadSocketTimeout;
+    }
+
+    private void setDownloadSocketTimeout(int downloadSocketTimeout) {
+        this.downloadSocketTimeout = downloadSocketTimeout;
+    }
+
+    public int getDownloadRangePartSize() {
+        return downloadRangePartSize;
+    }
+
+    private void setDownloadRangePartSize(int downloadRangePartSize) {
+        this.downloadRangePartSize = downloadRangePartSize;
+    }
+
+    public int getDownloadRangeParallelism() {
+        return downloadRangeParallelism;
+    }
+
+    private void setDownloadRangeParallelism(int downloadRangeParallelism) {
+        this.downloadRangeParallelism = downloadRangeParallelism;
+    }
+
+    public int getDownloadRangeRetries() {
+        return downloadRangeRetries;
+    }
+
+    private void setDownloadRangeRetries(int downloadRangeRetries) {
+        this.downloadRangeRetries = downloadRangeRetries;
+    }
+
+    public int getDownloadRangePoolSize() {
+        return downloadRangePoolSize;
+    }
+
+    private void setDownloadRangePoolSize(int downloadRangePoolSize) {
+        this.downloadRangePoolSize = downloadRangePoolSize;
+    }
+
+    public int getQueryMaxErrors() {
+        return queryMaxErrors;
+    }
+
+    private void setQueryMaxErrors(int queryMaxErrors) {
+        this.queryMaxErrors = queryMaxErrors;
+    }
+
     public static Config getInstance() {
         return SingletonConstructor.config;
     }
@@ -0,0 +1,49 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * 提交线程池的任务队列，在queue.size之外为每个线程预留一个位置<p/>
+ * 准入许可在任务的finally中归还，此时工作线程尚未回到队列取下一个任务，新取得许可的任务可能遇到
+ * 队列已满且线程数已达上限。对线程池而言队列仍在queue.size处报满，线程数照常增长到max.size；
+ * 之后的拒绝交给rejectionPolicy放入预留的位置，执行中与排队中的任务不超过许可数，预留位置总够用
+ */
+class AdmissionQueue extends ArrayBlockingQueue<Runnable> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int queueSize;
+
+    /**
+     * @param queueSize 线程池看到的队列长度
+     * @param headroom  预留的位置数，等于线程池的最大线程数
+     */
+    AdmissionQueue(int queueSize, int headroom) {
+        super(queueSize + headroom);
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        //size与offer之间的竞争只会多用预留位置，容量仍不超过许可数
+        return size() < queueSize && super.offer(task);
+    }
+
+    /**
+     * @param fallback 线程池已关闭或预留位置也用完时的拒绝策略
+     * @return 把被拒绝的任务放入预留位置的拒绝策略
+     */
+    RejectedExecutionHandler rejectionPolicy(RejectedExecutionHandler fallback) {
+        return (task, executor) -> {
+            if (executor.isShutdown() || !super.offer(task)) {
+                fallback.rejectedExecution(task, executor);
+                return;
+            }
+            //关闭后放入的任务不会再被执行
+            if (executor.isShutdown() && remove(task)) {
+                fallback.rejectedExecution(task, executor);
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import com.cloud.sdk.DefaultRequest;
+import com.cloud.sdk.Request;
+import com.cloud.sdk.auth.credentials.BasicCredentials;
+import com.cloud.sdk.auth.signer.Signer;
+import com.cloud.sdk.auth.signer.SignerFactory;
+import com.cloud.sdk.http.HttpMethodName;
+import com.huawei.ais.common.AuthInfo;
+
+/**
+ * 为访问语音识别服务的请求签名，签名方式与AisAccess一致，
+ * 但只生成签好名的请求而不负责发送，便于配合异步http客户端使用
+ */
+class AisRequestSigner {
+
+    private static final String SERVICE_NAME = "ais";
+
+    private final AuthInfo authInfo;
+
+    AisRequestSigner(AuthInfo authInfo) {
+        this.authInfo = authInfo;
+    }
+
+    /**
+     * @param uri 请求路径（可带查询参数），eg. "/v1.0/voice/asr/long-sentence?job_id=xx"
+     * @return 已签名的GET请求
+     */
+    HttpGet signedGet(String uri) {
+        HttpGet httpGet = new HttpGet(authInfo.getEndPoint() + uri);
+        sign(httpGet, HttpMethodName.GET, null);
+        return httpGet;
+    }
+
+    /**
+     * @param uri  请求路径
+     * @param body json格式的请求体
+     * @return 已签名的POST请求
+     */
+    HttpPost signedPost(String uri, byte[] body) {
+        HttpPost httpPost = new HttpPost(authInfo.getEndPoint() + uri);
+        httpPost.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        sign(httpPost, HttpMethodName.POST, body);
+        return httpPost;
+    }
+
+    private void sign(HttpRequestBase httpRequest, HttpMethodName method, byte[] body) {
+        URI uri = httpRequest.getURI();
+        Request<?> request = new DefaultRequest<>(SERVICE_NAME);
+        request.setEndpoint(uri);
+        request.setParameters(parseQuery(uri.getRawQuery()));
+        request.setHttpMethod(method);
+        Map<String, String> headers = new HashMap<>();
+        if (body != null) {
+            headers.put("Content-Type", ContentType.APPLICATION_JSON.toString());
+            request.setContent(new ByteArrayInputStream(body));
+        }
+        request.setHeaders(headers);
+
+        Signer signer = SignerFactory.getSigner(SERVICE_NAME, authInfo.getRegion());
+        signer.sign(request, new BasicCredentials(authInfo.getAk(), authInfo.getSk()));
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!"Content-Length".equalsIgnoreCase(header.getKey())) {
+                httpRequest.addHeader(header.getKey(), header.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                String[] kv = pair.split("=", 2);
+                parameters.put(kv[0], kv.length > 1 ? kv[1] : "");
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,123 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.huawei.ais.common.AuthInfo;
+import com.huawei.ais.demo.asr.AsrAccount;
+import com.huawei.ais.demo.obs.SimpleObsClient;
+import com.huawei.ais.sdk.AisAccess;
+
+/**
+ * 一个账号和区域上的语音识别与OBS客户端，以及路由所需的负载统计<p/>
+ * 在途任务数从选中它提交任务开始，到任务结束（或提交失败）为止；提交耗时按指数加权平均，
+ * 被限流后在冷却时间内降低被选中的优先级，连续被限流时冷却时间加倍
+ */
+class AsrEndpoint {
+
+    private static final int MAX_COOLDOWN_SHIFT = 5;
+
+    private final AsrAccount account;
+    private final AisAccess aisAccessClient;
+    private final SimpleObsClient simpleObsClient;
+    private final AisRequestSigner requestSigner;
+    private final double latencyWeight;
+    private final long cooldownInNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double latencyInMillis;
+    private volatile long throttledUntil;
+    private volatile int consecutiveThrottles;
+
+    AsrEndpoint(AsrAccount account, AisAccess aisAccessClient, SimpleObsClient simpleObsClient,
+                double latencyWeight, long cooldownInMillis) {
+        this.account = account;
+        this.aisAccessClient = aisAccessClient;
+        this.simpleObsClient = simpleObsClient;
+        this.requestSigner = new AisRequestSigner(new AuthInfo(account.getAsrEndpoint(), account.getRegion(),
+                account.getAk(), account.getSk()));
+        this.latencyWeight = latencyWeight;
+        this.cooldownInNanos = TimeUnit.MILLISECONDS.toNanos(cooldownInMillis);
+        this.throttledUntil = System.nanoTime();
+    }
+
+    String getName() {
+        return account.getName();
+    }
+
+    String getObsBucketName() {
+        return account.getObsBucketName();
+    }
+
+    AisAccess getAisAccessClient() {
+        return aisAccessClient;
+    }
+
+    SimpleObsClient getSimpleObsClient() {
+        return simpleObsClient;
+    }
+
+    AisRequestSigner getRequestSigner() {
+        return requestSigner;
+    }
+
+    /**
+     * 选中此账号提交一个任务
+     */
+    void jobStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 任务结束或提交失败，不再占用此账号的配额
+     */
+    void jobEnded() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 记录一次提交的结果
+     *
+     * @param latencyInMillis 提交耗时
+     * @param throttled       是否被限流（429或APIG.0308）
+     */
+    synchronized void submitted(long latencyInMillis, boolean throttled) {
+        this.latencyInMillis = this.latencyInMillis == 0 ? latencyInMillis
+                : latencyWeight * latencyInMillis + (1 - latencyWeight) * this.latencyInMillis;
+        if (throttled) {
+            int shift = Math.min(consecutiveThrottles++, MAX_COOLDOWN_SHIFT);
+            throttledUntil = System.nanoTime() + (cooldownInNanos << shift);
+        } else {
+            consecutiveThrottles = 0;
+        }
+    }
+
+    /**
+     * @return 选择账号时的代价，越小越优先：再提交一个任务后的在途任务数乘以平均提交耗时
+     */
+    double cost() {
+        return (inFlight.get() + 1) * Math.max(latencyInMillis, 1);
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    double getLatencyInMillis() {
+        return latencyInMillis;
+    }
+
+    boolean isThrottled(long now) {
+        return throttledUntil - now > 0;
+    }
+
+    void close() {
+        simpleObsClient.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[in_flight=%d, latency=%.1fms%s]", getName(), getInFlight(), getLatencyInMillis(),
+                isThrottled(System.nanoTime()) ? ", throttled" : "");
+    }
+}
@@ -0,0 +1,285 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * 识别各环节的耗时统计（单例）<p/>
+ * 下载、上传、提交、轮询、回调各环节在完成时记录一次耗时，记录只涉及原子自增，不加锁；
+ * 线程池状态在读取时直接从线程池取得。统计结果通过JMX（AsrMetricsMXBean）和MetricsReporter对外提供
+ */
+class AsrMetrics implements AsrMetricsMXBean {
+
+    private static final Log LOGGER = LogFactory.getLog(AsrMetrics.class);
+
+    private static final String OBJECT_NAME = "com.huawei.ais.demo.asr:type=AsrMetrics";
+
+    private final LatencyHistogram downloadTime = new LatencyHistogram();
+    private final LatencyHistogram downloadRate = new LatencyHistogram();
+    private final LatencyHistogram uploadTime = new LatencyHistogram();
+    private final LatencyHistogram submitTime = new LatencyHistogram();
+    private final LatencyHistogram pollCount = new LatencyHistogram();
+    private final LatencyHistogram processingTime = new LatencyHistogram();
+    private final LatencyHistogram callbackTime = new LatencyHistogram();
+    private final LongAdder callbackRetries = new LongAdder();
+    private final LongAdder callbackAbandoned = new LongAdder();
+    private final LongAdder submitRejected = new LongAdder();
+    private final LongAdder callbackRejected = new LongAdder();
+
+    private volatile ThreadPoolExecutor submitPool;
+    private volatile ThreadPoolExecutor callbackPool;
+    private volatile SubmitPipeline submitPipeline;
+
+    private AsrMetrics() {
+    }
+
+    static AsrMetrics getInstance() {
+        return SingletonConstructor.asrMetrics;
+    }
+
+    /**
+     * @return 当前时间，与elapsedMillisSince配合计算耗时
+     */
+    static long startTimer() {
+        return System.nanoTime();
+    }
+
+    static long elapsedMillisSince(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    void recordDownload(long startTime, long bytes) {
+        long elapsedInNanos = System.nanoTime() - startTime;
+        downloadTime.record(TimeUnit.NANOSECONDS.toMillis(elapsedInNanos));
+        if (bytes > 0 && elapsedInNanos > 0) {
+            downloadRate.record((long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedInNanos));
+        }
+    }
+
+    void recordUpload(long startTime) {
+        uploadTime.record(elapsedMillisSince(startTime));
+    }
+
+    void recordSubmit(long startTime) {
+        submitTime.record(elapsedMillisSince(startTime));
+    }
+
+    void recordJobDone(int polls, long processingTimeInMillis) {
+        pollCount.record(polls);
+        processingTime.record(processingTimeInMillis);
+    }
+
+    void recordCallback(long startTime) {
+        callbackTime.record(elapsedMillisSince(startTime));
+    }
+
+    void callbackRetried() {
+        callbackRetries.increment();
+    }
+
+    void callbackAbandoned() {
+        callbackAbandoned.increment();
+    }
+
+    /**
+     * 未取得准入许可而被拒绝的调用
+     */
+    void submitRejected() {
+        submitRejected.increment();
+    }
+
+    /**
+     * @return 记录拒绝次数后抛出RejectedExecutionException的拒绝策略，用于替代AbortPolicy
+     */
+    RejectedExecutionHandler countingAbortPolicy(boolean submitPool) {
+        LongAdder rejected = submitPool ? submitRejected : callbackRejected;
+        return (task, executor) -> {
+            rejected.increment();
+            throw new RejectedExecutionException(String.format("Task %s rejected from %s", task, executor));
+        };
+    }
+
+    void bindPools(ThreadPoolExecutor submitPool, ThreadPoolExecutor callbackPool) {
+        this.submitPool = submitPool;
+        this.callbackPool = callbackPool;
+    }
+
+    void bindPipeline(SubmitPipeline submitPipeline) {
+        this.submitPipeline = submitPipeline;
+    }
+
+    void registerMBean() {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.error("Register AsrMetrics MBean failed.", e);
+        }
+    }
+
+    void unregisterMBean() {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.error("Unregister AsrMetrics MBean failed.", e);
+        }
+    }
+
+    /**
+     * @return 所有指标的扁平化视图，用于MetricsReporter
+     */
+    Map<String, Number> toMap() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        putHistogram(metrics, "download.time", getDownloadTime());
+        putHistogram(metrics, "download.rate", getDownloadRate());
+        putHistogram(metrics, "upload.time", getUploadTime());
+        putHistogram(metrics, "submit.time", getSubmitTime());
+        putHistogram(metrics, "poll.count", getPollCount());
+        putHistogram(metrics, "processing.time", getProcessingTime());
+        putHistogram(metrics, "callback.time", getCallbackTime());
+        metrics.put("callback.retries", getCallbackRetries());
+        metrics.put("callback.abandoned", getCallbackAbandoned());
+        putPool(metrics, "submit.pool", getSubmitPool());
+        putPool(metrics, "callback.pool", getCallbackPool());
+        if (submitPipeline != null) {
+            putPool(metrics, "download.stage", getDownloadStage());
+            putPool(metrics, "upload.stage", getUploadStage());
+            putPool(metrics, "submit.stage", getSubmitStage());
+        }
+        return metrics;
+    }
+
+    @Override
+    public HistogramSnapshot getDownloadTime() {
+        return downloadTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getDownloadRate() {
+        return downloadRate.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getUploadTime() {
+        return uploadTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getSubmitTime() {
+        return submitTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getPollCount() {
+        return pollCount.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getProcessingTime() {
+        return processingTime.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getCallbackTime() {
+        return callbackTime.snapshot();
+    }
+
+    @Override
+    public long getCallbackRetries() {
+        return callbackRetries.sum();
+    }
+
+    @Override
+    public long getCallbackAbandoned() {
+        return callbackAbandoned.sum();
+    }
+
+    @Override
+    public PoolStats getSubmitPool() {
+        return poolStats(submitPool, submitRejected);
+    }
+
+    @Override
+    public PoolStats getCallbackPool() {
+        return poolStats(callbackPool, callbackRejected);
+    }
+
+    @Override
+    public PoolStats getDownloadStage() {
+        SubmitPipeline pipeline = submitPipeline;
+        return pipeline == null ? new PoolStats(0, 0, 0, 0, 0) : pipeline.getDownloadStats();
+    }
+
+    @Override
+    public PoolStats getUploadStage() {
+        SubmitPipeline pipeline = submitPipeline;
+        return pipeline == null ? new PoolStats(0, 0, 0, 0, 0) : pipeline.getUploadStats();
+    }
+
+    @Override
+    public PoolStats getSubmitStage() {
+        SubmitPipeline pipeline = submitPipeline;
+        return pipeline == null ? new PoolStats(0, 0, 0, 0, 0) : pipeline.getSubmitStats();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{downloadTime, downloadRate, uploadTime, submitTime,
+                pollCount, processingTime, callbackTime}) {
+            histogram.reset();
+        }
+        for (LongAdder counter : new LongAdder[]{callbackRetries, callbackAbandoned, submitRejected,
+                callbackRejected}) {
+            counter.reset();
+        }
+    }
+
+    private static PoolStats poolStats(ThreadPoolExecutor pool, LongAdder rejected) {
+        if (pool == null) {
+            return new PoolStats(0, 0, 0, 0, rejected.sum());
+        }
+        return new PoolStats(pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size(),
+                pool.getCompletedTaskCount(), rejected.sum());
+    }
+
+    private static void putHistogram(Map<String, Number> metrics, String name, HistogramSnapshot snapshot) {
+        metrics.put(name + ".count", snapshot.getCount());
+        metrics.put(name + ".mean", snapshot.getMean());
+        metrics.put(name + ".p50", snapshot.getP50());
+        metrics.put(name + ".p90", snapshot.getP90());
+        metrics.put(name + ".p99", snapshot.getP99());
+        metrics.put(name + ".max", snapshot.getMax());
+    }
+
+    private static void putPool(Map<String, Number> metrics, String name, PoolStats poolStats) {
+        metrics.put(name + ".size", poolStats.getPoolSize());
+        metrics.put(name + ".active", poolStats.getActiveCount());
+        metrics.put(name + ".queue.size", poolStats.getQueueSize());
+        metrics.put(name + ".completed", poolStats.getCompletedTaskCount());
+        metrics.put(name + ".rejected", poolStats.getRejectedCount());
+    }
+
+    static class SingletonConstructor {
+        static AsrMetrics asrMetrics = new AsrMetrics();
+    }
+}
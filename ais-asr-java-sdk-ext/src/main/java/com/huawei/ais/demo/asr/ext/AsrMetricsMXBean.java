@@ -0,0 +1,77 @@
+package com.huawei.ais.demo.asr.ext;
+
+/**
+ * 识别各环节的耗时与线程池状态，以MXBean形式注册在com.huawei.ais.demo.asr:type=AsrMetrics下，
+ * 可通过jconsole等JMX客户端查看
+ */
+public interface AsrMetricsMXBean {
+
+    /**
+     * @return 音频下载耗时，流式模式下为边下载边上传的总耗时
+     */
+    HistogramSnapshot getDownloadTime();
+
+    /**
+     * @return 音频下载速度（字节/秒）
+     */
+    HistogramSnapshot getDownloadRate();
+
+    /**
+     * @return 上传OBS耗时
+     */
+    HistogramSnapshot getUploadTime();
+
+    /**
+     * @return 提交识别任务的请求耗时
+     */
+    HistogramSnapshot getSubmitTime();
+
+    /**
+     * @return 每个任务结束前的状态查询次数
+     */
+    HistogramSnapshot getPollCount();
+
+    /**
+     * @return 从提交任务到查询到任务结束的耗时
+     */
+    HistogramSnapshot getProcessingTime();
+
+    /**
+     * @return 每次回调请求的耗时，含重试
+     */
+    HistogramSnapshot getCallbackTime();
+
+    /**
+     * @return 回调失败后安排的重试次数
+     */
+    long getCallbackRetries();
+
+    /**
+     * @return 重试用尽后放弃的回调数
+     */
+    long getCallbackAbandoned();
+
+    PoolStats getSubmitPool();
+
+    PoolStats getCallbackPool();
+
+    /**
+     * @return 流水线模式下下载阶段的线程状态，rejectedCount为队列已满、上游等待交接的次数；未开启流水线时全为0
+     */
+    PoolStats getDownloadStage();
+
+    /**
+     * @return 流水线模式下上传阶段的线程状态
+     */
+    PoolStats getUploadStage();
+
+    /**
+     * @return 流水线模式下提交阶段的线程状态
+     */
+    PoolStats getSubmitStage();
+
+    /**
+     * 清空所有直方图和计数
+     */
+    void reset();
+}
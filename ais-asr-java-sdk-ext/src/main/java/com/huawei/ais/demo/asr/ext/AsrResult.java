@@ -0,0 +1,38 @@
+package com.huawei.ais.demo.asr.ext;
+
+/**
+ * 异步调用语音识别服务的最终结果
+ */
+public class AsrResult {
+
+    private final String jobId;
+    private final Object result;
+    private final boolean callbackDelivered;
+
+    AsrResult(String jobId, Object result, boolean callbackDelivered) {
+        this.jobId = jobId;
+        this.result = result;
+        this.callbackDelivered = callbackDelivered;
+    }
+
+    /**
+     * @return 云端识别任务的jobId
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @return 识别结果，任务正常结束时为GetResultRes，查询失败时为服务端返回的错误信息
+     */
+    public Object getResult() {
+        return result;
+    }
+
+    /**
+     * @return 是否已成功回调（含重试）
+     */
+    public boolean isCallbackDelivered() {
+        return callbackDelivered;
+    }
+}
@@ -1,8 +1,21 @@
 package com.huawei.ais.demo.asr.ext;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -11,8 +24,10 @@ import org.apache.commons.logging.LogFactory;
 
 import com.huawei.ais.common.AuthInfo;
 import com.huawei.ais.common.ProxyHostInfo;
+import com.huawei.ais.demo.asr.AsrAccount;
 import com.huawei.ais.demo.asr.CommonUtils;
 import com.huawei.ais.demo.asr.Config;
+import com.huawei.ais.demo.obs.MultipartUploadOptions;
 import com.huawei.ais.demo.obs.SimpleObsClient;
 import com.huawei.ais.sdk.AisAccess;
 import com.huawei.ais.sdk.AisAccessWithProxy;
@@ -20,7 +35,16 @@ import com.huawei.ais.sdk.AisAccessWithProxy;
 /**
  * 语音识别服务调用工具类，管理两个线程池<p/>
  * - submitJobExecutors：来执行“下载音频-上传OBS-提交OBS地址给云端引擎”任务<br/>
- * - callbackExecutors：用来执行查询“任务结果-回调”任务<p/>
+ * - callbackExecutors：用来执行“回调”任务，任务结果由jobStatusPoller定时轮询，任务结束后才提交回调<p/>
+ * 提交到submitJobExecutors的任务数（执行中与排队中）受准入许可限制，许可用尽时callAsrService立即拒绝，
+ * tryCallAsrService则在给定时间内等待许可；向云端提交任务和查询任务状态另按asr.submit.qps、asr.query.qps限速<p/>
+ * 开启virtual.threads.enabled且运行在Java 21及以上时，两个线程池换成每个任务一个虚拟线程，提交任务数改由virtual.max.jobs限制，
+ * 语音识别服务、OBS、音频源和回调服务按各自的并发上限排队<p/>
+ * 配置多个账号（service.accounts）时，每个任务按各账号的在途任务数、提交耗时和限流情况选择账号，
+ * 任务的上传、提交、轮询都使用同一个账号<p/>
+ * 开启pipeline.enabled时，callAsrService的任务改由SubmitPipeline分下载、上传、提交三个阶段执行，各阶段有独立的线程池和有界队列，
+ * 准入许可数等于下载阶段的线程数加队列长度<p/>
+ * 开启storage.cleanup.enabled时，任务结束或提交失败后删除本地音频，OBS文件保留storage.obs.retention秒后由后台线程批量删除<p/>
  * 如果在产品中使用AsrServiceUtils，注意在合适的位置调用destroy()方法来销毁线程池
  */
 public class AsrServiceUtils {
@@ -29,11 +53,27 @@ public class AsrServiceUtils {
 
     private static final Config CONFIG = Config.getInstance();
 
-    private AisAccess aisAccessClient;
-    private SimpleObsClient simpleObsClient;
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
+
+    private EndpointRouter endpointRouter;
+    private AudioDownloader audioDownloader;
 
     private ExecutorService submitJobExecutors = null;
+    private Semaphore submitAdmission = null;
+    private RateLimiter submitRateLimiter = null;
+    private DownstreamLimiter asrLimiter = null;
+    private AsrSubmitter asrSubmitter = null;
+    private SubmitPipeline submitPipeline = null;
     private ExecutorService callbackExecutors = null;
+    private ExecutorService segmentExecutors = null;
+    private JobStatusPoller jobStatusPoller = null;
+    private AudioDedupCache dedupCache = null;
+    private CallbackBatcher callbackBatcher = null;
+    private JobJournal jobJournal = null;
+    private AsyncAsrEngine asyncAsrEngine = null;
+    private StorageJanitor storageJanitor = null;
+    private ScheduledThreadPoolExecutor metricsReportExecutor = null;
+    private final List<MetricsReporter> metricsReporters = new CopyOnWriteArrayList<>();
 
     private AsrServiceUtils() {
         init();
@@ -45,60 +85,355 @@ public class AsrServiceUtils {
      * @param audioUrl    音频的文件的url
      * @param callbackUrl 识别结束后的回调url
      * @return 音频提交到语音识别引起的任务句柄，任务提交成功后可通过句柄取到云端识别任务的jobId
+     * @throws RejectedExecutionException 执行中与排队中的任务已满
      */
     public Future<String> callAsrService(String audioUrl, String callbackUrl) {
-        return submitJobExecutors.submit(
-                new SubmitJobTask(audioUrl, callbackUrl, aisAccessClient, simpleObsClient, callbackExecutors));
+        if (!submitAdmission.tryAcquire()) {
+            METRICS.submitRejected();
+            throw new RejectedExecutionException("Too many jobs waiting to be submitted.");
+        }
+        return submitAdmitted(audioUrl, callbackUrl);
+    }
+
+    /**
+     * 调用语音识别服务，执行中与排队中的任务已满时最多等待timeout，而不是立即拒绝
+     *
+     * @param audioUrl    音频的文件的url
+     * @param callbackUrl 识别结束后的回调url
+     * @param timeout     最长等待时间
+     * @param unit        timeout的单位
+     * @return 音频提交到语音识别引起的任务句柄，任务提交成功后可通过句柄取到云端识别任务的jobId
+     * @throws RejectedExecutionException 等待timeout后任务仍然已满
+     * @throws InterruptedException       等待时被中断
+     */
+    public Future<String> tryCallAsrService(String audioUrl, String callbackUrl, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (!submitAdmission.tryAcquire(timeout, unit)) {
+            METRICS.submitRejected();
+            throw new RejectedExecutionException(String.format("No room for new job after waiting %d %s.",
+                    timeout, unit));
+        }
+        return submitAdmitted(audioUrl, callbackUrl);
+    }
+
+    /**
+     * 异步调用语音识别服务，提交、轮询和回调均通过NIO完成，不占用阻塞线程
+     *
+     * @param audioUrl    音频的文件的url
+     * @param callbackUrl 识别结束后的回调url
+     * @return 识别与回调全部结束后完成的future，可从中取到jobId、识别结果及回调是否成功
+     */
+    public CompletableFuture<AsrResult> callAsrServiceAsync(String audioUrl, String callbackUrl) {
+        return asyncAsrEngine.call(audioUrl, callbackUrl);
+    }
+
+    private Future<String> submitAdmitted(String audioUrl, String callbackUrl) {
+        if (submitPipeline != null) {
+            try {
+                return submitPipeline.submit(audioUrl, callbackUrl);
+            } catch (RejectedExecutionException e) {
+                submitAdmission.release();
+                throw e;
+            }
+        }
+        FutureTask<String> future = new FutureTask<>(
+                new SubmitJobTask(audioUrl, callbackUrl, endpointRouter, audioDownloader, jobStatusPoller, dedupCache,
+                        asrSubmitter, segmentExecutors, storageJanitor));
+        executeAdmitted(future);
+        return future;
+    }
+
+    /**
+     * 执行已取得准入许可的任务，任务结束后归还许可
+     */
+    private void executeAdmitted(Runnable task) {
+        try {
+            submitJobExecutors.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    submitAdmission.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submitAdmission.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 注册指标上报器，每隔metrics.report.interval秒上报一次各环节耗时与线程池状态
+     *
+     * @param metricsReporter 指标上报器
+     */
+    public void addMetricsReporter(MetricsReporter metricsReporter) {
+        metricsReporters.add(metricsReporter);
     }
 
     /**
      * 销毁AsrServiceUtils控制的资源
      */
     public void destroy() {
+        CommonUtils.destroyExecutors(metricsReportExecutor, "metricsReportExecutor");
+        METRICS.unregisterMBean();
         CallbackTask.destroyCallbackFailedTaskManager();
         CommonUtils.destroyExecutors(submitJobExecutors, "submitJobExecutors");
+        CommonUtils.destroyExecutors(segmentExecutors, "segmentExecutors");
+        if (submitPipeline != null) {
+            submitPipeline.destroy();
+        }
+        jobStatusPoller.destroy();
+        if (callbackBatcher != null) {
+            callbackBatcher.destroy();
+        }
+        asyncAsrEngine.destroy();
+        //OBS客户端关闭前删除等待删除的文件
+        if (storageJanitor != null) {
+            storageJanitor.destroy();
+        }
+        audioDownloader.close();
+        for (AsrEndpoint endpoint : endpointRouter.getEndpoints()) {
+            endpoint.close();
+        }
         CommonUtils.destroyExecutors(callbackExecutors, "callbackExecutors");
+        CallbackTask.destroyCallbackTransport();
+        if (jobJournal != null) {
+            jobJournal.close();
+        }
     }
 
     private void init() {
 
-        AuthInfo asrAuthInfo = new AuthInfo(CONFIG.getAsrEndpoint(), CONFIG.getAsrRegion(), CONFIG.getAk(), CONFIG.getSk());
-        ProxyHostInfo proxyHostInfo = new ProxyHostInfo("proxycn2.xxx.com", 8080, "", "");
+        List<AsrEndpoint> endpoints = new ArrayList<>();
+        for (AsrAccount account : CONFIG.getAccounts()) {
+            endpoints.add(createEndpoint(account));
+        }
+        endpointRouter = new EndpointRouter(endpoints);
 
-        aisAccessClient = new AisAccess(asrAuthInfo, CONFIG.getConnectionTimeout(), CONFIG.getConnectionRequestTimeout(),
-                CONFIG.getSocketTimeout());
-        simpleObsClient = new SimpleObsClient(asrAuthInfo);
+        ExecutorService virtualSubmitExecutors = null;
+        ExecutorService virtualCallbackExecutors = null;
+        if (CONFIG.isVirtualThreadsEnabled()) {
+            virtualSubmitExecutors = CommonUtils.newVirtualThreadPerTaskExecutor("asr-sdk-submit-job-");
+            if (virtualSubmitExecutors != null) {
+                virtualCallbackExecutors = CommonUtils.newVirtualThreadPerTaskExecutor("asr-sdk-callback-");
+            } else {
+                LOGGER.warn("Virtual threads are not supported by this JVM, fall back to thread pools.");
+            }
+        }
+        boolean pipelineEnabled = isPipelineEnabled(virtualSubmitExecutors != null);
+        DownstreamLimiter callbackLimiter;
+        if (virtualSubmitExecutors != null) {
+            //每个任务一个虚拟线程，并发由准入许可和各下游的许可限制
+            submitJobExecutors = virtualSubmitExecutors;
+            callbackExecutors = virtualCallbackExecutors;
+            submitAdmission = new Semaphore(CONFIG.getVirtualMaxJobs());
+            asrLimiter = new DownstreamLimiter(CONFIG.getAsrMaxConcurrency());
+            callbackLimiter = new DownstreamLimiter(CONFIG.getCallbackMaxConcurrencyPerHost());
+            audioDownloader = new AudioDownloader(CONFIG.getDownloadMaxConcurrencyPerHost(), CONFIG.getVirtualMaxJobs(),
+                    new DownstreamLimiter(CONFIG.getObsMaxConcurrency()),
+                    new DownstreamLimiter(CONFIG.getDownloadMaxConcurrencyPerHost()));
+            LOGGER.info(String.format("Virtual threads enabled, max jobs:%d, asr:%d, obs:%d, download per host:%d, "
+                            + "callback per host:%d.", CONFIG.getVirtualMaxJobs(), CONFIG.getAsrMaxConcurrency(),
+                    CONFIG.getObsMaxConcurrency(), CONFIG.getDownloadMaxConcurrencyPerHost(),
+                    CONFIG.getCallbackMaxConcurrencyPerHost()));
+        } else {
+            //初始submitJobExecutors
+            AdmissionQueue submitQueue = new AdmissionQueue(CONFIG.getSubmitPoolQueueSize(),
+                    CONFIG.getSubmitPoolMaxSize());
+            ThreadPoolExecutor submitPool = new ThreadPoolExecutor(
+                    CONFIG.getSubmitPoolCoreSize(),
+                    CONFIG.getSubmitPoolMaxSize(),
+                    CONFIG.getSubmitPoolKeepAliveTime(),
+                    TimeUnit.SECONDS,
+                    submitQueue,
+                    CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-submit-job-%d"),
+                    submitQueue.rejectionPolicy(METRICS.countingAbortPolicy(true)));
+            submitJobExecutors = submitPool;
+            //许可数为最大线程数加队列长度，归还许可的线程回到队列前新任务放入队列预留的位置，不会被线程池拒绝；
+            //流水线模式下与下载阶段的线程数加队列长度相同
+            submitAdmission = new Semaphore(pipelineEnabled ? SubmitPipeline.admissionPermits()
+                    : CONFIG.getSubmitPoolMaxSize() + CONFIG.getSubmitPoolQueueSize());
 
-        //aisAccessClient = new AisAccessWithProxy(asrAuthInfo, proxyHostInfo, CONFIG.getConnectionTimeout(),
-        //        CONFIG.getConnectionRequestTimeout(), CONFIG.getSocketTimeout());
-        //simpleObsClient = new SimpleObsClient(asrAuthInfo, proxyHostInfo);
+            //初始callbackExecutors
+            ThreadPoolExecutor callbackPool = new ThreadPoolExecutor(
+                    CONFIG.getCallbackPoolCoreSize(),
+                    CONFIG.getCallbackPoolMaxSize(),
+                    CONFIG.getCallbackPoolKeepAliveTime(),
+                    TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(CONFIG.getCallbackPoolQueueSize()),
+                    CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-callback-%d"),
+                    METRICS.countingAbortPolicy(false));
+            callbackExecutors = callbackPool;
 
+            //线程池模式下并发已由线程数限制
+            asrLimiter = DownstreamLimiter.unlimited();
+            callbackLimiter = DownstreamLimiter.unlimited();
+            audioDownloader = new AudioDownloader();
+            METRICS.bindPools(submitPool, callbackPool);
+        }
+        if (CONFIG.isSegmentEnabled() && !pipelineEnabled) {
+            initSegmentExecutors(virtualSubmitExecutors != null);
+        }
+        if (CONFIG.isStorageCleanupEnabled()) {
+            storageJanitor = new StorageJanitor(TimeUnit.SECONDS.toMillis(CONFIG.getStorageObsRetention()),
+                    TimeUnit.SECONDS.toMillis(CONFIG.getStorageCleanupInterval()));
+        }
+        submitRateLimiter = RateLimiter.perSecond(CONFIG.getAsrSubmitQps());
+        asrSubmitter = new AsrSubmitter(submitRateLimiter, asrLimiter, storageJanitor);
+        RateLimiter queryRateLimiter = RateLimiter.perSecond(CONFIG.getAsrQueryQps());
+        PollPlanner pollPlanner = new PollPlanner();
 
-        //初始submitJobExecutors
-        submitJobExecutors = new ThreadPoolExecutor(
-                CONFIG.getSubmitPoolCoreSize(),
-                CONFIG.getSubmitPoolMaxSize(),
-                CONFIG.getSubmitPoolKeepAliveTime(),
-                TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(CONFIG.getSubmitPoolQueueSize()),
-                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-submit-job-%d"),
-                new ThreadPoolExecutor.AbortPolicy());
-
-        //初始callbackExecutors
-        callbackExecutors = new ThreadPoolExecutor(
-                CONFIG.getCallbackPoolCoreSize(),
-                CONFIG.getCallbackPoolMaxSize(),
-                CONFIG.getCallbackPoolKeepAliveTime(),
-                TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(CONFIG.getCallbackPoolQueueSize()),
-                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-callback-%d"),
-                new ThreadPoolExecutor.AbortPolicy());
+        if (CONFIG.isMetricsJmxEnabled()) {
+            METRICS.registerMBean();
+        }
+        if (CONFIG.getMetricsReportInterval() > 0) {
+            metricsReportExecutor = new ScheduledThreadPoolExecutor(1,
+                    CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-metrics-report-%d"));
+            metricsReportExecutor.scheduleWithFixedDelay(this::reportMetrics, CONFIG.getMetricsReportInterval(),
+                    CONFIG.getMetricsReportInterval(), TimeUnit.SECONDS);
+        }
 
         CallbackTask.initCallbackFailedTaskManager(callbackExecutors);
+        CallbackTask.initCallbackTransport(callbackLimiter);
+        if (CONFIG.isCallbackBatchEnabled()) {
+            callbackBatcher = new CallbackBatcher(callbackExecutors);
+        }
+        if (!CONFIG.getJournalDir().isEmpty()) {
+            try {
+                jobJournal = JobJournal.open(CONFIG.getJournalDir(), CONFIG.getJournalCompactThreshold(),
+                        CONFIG.getJournalSyncInterval());
+            } catch (IOException e) {
+                throw new IllegalStateException("Open job journal failed:" + CONFIG.getJournalDir(), e);
+            }
+            CallbackTask.setJobJournal(jobJournal);
+        }
+        jobStatusPoller = new JobStatusPoller(callbackExecutors, callbackBatcher, jobJournal, queryRateLimiter,
+                pollPlanner, storageJanitor);
+        if (CONFIG.isDedupEnabled()) {
+            dedupCache = new AudioDedupCache(CONFIG.getDedupCacheSize(), CONFIG.getDedupCacheTtl());
+            jobStatusPoller.addListener(dedupCache);
+        }
+        if (pipelineEnabled) {
+            WavSplitter wavSplitter = CONFIG.isSegmentEnabled() && !CONFIG.isDownloadStreaming()
+                    ? new WavSplitter(CONFIG.getSegmentDuration() * 1000L, CONFIG.getSegmentSilenceWindow()) : null;
+            submitPipeline = new SubmitPipeline(endpointRouter, audioDownloader, asrSubmitter, jobStatusPoller,
+                    submitAdmission, wavSplitter);
+            METRICS.bindPipeline(submitPipeline);
+            LOGGER.info(String.format("Submit pipeline enabled, download:%d+%d, upload:%d+%d, submit:%d+%d.",
+                    CONFIG.getPipelineDownloadThreads(), CONFIG.getPipelineDownloadQueueSize(),
+                    CONFIG.getPipelineUploadThreads(), CONFIG.getPipelineUploadQueueSize(),
+                    CONFIG.getPipelineSubmitThreads(), CONFIG.getPipelineSubmitQueueSize()));
+        }
+        Executor admittedTransferExecutor = task -> {
+            if (!submitAdmission.tryAcquire()) {
+                METRICS.submitRejected();
+                throw new RejectedExecutionException("Too many jobs waiting to be submitted.");
+            }
+            executeAdmitted(task);
+        };
+        asyncAsrEngine = new AsyncAsrEngine(endpointRouter, audioDownloader, admittedTransferExecutor,
+                submitRateLimiter, queryRateLimiter, pollPlanner, storageJanitor);
         //创建obs桶
-        simpleObsClient.createBucket(CONFIG.getObsBucketName());
+        for (AsrEndpoint endpoint : endpointRouter.getEndpoints()) {
+            endpoint.getSimpleObsClient().createBucket(endpoint.getObsBucketName());
+        }
+        //恢复上次退出时尚未完成回调的任务
+        if (jobJournal != null) {
+            for (JobJournal.JournaledJob journaledJob : jobJournal.pendingJobs()) {
+                if (journaledJob.getSegments() != null) {
+                    SegmentedJob.resume(jobStatusPoller, journaledJob, endpointRouter);
+                    continue;
+                }
+                jobStatusPoller.resume(journaledJob, endpointRouter.byName(journaledJob.getEndpoint()));
+            }
+        }
+
+        LOGGER.info("AsrServiceUtils init successfully, accounts:" + CONFIG.getAccounts());
+    }
+
+    /**
+     * @return 是否使用分阶段的提交流水线，虚拟线程模式和去重模式下不使用
+     */
+    private static boolean isPipelineEnabled(boolean virtualThreads) {
+        if (!CONFIG.isPipelineEnabled()) {
+            return false;
+        }
+        if (virtualThreads) {
+            LOGGER.warn("Submit pipeline is not used with virtual threads, each job runs on its own virtual thread.");
+            return false;
+        }
+        if (CONFIG.isDedupEnabled()) {
+            LOGGER.warn("Submit pipeline does not support dedup, it is disabled when dedup.enabled is on.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 长音频切分后的片段在segmentExecutors中并发上传和提交；线程都在忙时由提交任务的线程自己执行，
+     * 片段任务不会再提交新任务，因此不会相互等待
+     */
+    private void initSegmentExecutors(boolean virtualThreads) {
+        if (CONFIG.isDownloadStreaming() || CONFIG.isDedupEnabled()) {
+            LOGGER.warn("Segmenting long audio needs a local file and no dedup, "
+                    + "it is disabled when download.streaming or dedup.enabled is on.");
+            return;
+        }
+        if (virtualThreads) {
+            segmentExecutors = CommonUtils.newVirtualThreadPerTaskExecutor("asr-sdk-segment-");
+        } else {
+            segmentExecutors = new ThreadPoolExecutor(
+                    CONFIG.getSegmentPoolSize(),
+                    CONFIG.getSegmentPoolSize(),
+                    60,
+                    TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-segment-%d"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        LOGGER.info(String.format("Segmenting enabled, segment duration:%ds, silence window:%dms.",
+                CONFIG.getSegmentDuration(), CONFIG.getSegmentSilenceWindow()));
+    }
+
+    private AsrEndpoint createEndpoint(AsrAccount account) {
+        AuthInfo asrAuthInfo = new AuthInfo(account.getAsrEndpoint(), account.getRegion(), account.getAk(),
+                account.getSk());
+        ProxyHostInfo proxyHostInfo = new ProxyHostInfo("proxycn2.xxx.com", 8080, "", "");
+
+        AisAccess aisAccessClient = new AisAccess(asrAuthInfo, CONFIG.getConnectionTimeout(),
+                CONFIG.getConnectionRequestTimeout(), CONFIG.getSocketTimeout());
+        SimpleObsClient simpleObsClient = new SimpleObsClient(asrAuthInfo, account.getObsEndpoint());
+        simpleObsClient.setMultipartUploadOptions(new MultipartUploadOptions()
+                .setPartSizeInMB(CONFIG.getObsPartSizeInMB())
+                .setParallelism(CONFIG.getObsPartParallelism())
+                .setPartRetryTimes(CONFIG.getObsPartRetryTimes())
+                .setPoolSize(CONFIG.getObsPartPoolSize())
+                .setPoolQueueSize(CONFIG.getObsPartPoolQueueSize())
+                .setCheckpointDir(CONFIG.getObsCheckpointDir().isEmpty() ? null : CONFIG.getObsCheckpointDir())
+                .setCheckpointExpiryInSeconds(CONFIG.getObsCheckpointExpiry()));
+        //上次运行中失败且不会再续传的分段上传任务
+        simpleObsClient.abortExpiredUploads();
+
+        //aisAccessClient = new AisAccessWithProxy(asrAuthInfo, proxyHostInfo, CONFIG.getConnectionTimeout(),
+        //        CONFIG.getConnectionRequestTimeout(), CONFIG.getSocketTimeout());
+        //simpleObsClient = new SimpleObsClient(asrAuthInfo, proxyHostInfo);
+
+        return new AsrEndpoint(account, aisAccessClient, simpleObsClient, CONFIG.getRouterLatencyWeight(),
+                CONFIG.getRouterThrottleCooldown());
+    }
 
-        LOGGER.info("AsrServiceUtils init successfully.");
+    private void reportMetrics() {
+        if (metricsReporters.isEmpty()) {
+            return;
+        }
+        Map<String, Number> metrics = Collections.unmodifiableMap(METRICS.toMap());
+        for (MetricsReporter metricsReporter : metricsReporters) {
+            try {
+                metricsReporter.report(metrics);
+            } catch (RuntimeException e) {
+                LOGGER.error("Report metrics failed, reporter:" + metricsReporter, e);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,123 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.model.SubmitReq;
+import com.huawei.ais.demo.asr.model.SubmitSuccessRes;
+
+/**
+ * 向语音识别服务提交识别任务，按asr.submit.qps限速，并限制同时进行的提交数<p/>
+ * 提交成功的任务交给StorageJanitor记录，任务结束后清理它的音频；提交失败时立即清理
+ */
+class AsrSubmitter {
+
+    private static final Log LOGGER = LogFactory.getLog(AsrSubmitter.class);
+
+    private static final String SUBMIT_JOB_URI = "/v1.0/voice/asr/long-sentence";
+    private static final String JSON_ROOT = "result";
+    private static final String ASR_DOWNSTREAM = "asr";
+    private static final String THROTTLED_ERROR_CODE = "APIG.0308";
+
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
+
+    private final RateLimiter submitRateLimiter;
+    private final DownstreamLimiter asrLimiter;
+    private final StorageJanitor storageJanitor;
+
+    /**
+     * @param submitRateLimiter 提交任务的限速器，提交前取得令牌，避免超过服务端的QPS限制
+     * @param asrLimiter        同时向语音识别服务提交的任务数
+     * @param storageJanitor    清理音频占用的存储，为null时不清理
+     */
+    AsrSubmitter(RateLimiter submitRateLimiter, DownstreamLimiter asrLimiter, StorageJanitor storageJanitor) {
+        this.submitRateLimiter = submitRateLimiter;
+        this.asrLimiter = asrLimiter;
+        this.storageJanitor = storageJanitor;
+    }
+
+    /**
+     * 提交识别任务，提交前取得限速令牌和语音识别服务的并发许可，并把耗时和是否被限流记录到账号上
+     *
+     * @param audio    音频的url或本地路径，用于日志
+     * @param payload  要提交的音频
+     * @param endpoint 提交任务的账号
+     * @return 识别任务id，提交失败时为null
+     */
+    String submit(String audio, AudioPayload payload, AsrEndpoint endpoint) throws IOException {
+        String jobId = null;
+        try {
+            jobId = doSubmit(audio, payload, endpoint);
+        } finally {
+            if (storageJanitor != null) {
+                if (jobId != null) {
+                    storageJanitor.track(jobId, payload);
+                } else {
+                    storageJanitor.release(payload);
+                }
+            }
+        }
+        return jobId;
+    }
+
+    private String doSubmit(String audio, AudioPayload payload, AsrEndpoint endpoint) throws IOException {
+        SubmitReq submitReq = payload.toSubmitReq();
+        String obsUrl = payload.isInline() ? "inline" : submitReq.getUrl();
+
+        try {
+            submitRateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for submit permit.");
+        }
+        //许可持有到读完响应，响应体读完后连接才归还连接池
+        asrLimiter.acquire(ASR_DOWNSTREAM);
+        String jobId;
+        long startTime = AsrMetrics.startTimer();
+        boolean throttled = false;
+        try {
+            //音频内容由JsonGenerator直接编码为base64写入字节数组，签名需要完整的请求体
+            HttpEntity requestEntity = new ByteArrayEntity(HttpJsonDataUtils.objectToJsonBytes(submitReq),
+                    ContentType.APPLICATION_JSON);
+            HttpResponse response = endpoint.getAisAccessClient().post(SUBMIT_JOB_URI, requestEntity);
+            METRICS.recordSubmit(startTime);
+            if (!HttpJsonDataUtils.isOKResponded(response)) {
+                LOGGER.error(String.format("Submit the job failed, audio_url:%s obs_url:%s endpoint:%s", audio,
+                        obsUrl, endpoint.getName()));
+                if (!payload.isInline()) {
+                    LOGGER.debug("Request body:" + HttpJsonDataUtils.objectToPrettyJsonString(submitReq));
+                }
+                String responseStr = EntityUtils.toString(response.getEntity(), "UTF-8");
+                LOGGER.error(responseStr);
+                throttled = isThrottled(response, responseStr);
+            }
+
+            // 获取到提交成功的任务ID, 准备进行结果的查询
+            SubmitSuccessRes submitResult = HttpJsonDataUtils.getResponseObject(response, SubmitSuccessRes.class,
+                    JSON_ROOT);
+            jobId = submitResult.getJobId();
+        } finally {
+            asrLimiter.release(ASR_DOWNSTREAM);
+            endpoint.submitted(AsrMetrics.elapsedMillisSince(startTime), throttled);
+        }
+        LOGGER.info("Submit job done, job_id=" + jobId);
+        return jobId;
+    }
+
+    /**
+     * @return 是否被网关或服务端限流，被限流的账号在冷却时间内少分配任务
+     */
+    static boolean isThrottled(HttpResponse response, String responseStr) {
+        return response.getStatusLine().getStatusCode() == 429
+                || responseStr != null && responseStr.contains(THROTTLED_ERROR_CODE);
+    }
+}
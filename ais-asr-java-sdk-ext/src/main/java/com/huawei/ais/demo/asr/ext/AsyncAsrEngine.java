@@ -0,0 +1,409 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.huawei.ais.demo.asr.Config;
+import com.huawei.ais.demo.asr.model.GetResultRes;
+import com.huawei.ais.demo.asr.model.JobStatus;
+import com.huawei.ais.demo.asr.model.SubmitReq;
+import com.huawei.ais.demo.asr.model.SubmitSuccessRes;
+
+/**
+ * 基于NIO的异步调用引擎<p/>
+ * 提交任务、轮询状态、回调三个环节都通过异步http客户端完成，由少量I/O线程驱动，
+ * 轮询间隔与回调重试间隔由一个定时线程调度，不占用任何阻塞线程。<br/>
+ * 仅音频下载和上传OBS依赖阻塞的OBS SDK，仍在submitJobExecutors中执行
+ */
+class AsyncAsrEngine {
+
+    private static final Log LOGGER = LogFactory.getLog(AsyncAsrEngine.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
+
+    private static final String SUBMIT_JOB_URI = "/v1.0/voice/asr/long-sentence";
+    private static final String GET_JOB_RESULT_URI_TEMPLATE = "/v1.0/voice/asr/long-sentence?job_id=%s&format="
+            + CONFIG.getAsrFormatType();
+    private static final String JSON_ROOT = "result";
+
+    private final EndpointRouter endpointRouter;
+    private final AudioDownloader audioDownloader;
+    private final Executor transferExecutor;
+    private final RateLimiter submitRateLimiter;
+    private final RateLimiter queryRateLimiter;
+    private final PollPlanner pollPlanner;
+    private final StorageJanitor storageJanitor;
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param storageJanitor 任务结束或提交失败后清理音频占用的存储，为null时不清理
+     */
+    AsyncAsrEngine(EndpointRouter endpointRouter, AudioDownloader audioDownloader, Executor transferExecutor,
+                   RateLimiter submitRateLimiter, RateLimiter queryRateLimiter, PollPlanner pollPlanner,
+                   StorageJanitor storageJanitor) {
+        this.endpointRouter = endpointRouter;
+        this.audioDownloader = audioDownloader;
+        this.transferExecutor = transferExecutor;
+        this.submitRateLimiter = submitRateLimiter;
+        this.queryRateLimiter = queryRateLimiter;
+        this.pollPlanner = pollPlanner;
+        this.storageJanitor = storageJanitor;
+        this.httpClient = createHttpClient();
+        this.httpClient.start();
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-async-timer-%d"));
+    }
+
+    /**
+     * 异步调用语音识别服务
+     *
+     * @param audioUrl    音频的文件的url
+     * @param callbackUrl 识别结束后的回调url
+     * @return 识别与回调全部结束后完成的future
+     */
+    CompletableFuture<AsrResult> call(String audioUrl, String callbackUrl) {
+        AsrEndpoint endpoint = endpointRouter.choose();
+        //轮询结束（或更早的环节失败）时结束在途计数，只结束一次
+        AtomicBoolean ended = new AtomicBoolean();
+        Runnable jobEnded = () -> {
+            if (ended.compareAndSet(false, true)) {
+                endpoint.jobEnded();
+            }
+        };
+        CompletableFuture<AudioPayload> fetched;
+        try {
+            fetched = CompletableFuture.supplyAsync(() -> fetch(endpoint, audioUrl), transferExecutor);
+        } catch (RejectedExecutionException e) {
+            jobEnded.run();
+            throw e;
+        }
+        return fetched
+                .thenCompose(payload -> {
+                    PollPlanner.Plan plan = pollPlanner.plan(payload.getSize());
+                    return submitJob(endpoint, audioUrl, payload)
+                            .whenComplete((jobId, error) -> {
+                                if (error != null) {
+                                    release(payload);
+                                }
+                            })
+                            .thenCompose(jobId -> pollUntilDone(endpoint, audioUrl, jobId, plan)
+                                    .whenComplete((result, error) -> {
+                                        jobEnded.run();
+                                        //放弃查询时任务可能仍在识别，只在FINISHED/FAILED后清理
+                                        if (result instanceof GetResultRes) {
+                                            release(payload);
+                                        }
+                                    })
+                                    .thenCompose(result -> callback(audioUrl, callbackUrl, jobId,
+                                            CallbackTask.CachedNotification.of(
+                                                    new CallbackTask.Notification(jobId, result)), 0)
+                                            .thenApply(delivered -> new AsrResult(jobId, result, delivered))));
+                })
+                .whenComplete((result, error) -> jobEnded.run());
+    }
+
+    void destroy() {
+        CommonUtils.destroyExecutors(timer, "asyncTimer");
+        IOUtils.closeQuietly(httpClient);
+    }
+
+    private AudioPayload fetch(AsrEndpoint endpoint, String audioUrl) {
+        try {
+            return audioDownloader.fetch(audioUrl, endpoint.getSimpleObsClient(), endpoint.getObsBucketName(), null);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void release(AudioPayload payload) {
+        if (storageJanitor != null) {
+            storageJanitor.release(payload);
+        }
+    }
+
+    private CompletableFuture<String> submitJob(AsrEndpoint endpoint, String audioUrl, AudioPayload payload) {
+        SubmitReq submitReq = payload.toSubmitReq();
+        String obsUrl = payload.isInline() ? "inline" : submitReq.getUrl();
+        byte[] body = HttpJsonDataUtils.objectToJsonBytes(submitReq);
+
+        return afterPermit(submitRateLimiter)
+                .thenCompose(permitted -> {
+                    long startTime = AsrMetrics.startTimer();
+                    return execute(endpoint.getRequestSigner().signedPost(SUBMIT_JOB_URI, body))
+                            .whenComplete((response, error) -> {
+                                METRICS.recordSubmit(startTime);
+                                if (error != null) {
+                                    endpoint.submitted(AsrMetrics.elapsedMillisSince(startTime), false);
+                                }
+                            })
+                            .thenApply(response -> handleSubmitResponse(endpoint, audioUrl, obsUrl, startTime,
+                                    response));
+                });
+    }
+
+    private String handleSubmitResponse(AsrEndpoint endpoint, String audioUrl, String obsUrl, long startTime,
+                                        HttpResponse response) {
+        boolean throttled = false;
+        try {
+            if (!HttpJsonDataUtils.isOKResponded(response)) {
+                LOGGER.error(String.format("Submit the job failed, audio_url:%s obs_url:%s endpoint:%s",
+                        audioUrl, obsUrl, endpoint.getName()));
+                String responseStr = EntityUtils.toString(response.getEntity(), "UTF-8");
+                throttled = AsrSubmitter.isThrottled(response, responseStr);
+                throw new IOException(responseStr);
+            }
+            String jobId = HttpJsonDataUtils.getResponseObject(response, SubmitSuccessRes.class,
+                    JSON_ROOT).getJobId();
+            LOGGER.info("Submit job done, job_id=" + jobId);
+            return jobId;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            endpoint.submitted(AsrMetrics.elapsedMillisSince(startTime), throttled);
+        }
+    }
+
+    private CompletableFuture<Object> pollUntilDone(AsrEndpoint endpoint, String audioUrl, String jobId,
+                                                    PollPlanner.Plan plan) {
+        CompletableFuture<Object> done = new CompletableFuture<>();
+        schedulePoll(endpoint, audioUrl, jobId, plan, new AtomicInteger(), done);
+        return done;
+    }
+
+    /**
+     * @param failedQueries 连续返回非2xx的查询次数
+     */
+    private void schedulePoll(AsrEndpoint endpoint, String audioUrl, String jobId, PollPlanner.Plan plan,
+                              AtomicInteger failedQueries, CompletableFuture<Object> done) {
+        schedule(() -> afterPermit(queryRateLimiter)
+                .thenCompose(permitted -> execute(
+                        endpoint.getRequestSigner().signedGet(String.format(GET_JOB_RESULT_URI_TEMPLATE, jobId))))
+                .whenComplete((response, error) -> {
+                    Object result = null;
+                    if (error != null) {
+                        LOGGER.error(String.format("Query job[%s] result error, will try later.", jobId), error);
+                    } else {
+                        try {
+                            result = handlePollResponse(audioUrl, jobId, plan, failedQueries, response);
+                        } catch (IOException | RuntimeException e) {
+                            LOGGER.error(String.format("Query job[%s] result error, will try later.", jobId), e);
+                        }
+                    }
+                    if (result != null) {
+                        METRICS.recordJobDone(plan.getPolls(), plan.elapsedInMillis());
+                        done.complete(result);
+                    } else {
+                        schedulePoll(endpoint, audioUrl, jobId, plan, failedQueries, done);
+                    }
+                }), plan.nextDelayInMillis(), done);
+    }
+
+    /**
+     * 非2xx的响应（限流、服务端错误等）不代表任务已结束，稍后重新查询，连续query.max.errors次后放弃
+     *
+     * @return 任务已结束时返回结果，放弃查询时返回最后的错误响应，任务未结束时返回null
+     */
+    private Object handlePollResponse(String audioUrl, String jobId, PollPlanner.Plan plan,
+                                      AtomicInteger failedQueries, HttpResponse response) throws IOException {
+        if (!HttpJsonDataUtils.isOKResponded(response)) {
+            String responseStr = EntityUtils.toString(response.getEntity(), "UTF-8");
+            int failures = failedQueries.incrementAndGet();
+            if (failures < CONFIG.getQueryMaxErrors()) {
+                LOGGER.warn(String.format("Query job[%s] result failed[%d/%d], will try later: %s", jobId,
+                        failures, CONFIG.getQueryMaxErrors(), responseStr));
+                return null;
+            }
+            LOGGER.error(String.format("Query job[%s] result failed %d times, give up! associated audio_url:%s",
+                    jobId, failures, audioUrl));
+            LOGGER.info(responseStr);
+            return responseStr;
+        }
+        failedQueries.set(0);
+        GetResultRes jobResult = HttpJsonDataUtils.getResponseObject(response, GetResultRes.class, JSON_ROOT);
+        JobStatus jobStatus = JobStatus.valueFrom(jobResult.getStatusCode());
+        if (jobStatus == JobStatus.FINISHED) {
+            LOGGER.info(String.format("Job[%s] has finished.", jobId));
+            plan.finished();
+            return jobResult;
+        } else if (jobStatus == JobStatus.FAILED) {
+            LOGGER.error(String.format("Job[%s] has failed, %s, associated audio_url:%s",
+                    jobId, jobResult.getStatusMsg(), audioUrl));
+            return jobResult;
+        }
+        LOGGER.info(String.format("Job[%s] %s, waiting...", jobId, jobResult.getStatusMsg()));
+        return null;
+    }
+
+    /**
+     * @param notification 序列化一次的回调内容，重试时复用
+     */
+    private CompletableFuture<Boolean> callback(String audioUrl, String callbackUrl, String jobId,
+                                                CallbackTask.CachedNotification notification, int retriedTimes) {
+        long startTime = AsrMetrics.startTimer();
+        return post(callbackUrl, notification).handle((response, error) -> {
+            METRICS.recordCallback(startTime);
+            if (error == null && HttpJsonDataUtils.isOKResponded(response)) {
+                LOGGER.info(String.format("Callback for job[%s] done.", jobId));
+                return CompletableFuture.completedFuture(true);
+            }
+            LOGGER.error(String.format("Callback for job[%s] failed, associated audio_url:%s", jobId, audioUrl),
+                    error);
+            if (retriedTimes >= CONFIG.getRetryCallbackTimes()) {
+                LOGGER.error(String.format("Retry[%d/%d] callback for job[%s], give up!", retriedTimes,
+                        CONFIG.getRetryCallbackTimes(), jobId));
+                METRICS.callbackAbandoned();
+                return CompletableFuture.completedFuture(false);
+            }
+            METRICS.callbackRetried();
+            CompletableFuture<Boolean> retried = new CompletableFuture<>();
+            schedule(() -> callback(audioUrl, callbackUrl, jobId, notification, retriedTimes + 1)
+                            .whenComplete((delivered, e) -> retried.complete(Boolean.TRUE.equals(delivered))),
+                    TimeUnit.MILLISECONDS.convert(CONFIG.getRetryCallbackInterval(), TimeUnit.SECONDS), retried);
+            return retried;
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * 发送回调内容，内容已压缩且回调地址接受gzip时直接发送压缩后的数据，被以415或400拒绝时以未压缩的内容重发；
+     * 各回调地址是否接受gzip与CallbackTransport共用同一份记录
+     */
+    private CompletableFuture<HttpResponse> post(String callbackUrl, CallbackTask.CachedNotification notification) {
+        CallbackTransport callbackTransport = CallbackTask.getCallbackTransport();
+        if (!notification.isCompressed() || callbackTransport == null
+                || !callbackTransport.acceptsGzip(callbackUrl)) {
+            return postPlain(callbackUrl, notification);
+        }
+        NByteArrayEntity entity = new NByteArrayEntity(notification.getData(), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+        return execute(callbackPost(callbackUrl, entity)).thenCompose(response -> {
+            if (callbackTransport.rejectsGzip(callbackUrl, response.getStatusLine().getStatusCode(),
+                    response.getStatusLine().toString())) {
+                return postPlain(callbackUrl, notification);
+            }
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    private CompletableFuture<HttpResponse> postPlain(String callbackUrl,
+                                                      CallbackTask.CachedNotification notification) {
+        byte[] json;
+        try {
+            json = notification.toJson();
+        } catch (IOException e) {
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return execute(callbackPost(callbackUrl, new NByteArrayEntity(json, ContentType.APPLICATION_JSON)));
+    }
+
+    private static HttpPost callbackPost(String callbackUrl, HttpEntity entity) {
+        HttpPost httpPost = new HttpPost(callbackUrl);
+        httpPost.setHeader("Content-Type", ContentType.APPLICATION_JSON.toString());
+        httpPost.setEntity(entity);
+        return httpPost;
+    }
+
+    /**
+     * 取得限速器的令牌后完成，令牌不足时由定时线程在令牌发放时间完成，不阻塞I/O线程
+     */
+    private CompletableFuture<Void> afterPermit(RateLimiter rateLimiter) {
+        long waitInNanos = rateLimiter.reserve();
+        if (waitInNanos == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> permitted = new CompletableFuture<>();
+        schedule(() -> permitted.complete(null), TimeUnit.NANOSECONDS.toMillis(waitInNanos) + 1, permitted);
+        return permitted;
+    }
+
+    private void schedule(Runnable action, long delayInMillis, CompletableFuture<?> owner) {
+        try {
+            timer.schedule(action, delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            owner.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        httpClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private static CloseableHttpAsyncClient createHttpClient() {
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONFIG.getConnectionTimeout())
+                .setConnectionRequestTimeout(CONFIG.getConnectionRequestTimeout())
+                .setSocketTimeout(CONFIG.getSocketTimeout())
+                .build();
+        return HttpAsyncClients.custom()
+                .setSSLStrategy(new SSLIOSessionStrategy(sslContext, NoopHostnameVerifier.INSTANCE))
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(CONFIG.getAsyncIoThreadCount())
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(CONFIG.getAsyncMaxConnections())
+                .setMaxConnPerRoute(CONFIG.getAsyncMaxConnections())
+                .setThreadFactory(CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-async-io-%d"))
+                .build();
+    }
+}
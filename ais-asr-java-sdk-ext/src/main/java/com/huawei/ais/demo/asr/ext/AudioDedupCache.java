@@ -0,0 +1,214 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.huawei.ais.demo.asr.model.GetResultRes;
+import com.huawei.ais.demo.asr.model.JobStatus;
+import com.huawei.ais.demo.obs.ObsFileHandle;
+
+/**
+ * 音频去重缓存<p/>
+ * 以音频url和音频内容的SHA-256为键，记录对应的OBS文件、识别任务id以及已完成的识别结果，
+ * 按LRU淘汰，超过有效期的条目视为不存在。<br/>
+ * 同一个键同时只有一个线程加载，其余线程等待其结果（single-flight），
+ * 因此并发提交的相同音频只会下载、上传和识别一次
+ */
+class AudioDedupCache implements JobStatusPoller.JobListener {
+
+    private static final Log LOGGER = LogFactory.getLog(AudioDedupCache.class);
+
+    private static final String URL_KEY_PREFIX = "url:";
+    private static final String CONTENT_KEY_PREFIX = "content:";
+
+    private final long ttlInMillis;
+    private final Map<String, CachedAudio> entries;
+    private final Map<String, CompletableFuture<CachedAudio>> loadingEntries = new ConcurrentHashMap<>();
+
+    AudioDedupCache(final int maxEntries, long ttlInSeconds) {
+        this.ttlInMillis = TimeUnit.SECONDS.toMillis(ttlInSeconds);
+        this.entries = new LinkedHashMap<String, CachedAudio>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAudio> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 加载器，缓存未命中时由single-flight中的首个线程调用
+     */
+    interface Loader {
+
+        /**
+         * @return 加载结果，为null时不缓存
+         */
+        CachedAudio load() throws IOException;
+    }
+
+    static String urlKey(String audioUrl) {
+        return URL_KEY_PREFIX + DigestUtils.sha256Hex(audioUrl);
+    }
+
+    static String contentKey(MessageDigest contentDigest) {
+        return CONTENT_KEY_PREFIX + Hex.encodeHexString(contentDigest.digest());
+    }
+
+    static MessageDigest newContentDigest() {
+        return DigestUtils.getSha256Digest();
+    }
+
+    /**
+     * 查询缓存，未命中时加载；同一个键正在被其他线程加载时等待其结果
+     *
+     * @param key    urlKey或contentKey
+     * @param loader 加载器
+     * @return 缓存或加载的结果，加载失败返回null
+     */
+    CachedAudio getOrLoad(String key, Loader loader) throws IOException {
+        CachedAudio cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<CachedAudio> loading = new CompletableFuture<>();
+        CompletableFuture<CachedAudio> existing = loadingEntries.putIfAbsent(key, loading);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            cached = get(key);
+            if (cached == null) {
+                cached = loader.load();
+                if (cached != null) {
+                    put(key, cached);
+                }
+            }
+            loading.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingEntries.remove(key, loading);
+        }
+    }
+
+    synchronized CachedAudio get(String key) {
+        CachedAudio cached = entries.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.createdTime > ttlInMillis) {
+            entries.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    synchronized void put(String key, CachedAudio cached) {
+        entries.put(key, cached);
+    }
+
+    /**
+     * 移除指向同一条缓存的所有键
+     */
+    synchronized void invalidate(CachedAudio cached) {
+        entries.values().removeIf(entry -> entry == cached);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 任务完成时记录识别结果；任务失败或查询失败时移除对应条目，下次提交重新识别
+     */
+    @Override
+    public synchronized void onJobDone(String jobId, Object result) {
+        boolean finished = result instanceof GetResultRes
+                && JobStatus.valueFrom(((GetResultRes) result).getStatusCode()) == JobStatus.FINISHED;
+        Iterator<CachedAudio> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedAudio cached = iterator.next();
+            if (jobId.equals(cached.jobId)) {
+                if (finished) {
+                    cached.result = (GetResultRes) result;
+                } else {
+                    iterator.remove();
+                }
+            }
+        }
+        if (!finished) {
+            LOGGER.info(String.format("Job[%s] did not finish, evict it from dedup cache.", jobId));
+        }
+    }
+
+    private static CachedAudio await(CompletableFuture<CachedAudio> loading) throws IOException {
+        try {
+            return loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the same audio.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 一段已上传并提交识别的音频
+     */
+    static class CachedAudio {
+
+        private final ObsFileHandle obsFileHandle;
+        private final String jobId;
+        private final String endpoint;
+        private final long createdTime = System.currentTimeMillis();
+        private volatile GetResultRes result;
+
+        CachedAudio(ObsFileHandle obsFileHandle, String jobId) {
+            this(obsFileHandle, jobId, null);
+        }
+
+        /**
+         * @param endpoint 提交任务的账号名称
+         */
+        CachedAudio(ObsFileHandle obsFileHandle, String jobId, String endpoint) {
+            this.obsFileHandle = obsFileHandle;
+            this.jobId = jobId;
+            this.endpoint = endpoint;
+        }
+
+        ObsFileHandle getObsFileHandle() {
+            return obsFileHandle;
+        }
+
+        String getJobId() {
+            return jobId;
+        }
+
+        String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return 已完成的识别结果，任务未结束时为null
+         */
+        GetResultRes getResult() {
+            return result;
+        }
+    }
+}
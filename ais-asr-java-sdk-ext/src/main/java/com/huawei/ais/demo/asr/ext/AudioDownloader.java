@@ -0,0 +1,306 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URLDecoder;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.huawei.ais.demo.asr.Config;
+import com.huawei.ais.demo.obs.ObsFileHandle;
+import com.huawei.ais.demo.obs.SimpleObsClient;
+
+/**
+ * 音频下载器，支持两种方式<p/>
+ * - 下载到本地data目录，再由调用方上传到OBS；音频源支持Range时超过download.range.part.size的音频分段并发下载<br/>
+ * - 流式模式：把下载的响应体直接写入OBS，仅在长度未知且超过内存缓冲上限时才落盘<p/>
+ * 两种方式都按download.conn.timeout、download.socket.timeout设置连接和读取超时
+ */
+class AudioDownloader {
+
+    private static final Log LOGGER = LogFactory.getLog(AudioDownloader.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private static final String LOCAL_DATA_DIR = "data/";
+
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
+
+    private static final String OBS_DOWNSTREAM = "obs";
+
+    private final CloseableHttpClient httpClient;
+    private final DownstreamLimiter obsLimiter;
+    private final DownstreamLimiter downloadLimiter;
+    private final ThreadPoolExecutor rangeExecutors;
+    private final RangeDownloader rangeDownloader;
+
+    AudioDownloader() {
+        this(CONFIG.getSubmitPoolMaxSize(), CONFIG.getSubmitPoolMaxSize(), DownstreamLimiter.unlimited(),
+                DownstreamLimiter.unlimited());
+    }
+
+    /**
+     * @param maxConnPerRoute 每个音频源的连接数，另加分段下载的线程数
+     * @param maxConnTotal    总连接数，另加分段下载的线程数
+     * @param obsLimiter      同时上传到OBS的音频数
+     * @param downloadLimiter 每个音频源（协议、主机和端口）同时下载的音频数
+     */
+    AudioDownloader(int maxConnPerRoute, int maxConnTotal, DownstreamLimiter obsLimiter,
+                    DownstreamLimiter downloadLimiter) {
+        this.obsLimiter = obsLimiter;
+        this.downloadLimiter = downloadLimiter;
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONFIG.getDownloadConnTimeout())
+                .setConnectionRequestTimeout(CONFIG.getConnectionRequestTimeout())
+                .setSocketTimeout(CONFIG.getDownloadSocketTimeout())
+                .build();
+        int rangePoolSize = CONFIG.getDownloadRangePartSize() > 0 ? CONFIG.getDownloadRangePoolSize() : 0;
+        httpClient = HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnPerRoute(maxConnPerRoute + rangePoolSize)
+                .setMaxConnTotal(maxConnTotal + rangePoolSize)
+                .build();
+        if (rangePoolSize > 0) {
+            //没有空闲线程时不排队，由下载线程自己下载更多的段
+            rangeExecutors = new ThreadPoolExecutor(rangePoolSize, rangePoolSize, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-range-download-%d"));
+            rangeExecutors.allowCoreThreadTimeOut(true);
+        } else {
+            rangeExecutors = null;
+        }
+        rangeDownloader = new RangeDownloader(httpClient, rangeExecutors, CONFIG.getDownloadRangePartSize(),
+                CONFIG.getDownloadRangeParallelism(), CONFIG.getDownloadRangeRetries());
+    }
+
+    /**
+     * 获取要提交的音频，不超过inline.max.bytes的音频直接随提交请求发送，其余音频根据download.streaming配置
+     * 流式转存或先下载到本地再上传到OBS
+     *
+     * @param audioUrl        音频的文件的url
+     * @param simpleObsClient OBS客户端
+     * @param bucketName      桶名称
+     * @param contentDigest   同时计算内容摘要，可为null
+     */
+    AudioPayload fetch(String audioUrl, SimpleObsClient simpleObsClient, String bucketName,
+                       MessageDigest contentDigest) throws IOException {
+        if (CONFIG.isDownloadStreaming()) {
+            return streamToObs(audioUrl, simpleObsClient, bucketName, contentDigest);
+        }
+        String filePath = downloadToFile(audioUrl, contentDigest);
+        return uploadOrInline(simpleObsClient, bucketName, filePath);
+    }
+
+    /**
+     * 已下载的音频不超过inline.max.bytes时读入内存直接提交并删除本地文件，否则上传到OBS，
+     * 本地文件随AudioPayload交给调用方，任务结束后删除；上传失败时直接删除
+     */
+    AudioPayload uploadOrInline(SimpleObsClient simpleObsClient, String bucketName, String filePath)
+            throws IOException {
+        File file = new File(filePath);
+        if (CONFIG.getInlineMaxBytes() > 0 && file.length() <= CONFIG.getInlineMaxBytes()) {
+            byte[] data = FileUtils.readFileToByteArray(file);
+            FileUtils.deleteQuietly(file);
+            return AudioPayload.inline(data);
+        }
+        try {
+            return AudioPayload.obs(uploadFile(simpleObsClient, bucketName, filePath), filePath);
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    /**
+     * 上传已下载的音频到OBS，并记录上传耗时
+     */
+    ObsFileHandle uploadFile(SimpleObsClient simpleObsClient, String bucketName, String filePath)
+            throws InterruptedIOException {
+        obsLimiter.acquire(OBS_DOWNSTREAM);
+        try {
+            long startTime = AsrMetrics.startTimer();
+            ObsFileHandle obsFileHandle = simpleObsClient.uploadFile(bucketName, filePath);
+            METRICS.recordUpload(startTime);
+            return obsFileHandle;
+        } finally {
+            obsLimiter.release(OBS_DOWNSTREAM);
+        }
+    }
+
+    /**
+     * 下载音频到本地data目录，支持Range的大音频分段并发下载；文件名带有随机前缀，同名音频的下载互不覆盖，
+     * 上传到OBS时也以此作为文件名
+     *
+     * @param audioUrl      音频的文件的url
+     * @param contentDigest 下载完成后计算内容摘要，可为null
+     * @return 本地文件的绝对路径
+     */
+    String downloadToFile(String audioUrl, MessageDigest contentDigest) throws IOException {
+        LOGGER.info("Begin to download audio file... url:" + audioUrl);
+        String origin = DownstreamLimiter.origin(audioUrl);
+        File destFile = new File(LOCAL_DATA_DIR + uniqueNameOf(audioUrl));
+        downloadLimiter.acquire(origin);
+        try {
+            long startTime = AsrMetrics.startTimer();
+            long length = rangeDownloader.download(audioUrl, destFile);
+            METRICS.recordDownload(startTime, length);
+            if (contentDigest != null) {
+                //分段写入的顺序不确定，从本地文件计算摘要
+                try (InputStream input = new FileInputStream(destFile)) {
+                    DigestUtils.updateDigest(contentDigest, input);
+                }
+            }
+            LOGGER.info("Download done! local:" + destFile.getAbsolutePath());
+            return destFile.getAbsolutePath();
+        } catch (IOException e) {
+            LOGGER.error("Download audio failed. audio_url:" + audioUrl, e);
+            //不留下下载了一半的文件
+            FileUtils.deleteQuietly(destFile);
+            throw e;
+        } finally {
+            downloadLimiter.release(origin);
+        }
+    }
+
+    /**
+     * 边下载边上传，把音频直接写入OBS；长度不超过inline.max.bytes的音频只读入内存，不上传
+     *
+     * @param audioUrl        音频的文件的url
+     * @param simpleObsClient OBS客户端
+     * @param bucketName      桶名称
+     * @param contentDigest   上传时同时计算内容摘要，可为null
+     */
+    private AudioPayload streamToObs(String audioUrl, SimpleObsClient simpleObsClient, String bucketName,
+                                     MessageDigest contentDigest) throws IOException {
+        LOGGER.info("Begin to stream audio file to obs... url:" + audioUrl);
+        String objectKey = uniqueNameOf(audioUrl);
+        String origin = DownstreamLimiter.origin(audioUrl);
+        downloadLimiter.acquire(origin);
+        long startTime = AsrMetrics.startTimer();
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(audioUrl))) {
+            if (!HttpJsonDataUtils.isOKResponded(response)) {
+                throw new IOException("Download audio failed, response status:" + response.getStatusLine());
+            }
+            HttpEntity entity = response.getEntity();
+            long contentLength = entity.getContentLength();
+            int inlineMaxBytes = CONFIG.getInlineMaxBytes();
+            InputStream input = digesting(entity.getContent(), contentDigest);
+            try {
+                if (inlineMaxBytes > 0 && contentLength <= inlineMaxBytes) {
+                    //长度未知时最多读inlineMaxBytes + 1个字节，超过后已读的部分连同剩余数据一起上传
+                    ByteArrayOutputStream head = new ByteArrayOutputStream(
+                            contentLength >= 0 ? (int) contentLength : 8192);
+                    long copied = IOUtils.copyLarge(input, head, 0, inlineMaxBytes + 1L);
+                    if (copied <= inlineMaxBytes) {
+                        METRICS.recordDownload(startTime, copied);
+                        return AudioPayload.inline(head.toByteArray());
+                    }
+                    input = new SequenceInputStream(new ByteArrayInputStream(head.toByteArray()), input);
+                    contentLength = -1;
+                }
+                ObsFileHandle obsFileHandle = upload(input, objectKey, contentLength, simpleObsClient, bucketName);
+                //边下载边上传时无法区分两者的耗时，整体记为下载
+                METRICS.recordDownload(startTime, obsFileHandle.getSize());
+                return AudioPayload.obs(obsFileHandle);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Stream audio to obs failed. audio_url:" + audioUrl, e);
+            throw e;
+        } finally {
+            downloadLimiter.release(origin);
+        }
+    }
+
+    /**
+     * 同时占用音频源和OBS的许可，总是先取音频源的许可，不会相互等待
+     */
+    private ObsFileHandle upload(InputStream input, String objectKey, long contentLength,
+                                 SimpleObsClient simpleObsClient, String bucketName) throws IOException {
+        obsLimiter.acquire(OBS_DOWNSTREAM);
+        try {
+            if (contentLength >= 0) {
+                return simpleObsClient.uploadStream(bucketName, objectKey, input, contentLength);
+            }
+            return bufferAndUpload(input, objectKey, simpleObsClient, bucketName);
+        } finally {
+            obsLimiter.release(OBS_DOWNSTREAM);
+        }
+    }
+
+    void close() {
+        CommonUtils.destroyExecutors(rangeExecutors, "rangeExecutors");
+        IOUtils.closeQuietly(httpClient);
+    }
+
+    /**
+     * 长度未知时先在内存中缓冲，超过上限后连同剩余数据一起写入本地文件再上传，上传结束后删除本地文件
+     */
+    private ObsFileHandle bufferAndUpload(InputStream input, String objectKey, SimpleObsClient simpleObsClient,
+                                          String bucketName) throws IOException {
+        int limit = CONFIG.getDownloadMemoryBufferSize();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long copied = IOUtils.copyLarge(input, buffer, 0, limit + 1L);
+        if (copied <= limit) {
+            return simpleObsClient.uploadStream(bucketName, objectKey,
+                    new ByteArrayInputStream(buffer.toByteArray()), copied);
+        }
+
+        File destFile = new File(LOCAL_DATA_DIR + objectKey);
+        LOGGER.info(String.format("Content length of %s is unknown and exceeds %d bytes, buffer it to %s.",
+                objectKey, limit, destFile.getAbsolutePath()));
+        FileUtils.forceMkdir(destFile.getParentFile());
+        try {
+            try (OutputStream output = new FileOutputStream(destFile)) {
+                buffer.writeTo(output);
+                IOUtils.copyLarge(input, output);
+            }
+            return simpleObsClient.uploadFile(bucketName, destFile.getAbsolutePath());
+        } finally {
+            //只是缓冲，上传后不再需要
+            FileUtils.deleteQuietly(destFile);
+        }
+    }
+
+    private static InputStream digesting(InputStream input, MessageDigest contentDigest) {
+        return contentDigest == null ? input : new DigestInputStream(input, contentDigest);
+    }
+
+    /**
+     * 每次转存生成不同的名称，url的文件名相同或同一url重复提交的任务各用各的文件，一个任务结束后的清理不影响其他任务
+     */
+    static String uniqueNameOf(String audioUrl) throws IOException {
+        return UUID.randomUUID().toString().replace("-", "") + "-" + fileNameOf(audioUrl);
+    }
+
+    static String fileNameOf(String audioUrl) throws IOException {
+        String urlDecoded = URLDecoder.decode(audioUrl, "UTF-8");
+        return urlDecoded.substring(urlDecoded.lastIndexOf("/") + 1);
+    }
+}
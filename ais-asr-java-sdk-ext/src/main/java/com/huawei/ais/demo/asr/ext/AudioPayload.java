@@ -0,0 +1,67 @@
+package com.huawei.ais.demo.asr.ext;
+
+import com.huawei.ais.demo.asr.model.SubmitReq;
+import com.huawei.ais.demo.obs.ObsFileHandle;
+
+/**
+ * 要提交识别的音频：短音频的内容直接随提交请求以base64发送（data），其余音频先转存到OBS再提交共享地址（url）
+ */
+class AudioPayload {
+
+    private final byte[] data;
+    private final ObsFileHandle obsFileHandle;
+    private final String localFilePath;
+
+    private AudioPayload(byte[] data, ObsFileHandle obsFileHandle, String localFilePath) {
+        this.data = data;
+        this.obsFileHandle = obsFileHandle;
+        this.localFilePath = localFilePath;
+    }
+
+    static AudioPayload inline(byte[] data) {
+        return new AudioPayload(data, null, null);
+    }
+
+    static AudioPayload obs(ObsFileHandle obsFileHandle) {
+        return new AudioPayload(null, obsFileHandle, null);
+    }
+
+    /**
+     * @param localFilePath 上传前落盘的本地文件，任务结束后删除
+     */
+    static AudioPayload obs(ObsFileHandle obsFileHandle, String localFilePath) {
+        return new AudioPayload(null, obsFileHandle, localFilePath);
+    }
+
+    boolean isInline() {
+        return data != null;
+    }
+
+    /**
+     * @return OBS文件句柄，内联提交的音频没有OBS文件，返回null
+     */
+    ObsFileHandle getObsFileHandle() {
+        return obsFileHandle;
+    }
+
+    /**
+     * @return 本地文件，没有落盘或已删除时返回null
+     */
+    String getLocalFilePath() {
+        return localFilePath;
+    }
+
+    long getSize() {
+        return data != null ? data.length : obsFileHandle.getSize();
+    }
+
+    SubmitReq toSubmitReq() {
+        SubmitReq submitReq = new SubmitReq();
+        if (data != null) {
+            submitReq.setAudio(data);
+        } else {
+            submitReq.setUrl(obsFileHandle.generateSharedDownloadUrl());
+        }
+        return submitReq;
+    }
+}
@@ -0,0 +1,233 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.huawei.ais.demo.asr.Config;
+
+/**
+ * 批量回调<p/>
+ * 按callbackUrl缓冲已结束任务的Notification，攒够callback.batch.size条或等待callback.batch.linger毫秒后，
+ * 以json数组一次POST给回调服务。回调服务可以在响应中逐个说明每个任务是否接收成功：<pre>
+ * [{"job_id": "xxx", "success": true}, {"job_id": "yyy", "success": false}]
+ * </pre>
+ * 响应非2xx时整批视为失败；2xx且响应体为空或不是上述格式时整批视为成功；
+ * 响应体为数组时，标记为失败或未出现在数组中的任务视为失败。
+ * 失败的任务进入CallbackRetryQueue单独重试，重试时发送只含一个元素的数组
+ */
+class CallbackBatcher {
+
+    private static final Log LOGGER = LogFactory.getLog(CallbackBatcher.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ExecutorService callbackExecutors;
+    private final ScheduledThreadPoolExecutor lingerTimer;
+    //Map<回调url，尚未发送的批次>
+    private final Map<String, Batch> pendingBatches = new HashMap<>();
+    private final int batchSize;
+    private final long lingerInMillis;
+
+    CallbackBatcher(ExecutorService callbackExecutors) {
+        this(callbackExecutors, CONFIG.getCallbackBatchSize(), CONFIG.getCallbackBatchLinger());
+    }
+
+    CallbackBatcher(ExecutorService callbackExecutors, int batchSize, long lingerInMillis) {
+        this.callbackExecutors = callbackExecutors;
+        this.batchSize = batchSize;
+        this.lingerInMillis = lingerInMillis;
+        this.lingerTimer = new ScheduledThreadPoolExecutor(1,
+                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-callback-batch-%d"));
+        this.lingerTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 加入一条待回调的任务结果
+     */
+    void add(String audioUrl, String jobId, String callbackUrl, Object result) {
+        Item item = new Item(audioUrl, new CallbackTask.Notification(jobId, result));
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = pendingBatches.get(callbackUrl);
+            if (batch == null) {
+                batch = new Batch(callbackUrl);
+                pendingBatches.put(callbackUrl, batch);
+                Batch lingering = batch;
+                batch.lingerFuture = lingerTimer.schedule(() -> flush(lingering), lingerInMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            batch.items.add(item);
+            if (batch.items.size() >= batchSize) {
+                full = detach(batch);
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+    }
+
+    /**
+     * 立即发送所有未满的批次并停止计时，在callbackExecutors销毁前调用
+     */
+    void destroy() {
+        List<Batch> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(pendingBatches.values());
+            pendingBatches.clear();
+        }
+        CommonUtils.destroyExecutors(lingerTimer, "callbackBatchTimer");
+        for (Batch batch : remaining) {
+            send(batch);
+        }
+    }
+
+    private void flush(Batch batch) {
+        Batch detached;
+        synchronized (this) {
+            detached = pendingBatches.get(batch.callbackUrl) == batch ? detach(batch) : null;
+        }
+        if (detached != null) {
+            submit(detached);
+        }
+    }
+
+    private Batch detach(Batch batch) {
+        pendingBatches.remove(batch.callbackUrl);
+        if (batch.lingerFuture != null) {
+            batch.lingerFuture.cancel(false);
+        }
+        return batch;
+    }
+
+    private void submit(Batch batch) {
+        try {
+            callbackExecutors.submit(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            LOGGER.error(String.format("Submit batch callback to %s failed, will try later.", batch.callbackUrl));
+            try {
+                lingerTimer.schedule(() -> submit(batch), lingerInMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException shutdown) {
+                send(batch);
+            }
+        }
+    }
+
+    private void send(Batch batch) {
+        List<CallbackTask.Notification> notifications = new ArrayList<>(batch.items.size());
+        for (Item item : batch.items) {
+            notifications.add(item.notification);
+        }
+
+        Set<String> failedJobIds;
+        try {
+            //整批的内容最大，边序列化边发送，开启gzip时按回调地址协商压缩
+            CallbackTransport.Response response = CallbackTask.getCallbackTransport().stream(batch.callbackUrl,
+                    notifications);
+            failedJobIds = failedJobIds(batch, response);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error(String.format("Batch callback to %s error.", batch.callbackUrl), e);
+            failedJobIds = null;
+        }
+
+        int failed = 0;
+        for (Item item : batch.items) {
+            if (failedJobIds == null || failedJobIds.contains(item.notification.jobId)) {
+                failed++;
+                CallbackTask.retryLater(item.audioUrl, item.notification.jobId, batch.callbackUrl,
+                        CallbackTask.CachedNotification.of(HttpJsonDataUtils.objectToJsonBytes(
+                                Collections.singletonList(item.notification))));
+            } else {
+                CallbackTask.markDelivered(item.notification.jobId, batch.callbackUrl);
+            }
+        }
+        LOGGER.info(String.format("Batch callback to %s done, %d/%d delivered.", batch.callbackUrl,
+                batch.items.size() - failed, batch.items.size()));
+    }
+
+    /**
+     * @return 回调失败的任务id，整批失败时返回null
+     */
+    private static Set<String> failedJobIds(Batch batch, CallbackTransport.Response response) {
+        if (!response.isOK()) {
+            LOGGER.error(String.format("Batch callback to %s failed, response:%s", batch.callbackUrl,
+                    response.getStatusLine()));
+            LOGGER.error(response.getBody());
+            return null;
+        }
+        Set<String> failedJobIds = new HashSet<>();
+        if (response.getBody() == null || response.getBody().trim().isEmpty()) {
+            return failedJobIds;
+        }
+        JobAck[] acks;
+        try {
+            acks = objectMapper.readValue(response.getBody(), JobAck[].class);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Unrecognized batch callback response from %s, treat all as delivered.",
+                    batch.callbackUrl));
+            return failedJobIds;
+        }
+        Set<String> deliveredJobIds = new HashSet<>();
+        for (JobAck ack : acks) {
+            if (ack.success) {
+                deliveredJobIds.add(ack.jobId);
+            }
+        }
+        for (Item item : batch.items) {
+            if (!deliveredJobIds.contains(item.notification.jobId)) {
+                failedJobIds.add(item.notification.jobId);
+            }
+        }
+        return failedJobIds;
+    }
+
+    private static class Item {
+
+        private final String audioUrl;
+        private final CallbackTask.Notification notification;
+
+        Item(String audioUrl, CallbackTask.Notification notification) {
+            this.audioUrl = audioUrl;
+            this.notification = notification;
+        }
+    }
+
+    private static class Batch {
+
+        private final String callbackUrl;
+        private final List<Item> items = new ArrayList<>();
+        private ScheduledFuture<?> lingerFuture;
+
+        Batch(String callbackUrl) {
+            this.callbackUrl = callbackUrl;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class JobAck {
+        @JsonProperty("job_id")
+        String jobId;
+        @JsonProperty("success")
+        boolean success;
+    }
+}
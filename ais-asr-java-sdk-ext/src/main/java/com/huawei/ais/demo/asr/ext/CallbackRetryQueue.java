@@ -0,0 +1,231 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.huawei.ais.demo.asr.Config;
+
+/**
+ * 失败回调的重试队列<p/>
+ * 待重试的回调按下次重试时间放在延时队列中，由一个分发线程在到期时取出并提交到callbackExecutors，
+ * 每次只处理已到期的任务，与失败任务总数无关。<br/>
+ * 重试间隔按指数退避增长并加入随机抖动，避免回调服务恢复时所有失败任务在同一时刻重试；
+ * 同时对每个回调地址（host:port）限制同时在途的重试数，超出的任务在该地址有空闲时再依次提交
+ */
+class CallbackRetryQueue {
+
+    private static final Log LOGGER = LogFactory.getLog(CallbackRetryQueue.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private final ExecutorService callbackExecutors;
+    private final DelayQueue<RetryRecord> delayQueue = new DelayQueue<>();
+    //Map<回调地址，该地址的重试状态>
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    CallbackRetryQueue(ExecutorService callbackExecutors) {
+        this.callbackExecutors = callbackExecutors;
+        this.dispatcher = CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-retry-callback-%d")
+                .newThread(this::dispatchLoop);
+        this.dispatcher.start();
+    }
+
+    /**
+     * 按退避策略安排一次重试
+     */
+    void schedule(RetryRecord retryRecord) {
+        long delayInMillis = backoffInMillis(retryRecord.getRetriedTimes(), ThreadLocalRandom.current().nextDouble());
+        LOGGER.info(String.format("Callback for job[%s] will be retried in %d ms.",
+                retryRecord.getTask().getJobId(), delayInMillis));
+        schedule(retryRecord, delayInMillis);
+    }
+
+    void schedule(RetryRecord retryRecord, long delayInMillis) {
+        retryRecord.setNextAttemptTime(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayInMillis));
+        delayQueue.put(retryRecord);
+    }
+
+    /**
+     * 一次重试结束（无论成功与否），释放其所占的回调地址名额
+     */
+    void attemptDone(RetryRecord retryRecord) {
+        RetryRecord next;
+        synchronized (this) {
+            Endpoint endpoint = endpoints.get(retryRecord.getEndpoint());
+            if (endpoint == null) {
+                return;
+            }
+            endpoint.inFlight--;
+            next = endpoint.parked.poll();
+            if (next != null) {
+                endpoint.inFlight++;
+            } else if (endpoint.inFlight <= 0) {
+                endpoints.remove(retryRecord.getEndpoint());
+            }
+        }
+        if (next != null) {
+            submit(next);
+        }
+    }
+
+    /**
+     * @return 等待重试的回调数
+     */
+    synchronized int size() {
+        int parked = 0;
+        for (Endpoint endpoint : endpoints.values()) {
+            parked += endpoint.parked.size();
+        }
+        return delayQueue.size() + parked;
+    }
+
+    void destroy() {
+        running = false;
+        dispatcher.interrupt();
+        LOGGER.info(String.format("Shutdown callback retry queue, %d callback(s) will not be retried.", size()));
+        delayQueue.clear();
+        synchronized (this) {
+            endpoints.clear();
+        }
+    }
+
+    /**
+     * 第retriedTimes次重试后的等待时间：interval * multiplier^retriedTimes，不超过maxInterval，
+     * 再按jitter比例随机缩短，例如jitter为0.5时实际等待时间在计算值的50%~100%之间
+     *
+     * @param retriedTimes 已重试的次数，首次失败为0
+     * @param random       [0, 1)之间的随机数
+     */
+    static long backoffInMillis(int retriedTimes, double random) {
+        double intervalInMillis = TimeUnit.SECONDS.toMillis(CONFIG.getRetryCallbackInterval())
+                * Math.pow(CONFIG.getRetryCallbackMultiplier(), retriedTimes);
+        double maxIntervalInMillis = TimeUnit.SECONDS.toMillis(CONFIG.getRetryCallbackMaxInterval());
+        double jitter = Math.max(0, Math.min(1, CONFIG.getRetryCallbackJitter()));
+        return (long) (Math.min(intervalInMillis, maxIntervalInMillis) * (1 - jitter * random));
+    }
+
+    static String endpointOf(String callbackUrl) {
+        try {
+            URI uri = URI.create(callbackUrl);
+            if (uri.getHost() != null) {
+                return uri.getHost() + ":" + uri.getPort();
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Unparsable callback url:" + callbackUrl);
+        }
+        return callbackUrl;
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            RetryRecord retryRecord;
+            try {
+                retryRecord = delayQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            dispatch(retryRecord);
+        }
+    }
+
+    private void dispatch(RetryRecord retryRecord) {
+        synchronized (this) {
+            Endpoint endpoint = endpoints.computeIfAbsent(retryRecord.getEndpoint(), key -> new Endpoint());
+            if (endpoint.inFlight >= CONFIG.getRetryCallbackMaxPerEndpoint()) {
+                LOGGER.debug(String.format("Too many retries in flight to %s, park the callback for job[%s].",
+                        retryRecord.getEndpoint(), retryRecord.getTask().getJobId()));
+                endpoint.parked.add(retryRecord);
+                return;
+            }
+            endpoint.inFlight++;
+        }
+        submit(retryRecord);
+    }
+
+    private void submit(RetryRecord retryRecord) {
+        CallbackTask task = retryRecord.getTask();
+        try {
+            LOGGER.info(String.format("Submit retry callback task for job[%s].", task.getJobId()));
+            task.setRetryRecord(retryRecord);
+            callbackExecutors.submit(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.error(String.format("Failed to submit retry callback task for job[%s], try later.",
+                    task.getJobId()));
+            attemptDone(retryRecord);
+            if (running) {
+                schedule(retryRecord, TimeUnit.SECONDS.toMillis(CONFIG.getRetryCallbackInterval()));
+            }
+        }
+    }
+
+    private static class Endpoint {
+        private int inFlight;
+        private final Queue<RetryRecord> parked = new ArrayDeque<>();
+    }
+
+    /**
+     * 一次待执行的重试，保存已序列化的回调内容，重试时不必再次查询识别结果
+     */
+    static class RetryRecord implements Delayed {
+
+        private final CallbackTask task;
+        private final String endpoint;
+        private final int retriedTimes;
+        private final CallbackTask.CachedNotification notification;
+        private volatile long nextAttemptTime;
+
+        RetryRecord(CallbackTask task, String callbackUrl, int retriedTimes,
+                    CallbackTask.CachedNotification notification) {
+            this.task = task;
+            this.endpoint = endpointOf(callbackUrl);
+            this.retriedTimes = retriedTimes;
+            this.notification = notification;
+        }
+
+        CallbackTask getTask() {
+            return task;
+        }
+
+        String getEndpoint() {
+            return endpoint;
+        }
+
+        int getRetriedTimes() {
+            return retriedTimes;
+        }
+
+        CallbackTask.CachedNotification getNotification() {
+            return notification;
+        }
+
+        void setNextAttemptTime(long nextAttemptTime) {
+            this.nextAttemptTime = nextAttemptTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextAttemptTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(nextAttemptTime, ((RetryRecord) o).nextAttemptTime);
+        }
+    }
+}
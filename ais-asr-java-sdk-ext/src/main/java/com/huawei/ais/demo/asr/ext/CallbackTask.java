@@ -1,147 +1,119 @@
 package com.huawei.ais.demo.asr.ext;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Map;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
-import org.apache.http.entity.ContentType;
-import org.apache.http.message.BasicHeader;
-import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.huawei.ais.demo.HttpJsonDataUtils;
-import com.huawei.ais.demo.asr.CommonUtils;
 import com.huawei.ais.demo.asr.Config;
-import com.huawei.ais.demo.asr.model.GetResultRes;
-import com.huawei.ais.demo.asr.model.JobStatus;
-import com.huawei.ais.sdk.AisAccess;
-import com.huawei.ais.sdk.util.HttpClientUtils;
 
+/**
+ * 回调任务，把识别结果POST到callbackUrl，首次回调由JsonGenerator直接写入连接<p/>
+ * 回调失败时才序列化回调内容（较大时gzip压缩），随RetryRecord一起放入CallbackRetryQueue，
+ * 重试只重发回调请求，不再向语音识别服务查询结果
+ */
 class CallbackTask implements Runnable {
 
     private static final Log LOGGER = LogFactory.getLog(CallbackTask.class);
 
     private static final Config CONFIG = Config.getInstance();
 
-    private static final String GET_JOB_RESULT_URI_TEMPLATE = "/v1.0/voice/asr/long-sentence?job_id=%s&format="
-            + CONFIG.getAsrFormatType();
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
 
-    private static final String JSON_ROOT = "result";
-    private static final long QUERY_JOB_RESULT_INTERVAL = CONFIG.getQueryInterval();
-
-    //Map<任务，还需要重试的次数>
-    private static Map<CallbackTask, RetryRecord> callbackFailedTasks = new ConcurrentHashMap<>();
-    private static ScheduledExecutorService retryCallbackExecutor;
-    private static ExecutorService callbackExecutors;
+    private static CallbackRetryQueue callbackRetryQueue;
+    private static CallbackTransport callbackTransport;
+    private static JobJournal jobJournal;
 
     private String audioUrl;
     private String jobId;
     private String callbackUrl;
-    private AisAccess aisAccessClient;
+    private volatile Object result;
+    private volatile CallbackRetryQueue.RetryRecord retryRecord;
 
-    CallbackTask(String audioUrl, String jobId, String callbackUrl, AisAccess aisAccessClient) {
+    CallbackTask(String audioUrl, String jobId, String callbackUrl, Object result) {
         this.audioUrl = audioUrl;
         this.jobId = jobId;
         this.callbackUrl = callbackUrl;
-        this.aisAccessClient = aisAccessClient;
+        this.result = result;
     }
 
     @Override
     public void run() {
 
         int retryTimes = 0;
-        if (callbackFailedTasks.containsKey(this)) {
-            int retriedTimes = callbackFailedTasks.get(this).getRetriedTimes();
-            retryTimes = retriedTimes + 1;
+        CachedNotification notification = null;
+        Notification firstNotification = null;
+        CallbackRetryQueue.RetryRecord retryRecord = this.retryRecord;
+        if (retryRecord != null) {
+            retryTimes = retryRecord.getRetriedTimes() + 1;
+            notification = retryRecord.getNotification();
             LOGGER.info(String.format("Retry[%d/%d] callback for job[%s]", retryTimes, CONFIG.getRetryCallbackTimes(), jobId));
+        } else {
+            //首次回调直接把识别结果序列化到连接上，之后释放识别结果的引用
+            firstNotification = new Notification(jobId, result);
+            this.result = null;
         }
         boolean callbackSuccess = false;
         try {
-            Object result = queryJobResult(audioUrl, jobId);
-            callbackSuccess = callback(audioUrl, callbackUrl, jobId, result);
-        } catch (IOException e) {
+            callbackSuccess = callback(audioUrl, callbackUrl, jobId, firstNotification, notification);
+        } catch (IOException | RuntimeException e) {
             LOGGER.error("Callback error:", e);
         }
 
+        if (retryRecord != null) {
+            callbackRetryQueue.attemptDone(retryRecord);
+        }
         if (callbackSuccess) {
-            callbackFailedTasks.remove(this);
+            markDelivered(jobId, callbackUrl);
         } else {
             if (retryTimes >= CONFIG.getRetryCallbackTimes()) {
                 LOGGER.error(String.format("Retry[%d/%d] callback for job[%s], give up!", retryTimes,
                         CONFIG.getRetryCallbackTimes(), jobId));
-                callbackFailedTasks.remove(this);
+                markAbandoned(jobId, callbackUrl);
             } else {
                 LOGGER.error(String.format("Callback failed for job[%s], will try later.", jobId));
-                callbackFailedTasks.put(this, new RetryRecord(retryTimes));
+                METRICS.callbackRetried();
+                //首次回调失败时才序列化并缓存回调内容，重试只使用缓存的内容
+                if (notification == null) {
+                    notification = CachedNotification.of(firstNotification);
+                }
+                callbackRetryQueue.schedule(
+                        new CallbackRetryQueue.RetryRecord(this, callbackUrl, retryTimes, notification));
             }
         }
 
     }
 
-    private Object queryJobResult(String audioUrl, String jobId) throws IOException {
-
-        // 构建进行查询的请求链接，并进行轮询查询，由于是异步任务，必须多次进行轮询
-        // 直到结果状态为任务已处理结束
-        String url = String.format(GET_JOB_RESULT_URI_TEMPLATE, jobId);
-        while (!Thread.currentThread().isInterrupted()) {
-            HttpResponse getResponse = aisAccessClient.get(url);
-            if (!HttpJsonDataUtils.isOKResponded(getResponse)) {
-                LOGGER.error(String.format("Query job[%s] result failed, associated audio_url:%s", jobId, audioUrl));
-                String responseStr = EntityUtils.toString(getResponse.getEntity(), "UTF-8");
-                LOGGER.info(responseStr);
-                return responseStr;
+    /**
+     * @param firstNotification 首次回调的内容，边序列化边发送
+     * @param notification      重试时缓存的回调内容，不为null时优先使用
+     */
+    private boolean callback(String audioUrl, String callbackUrl, String jobId, Notification firstNotification,
+                             CachedNotification notification) throws IOException {
+        CallbackTransport.Response response = notification != null
+                ? callbackTransport.post(callbackUrl, notification)
+                : callbackTransport.stream(callbackUrl, firstNotification);
+
+        if (!response.isOK()) {
+            LOGGER.error(String.format("Callback for job[%s] failed, associated audio_url:%s, response:%s", jobId,
+                    audioUrl, response.getStatusLine()));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Request body:" + (notification != null
+                        ? new String(notification.toJson(), StandardCharsets.UTF_8)
+                        : HttpJsonDataUtils.objectToJsonString(firstNotification)));
             }
-            GetResultRes jobResult
-                    = HttpJsonDataUtils.getResponseObject(getResponse, GetResultRes.class, JSON_ROOT);
-            JobStatus jobStatus = JobStatus.valueFrom(jobResult.getStatusCode());
-
-            // 根据任务状态觉得继续轮询或者打印结果
-            if (jobStatus == JobStatus.ACCEPTED || jobStatus == JobStatus.RUNNING) {
-                //如果任务还未处理完，等待一段时间，继续进行轮询
-                LOGGER.info(String.format("Job[%s] %s, waiting...", jobId, jobResult.getStatusMsg()));
-                try {
-                    Thread.sleep(QUERY_JOB_RESULT_INTERVAL);
-                } catch (InterruptedException e) {
-                    LOGGER.warn(String.format("Thread[%s] was interrupted, exit.", Thread.currentThread().getName()));
-                }
-            } else if (jobStatus == JobStatus.FAILED) {
-                // 如果处理失败，直接退出
-                LOGGER.error(String.format("Job[%s] has failed, %s, associated audio_url:%s",
-                        jobId, jobResult.getStatusMsg(), audioUrl));
-                return jobResult;
-            } else if (jobStatus == JobStatus.FINISHED) {
-                // 任务处理成功
-                LOGGER.info(String.format("Job[%s] has finished.", jobId));
-                return jobResult;
-            } else {
-                LOGGER.info("Should not be here!");
-            }
-        }
-        return null;
-    }
-
-    private boolean callback(String audioUrl, String callbackUrl, String jobId, Object result) throws IOException {
-        Header[] headers = new Header[]{
-                new BasicHeader("Content-Type", ContentType.APPLICATION_JSON.toString())};
-
-        HttpResponse response = HttpClientUtils.post(callbackUrl, headers,
-                HttpJsonDataUtils.objectToHttpEntity(new Notification(jobId, result)), CONFIG.getConnectionTimeout(),
-                CONFIG.getConnectionRequestTimeout(), CONFIG.getSocketTimeout());
-
-        if (!HttpJsonDataUtils.isOKResponded(response)) {
-            LOGGER.error(String.format("Callback for job[%s] failed, associated audio_url:%s", jobId, audioUrl));
-            LOGGER.debug("Request body:" + HttpJsonDataUtils.objectToJsonString(result));
-            LOGGER.error(EntityUtils.toString(response.getEntity(), "UTF-8"));
+            LOGGER.error(response.getBody());
             return false;
         } else {
             LOGGER.info(String.format("Callback for job[%s] done.", jobId));
@@ -153,9 +125,13 @@ class CallbackTask implements Runnable {
         return this.jobId;
     }
 
+    void setRetryRecord(CallbackRetryQueue.RetryRecord retryRecord) {
+        this.retryRecord = retryRecord;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hash(jobId);
+        return Objects.hash(jobId, callbackUrl);
     }
 
     @Override
@@ -167,74 +143,145 @@ class CallbackTask implements Runnable {
             return false;
         }
         CallbackTask that = (CallbackTask) o;
-        return Objects.equals(jobId, that.jobId);
+        return Objects.equals(jobId, that.jobId) && Objects.equals(callbackUrl, that.callbackUrl);
     }
 
     protected static void initCallbackFailedTaskManager(ExecutorService callbackExecutors) {
-        CallbackTask.callbackExecutors = callbackExecutors;
-        retryCallbackExecutor = Executors.newSingleThreadScheduledExecutor(
-                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-retry-callback-%d"));
-
-        retryCallbackExecutor.scheduleAtFixedRate(
-                new FailedCallbackTasksScanner(),
-                CONFIG.getRetryCallbackInterval(),
-                CONFIG.getRetryCallbackInterval() / 3,
-                TimeUnit.SECONDS);
+        callbackRetryQueue = new CallbackRetryQueue(callbackExecutors);
     }
 
     protected static void destroyCallbackFailedTaskManager() {
-        CommonUtils.destroyExecutors(retryCallbackExecutor, "retryCallbackExecutor");
-        callbackFailedTasks.clear();
-    }
-
-    static class FailedCallbackTasksScanner implements Runnable {
-        @Override
-        public void run() {
-            long nowInSeconds;
-            for (Map.Entry<CallbackTask, RetryRecord> entry : callbackFailedTasks.entrySet()) {
-                nowInSeconds = TimeUnit.SECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
-                //只有没有处于没有正在重试且距上次重试间隔等于或超过设定门限状态的回调task才会被再次提交到回调任务池中
-                if (!entry.getValue().isRetrying()
-                        && nowInSeconds - entry.getValue().getLatestRetryTime() >= CONFIG.getRetryCallbackInterval()) {
-                    try {
-                        LOGGER.info(String.format("Submit retry callback task for job[%s].", entry.getKey().getJobId()));
-                        callbackExecutors.submit(entry.getKey());
-                        entry.getValue().setRetrying(true);
-                    } catch (RejectedExecutionException e) {
-                        LOGGER.error(String.format("Failed to submit retry callback task for job[%s] failed, try later.",
-                                entry.getKey().getJobId()), e);
-                    }
-                }
-            }
+        if (callbackRetryQueue != null) {
+            callbackRetryQueue.destroy();
         }
     }
 
+    /**
+     * 安排一次重试，用于批量回调中失败的任务
+     */
+    static void retryLater(String audioUrl, String jobId, String callbackUrl, CachedNotification notification) {
+        if (CONFIG.getRetryCallbackTimes() <= 0) {
+            LOGGER.error(String.format("Callback failed for job[%s], give up!", jobId));
+            markAbandoned(jobId, callbackUrl);
+            return;
+        }
+        CallbackTask task = new CallbackTask(audioUrl, jobId, callbackUrl, null);
+        METRICS.callbackRetried();
+        callbackRetryQueue.schedule(new CallbackRetryQueue.RetryRecord(task, callbackUrl, 0, notification));
+    }
 
-    static class RetryRecord {
-        private int retriedTimes;
-        private long latestRetryTime;
-        private boolean isRetrying;
+    static void markDelivered(String jobId, String callbackUrl) {
+        if (jobJournal != null) {
+            jobJournal.delivered(jobId, callbackUrl);
+        }
+    }
 
-        RetryRecord(int retriedTimes) {
-            this.retriedTimes = retriedTimes;
-            this.latestRetryTime = TimeUnit.SECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
-            this.isRetrying = false;
+    static void markAbandoned(String jobId, String callbackUrl) {
+        METRICS.callbackAbandoned();
+        if (jobJournal != null) {
+            jobJournal.abandoned(jobId, callbackUrl);
         }
+    }
+
+    /**
+     * @return 等待重试的回调数
+     */
+    static int pendingRetries() {
+        return callbackRetryQueue == null ? 0 : callbackRetryQueue.size();
+    }
 
-        int getRetriedTimes() {
-            return retriedTimes;
+    static CallbackTransport getCallbackTransport() {
+        return callbackTransport;
+    }
+
+    protected static void initCallbackTransport() {
+        callbackTransport = new CallbackTransport();
+    }
+
+    /**
+     * @param callbackLimiter 每个回调服务同时进行的回调数，虚拟线程模式下使用
+     */
+    protected static void initCallbackTransport(DownstreamLimiter callbackLimiter) {
+        callbackTransport = new CallbackTransport(CONFIG.isCallbackGzipEnabled(), callbackLimiter);
+    }
+
+    /**
+     * @param jobJournal 任务日志，回调成功或放弃回调时记录，为null时不记录
+     */
+    protected static void setJobJournal(JobJournal jobJournal) {
+        CallbackTask.jobJournal = jobJournal;
+    }
+
+    protected static void destroyCallbackTransport() {
+        if (callbackTransport != null) {
+            callbackTransport.close();
+        }
+    }
+
+    /**
+     * 序列化后的回调内容，超过COMPRESS_THRESHOLD字节时以gzip压缩保存，识别结果通常压缩后只有原来的几分之一
+     */
+    static class CachedNotification {
+
+        private static final int COMPRESS_THRESHOLD = 4096;
+
+        private final byte[] data;
+        private final boolean compressed;
+
+        private CachedNotification(byte[] data, boolean compressed) {
+            this.data = data;
+            this.compressed = compressed;
+        }
+
+        static CachedNotification of(String json) {
+            return of(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * 直接序列化为UTF-8字节后缓存，不经过中间的字符串
+         */
+        static CachedNotification of(Notification notification) {
+            return of(HttpJsonDataUtils.objectToJsonBytes(notification));
         }
 
-        long getLatestRetryTime() {
-            return latestRetryTime;
+        /**
+         * @param bytes json格式的回调内容（UTF-8），超过COMPRESS_THRESHOLD时压缩后缓存
+         */
+        static CachedNotification of(byte[] bytes) {
+            if (bytes.length <= COMPRESS_THRESHOLD) {
+                return new CachedNotification(bytes, false);
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 4);
+            try (OutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(bytes);
+            } catch (IOException e) {
+                //写内存不会出错，压缩失败时保存原文
+                return new CachedNotification(bytes, false);
+            }
+            return new CachedNotification(buffer.toByteArray(), true);
+        }
+
+        /**
+         * @return json格式的回调内容
+         */
+        byte[] toJson() throws IOException {
+            if (!compressed) {
+                return data;
+            }
+            try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+                return IOUtils.toByteArray(gzip);
+            }
         }
 
-        boolean isRetrying() {
-            return isRetrying;
+        boolean isCompressed() {
+            return compressed;
         }
 
-        void setRetrying(boolean retrying) {
-            isRetrying = retrying;
+        /**
+         * @return 缓存的数据，isCompressed()时为gzip压缩后的json
+         */
+        byte[] getData() {
+            return data;
         }
     }
 
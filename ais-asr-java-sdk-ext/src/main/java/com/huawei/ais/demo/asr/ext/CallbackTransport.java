@@ -0,0 +1,268 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.Config;
+
+/**
+ * 回调专用的http客户端<p/>
+ * 连接池按回调地址（route）限制连接数，连接在响应体读完后归还并保持长连接，
+ * 大量回调发往同一批地址时复用已建立的TLS连接，而不是每次回调新建连接<p/>
+ * 开启callback.gzip.enabled时回调内容以gzip压缩发送，按回调地址（协议、主机和端口）记录不接受gzip的回调服务
+ */
+class CallbackTransport implements Closeable {
+
+    private static final Log LOGGER = LogFactory.getLog(CallbackTransport.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final boolean gzipEnabled;
+    private final DownstreamLimiter callbackLimiter;
+    private final Set<String> plainOrigins = ConcurrentHashMap.newKeySet();
+
+    CallbackTransport() {
+        this(CONFIG.isCallbackGzipEnabled(), DownstreamLimiter.unlimited());
+    }
+
+    CallbackTransport(boolean gzipEnabled) {
+        this(gzipEnabled, DownstreamLimiter.unlimited());
+    }
+
+    /**
+     * @param gzipEnabled     是否尝试以gzip压缩回调内容
+     * @param callbackLimiter 每个回调服务（协议、主机和端口）同时进行的回调数
+     */
+    CallbackTransport(boolean gzipEnabled, DownstreamLimiter callbackLimiter) {
+        this.gzipEnabled = gzipEnabled;
+        this.callbackLimiter = callbackLimiter;
+        long keepAliveInMillis = TimeUnit.SECONDS.toMillis(CONFIG.getCallbackKeepAlive());
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry());
+        connectionManager.setMaxTotal(CONFIG.getCallbackMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(CONFIG.getCallbackMaxConnectionsPerRoute());
+        //空闲超过2秒的连接在复用前先检查是否已被对端关闭
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONFIG.getConnectionTimeout())
+                .setConnectionRequestTimeout(CONFIG.getConnectionRequestTimeout())
+                .setSocketTimeout(CONFIG.getSocketTimeout())
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new BoundedKeepAliveStrategy(keepAliveInMillis))
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveInMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 发送一次回调，无论成功与否都会读完响应体，使连接可以归还连接池
+     *
+     * @param callbackUrl 回调url
+     * @param body        json格式的回调内容
+     * @return 回调服务的响应
+     */
+    Response post(String callbackUrl, byte[] body) throws IOException {
+        return execute(callbackUrl, new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    /**
+     * 发送缓存的回调内容，内容已压缩且回调地址接受gzip时直接发送压缩后的数据，不再解压
+     *
+     * @param callbackUrl  回调url
+     * @param notification 缓存的回调内容
+     * @return 回调服务的响应
+     */
+    Response post(String callbackUrl, CallbackTask.CachedNotification notification) throws IOException {
+        if (notification.isCompressed() && acceptsGzip(callbackUrl)) {
+            ByteArrayEntity entity = new ByteArrayEntity(notification.getData(), ContentType.APPLICATION_JSON);
+            entity.setContentEncoding("gzip");
+            Response response = execute(callbackUrl, entity);
+            if (!rejectsGzip(callbackUrl, response)) {
+                return response;
+            }
+        }
+        return post(callbackUrl, notification.toJson());
+    }
+
+    /**
+     * 边序列化边发送回调内容，不在内存中生成完整的json；开启gzip且回调地址未拒绝过gzip时压缩发送
+     *
+     * @param callbackUrl  回调url
+     * @param notification 回调内容，由Jackson序列化
+     * @return 回调服务的响应
+     */
+    Response stream(String callbackUrl, Object notification) throws IOException {
+        if (acceptsGzip(callbackUrl)) {
+            Response response = execute(callbackUrl,
+                    HttpJsonDataUtils.objectToStreamingHttpEntity(notification, true));
+            if (!rejectsGzip(callbackUrl, response)) {
+                return response;
+            }
+        }
+        return execute(callbackUrl, HttpJsonDataUtils.objectToStreamingHttpEntity(notification, false));
+    }
+
+    private Response execute(String callbackUrl, HttpEntity entity) throws IOException {
+        HttpPost httpPost = new HttpPost(callbackUrl);
+        httpPost.setHeader("Content-Type", ContentType.APPLICATION_JSON.toString());
+        httpPost.setEntity(entity);
+        String origin = DownstreamLimiter.origin(callbackUrl);
+        callbackLimiter.acquire(origin);
+        long startTime = AsrMetrics.startTimer();
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            String responseBody = response.getEntity() == null ? ""
+                    : EntityUtils.toString(response.getEntity(), "UTF-8");
+            return new Response(response, responseBody);
+        } finally {
+            METRICS.recordCallback(startTime);
+            callbackLimiter.release(origin);
+        }
+    }
+
+    /**
+     * @return 开启了gzip且回调地址未拒绝过压缩的内容
+     */
+    boolean acceptsGzip(String callbackUrl) {
+        return gzipEnabled && !plainOrigins.contains(DownstreamLimiter.origin(callbackUrl));
+    }
+
+    /**
+     * 回调服务以415或400拒绝压缩的内容时，记住该地址，之后发往该地址的回调不再压缩
+     *
+     * @return 压缩的内容被拒绝，需要以未压缩的内容重发
+     */
+    private boolean rejectsGzip(String callbackUrl, Response response) {
+        return rejectsGzip(callbackUrl, response.getStatusCode(), response.getStatusLine());
+    }
+
+    /**
+     * 供不经过此客户端发送的回调（如AsyncAsrEngine）共用各回调地址是否接受gzip的记录
+     *
+     * @return 压缩的内容被拒绝，需要以未压缩的内容重发
+     */
+    boolean rejectsGzip(String callbackUrl, int statusCode, String statusLine) {
+        if (statusCode != 415 && statusCode != 400) {
+            return false;
+        }
+        if (plainOrigins.add(DownstreamLimiter.origin(callbackUrl))) {
+            LOGGER.warn(String.format("Callback url[%s] rejected gzip content with %s, send plain json from now on.",
+                    callbackUrl, statusLine));
+        }
+        return true;
+    }
+
+    /**
+     * @return 连接池中已建立的连接数（在用和空闲），用于观察连接复用情况
+     */
+    int connectionCount() {
+        return connectionManager.getTotalStats().getLeased() + connectionManager.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(httpClient);
+    }
+
+    private static Registry<ConnectionSocketFactory> socketFactoryRegistry() {
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+                .build();
+    }
+
+    /**
+     * 服务端未声明Keep-Alive超时时间时，连接最多保持callback.http.keep.alive秒
+     */
+    private static class BoundedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+        private final long maxKeepAliveInMillis;
+
+        BoundedKeepAliveStrategy(long maxKeepAliveInMillis) {
+            this.maxKeepAliveInMillis = maxKeepAliveInMillis;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? Math.min(keepAlive, maxKeepAliveInMillis) : maxKeepAliveInMillis;
+        }
+    }
+
+    /**
+     * 已读完的回调响应
+     */
+    static class Response {
+
+        private final int statusCode;
+        private final String statusLine;
+        private final String body;
+
+        private Response(HttpResponse response, String body) {
+            this.statusCode = response.getStatusLine().getStatusCode();
+            this.statusLine = response.getStatusLine().toString();
+            this.body = body;
+        }
+
+        boolean isOK() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        String getStatusLine() {
+            return statusLine;
+        }
+
+        String getBody() {
+            return body;
+        }
+    }
+}
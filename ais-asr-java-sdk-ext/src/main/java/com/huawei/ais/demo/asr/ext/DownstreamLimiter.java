@@ -0,0 +1,84 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 按下游服务限制同时进行的请求数<p/>
+ * 虚拟线程模式下提交和回调任务不再受线程池大小限制，改由每个下游（语音识别服务、OBS、音频源和回调服务所在的主机）
+ * 各自的信号量限制并发，避免成千上万的虚拟线程同时压向同一个下游，或在连接池上等待超时。
+ * 线程池模式下并发已由线程数限制，使用不限制的实例
+ */
+class DownstreamLimiter {
+
+    private static final DownstreamLimiter UNLIMITED = new DownstreamLimiter(0);
+
+    private final int permitsPerDownstream;
+    private final ConcurrentMap<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    /**
+     * @param permitsPerDownstream 每个下游同时进行的请求数，小于等于0时不限制
+     */
+    DownstreamLimiter(int permitsPerDownstream) {
+        this.permitsPerDownstream = permitsPerDownstream;
+    }
+
+    static DownstreamLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * 等待下游的许可，虚拟线程在等待时不占用平台线程
+     *
+     * @param downstream 下游名称，或origin(url)得到的主机地址
+     */
+    void acquire(String downstream) throws InterruptedIOException {
+        if (permitsPerDownstream <= 0) {
+            return;
+        }
+        try {
+            semaphoreOf(downstream).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for permit of " + downstream);
+        }
+    }
+
+    void release(String downstream) {
+        if (permitsPerDownstream > 0) {
+            semaphoreOf(downstream).release();
+        }
+    }
+
+    /**
+     * @return 正在进行的请求数
+     */
+    int inFlight(String downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        return semaphore == null ? 0 : permitsPerDownstream - semaphore.availablePermits();
+    }
+
+    private Semaphore semaphoreOf(String downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        if (semaphore == null) {
+            semaphore = semaphores.computeIfAbsent(downstream, key -> new Semaphore(permitsPerDownstream));
+        }
+        return semaphore;
+    }
+
+    /**
+     * @return url的协议、主机和端口，同一主机上的不同路径共用一个许可
+     */
+    static String origin(String url) {
+        try {
+            URL parsed = new URL(url);
+            return parsed.getProtocol() + "://" + parsed.getAuthority();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 在多个账号和区域之间分配识别任务，突破单个账号、单个区域的配额<p/>
+ * 每次提交选择代价（在途任务数 × 平均提交耗时）最小的账号，代价相同时随机选择；
+ * 冷却中的账号只有在所有账号都被限流时才会被选中。任务提交后，轮询和回调都固定使用提交它的账号
+ */
+class EndpointRouter {
+
+    private final List<AsrEndpoint> endpoints;
+    private final Map<String, AsrEndpoint> endpointsByName = new LinkedHashMap<>();
+
+    EndpointRouter(List<AsrEndpoint> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required.");
+        }
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        for (AsrEndpoint endpoint : endpoints) {
+            endpointsByName.put(endpoint.getName(), endpoint);
+        }
+    }
+
+    /**
+     * 选择一个账号提交任务，并计入它的在途任务数，任务结束后需调用AsrEndpoint.jobEnded()
+     */
+    AsrEndpoint choose() {
+        AsrEndpoint chosen = select();
+        chosen.jobStarted();
+        return chosen;
+    }
+
+    private AsrEndpoint select() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        AsrEndpoint chosen = null;
+        boolean chosenThrottled = true;
+        double chosenCost = Double.MAX_VALUE;
+        int ties = 0;
+        for (AsrEndpoint endpoint : endpoints) {
+            boolean throttled = endpoint.isThrottled(now);
+            double cost = endpoint.cost();
+            int order = chosen == null ? -1 : compare(throttled, cost, chosenThrottled, chosenCost);
+            if (order < 0) {
+                chosen = endpoint;
+                chosenThrottled = throttled;
+                chosenCost = cost;
+                ties = 1;
+            } else if (order == 0 && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                //代价相同的账号之间均匀随机
+                chosen = endpoint;
+            }
+        }
+        return chosen;
+    }
+
+    private static int compare(boolean throttled, double cost, boolean otherThrottled, double otherCost) {
+        if (throttled != otherThrottled) {
+            return throttled ? 1 : -1;
+        }
+        return Double.compare(cost, otherCost);
+    }
+
+    /**
+     * @param name 任务日志中记录的账号名称，为null（旧版本的日志）或账号已不在配置中时返回第一个账号
+     */
+    AsrEndpoint byName(String name) {
+        AsrEndpoint endpoint = name == null ? null : endpointsByName.get(name);
+        return endpoint == null ? endpoints.get(0) : endpoint;
+    }
+
+    List<AsrEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public String toString() {
+        return endpoints.toString();
+    }
+}
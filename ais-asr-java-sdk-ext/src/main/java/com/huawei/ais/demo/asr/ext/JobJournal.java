@@ -0,0 +1,419 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huawei.ais.demo.asr.CommonUtils;
+
+/**
+ * 识别任务日志<p/>
+ * 以json行的形式追加记录每个任务的生命周期：提交（SUBMITTED）、结束（FINISHED）、
+ * 回调成功（DELIVERED）或放弃回调（ABANDONED），写入后由后台线程每隔syncInterval毫秒批量fsync一次。<br/>
+ * 启动时重放日志，得到尚未完成回调的任务，交给轮询器继续轮询和回调，进程重启不会丢失已提交的任务。<br/>
+ * 长音频切分后的合并任务记录各片段的jobId、账号和起始时间，恢复时重新轮询各片段并合并结果。<br/>
+ * 追加的记录数超过compactThreshold后，只保留未完成的任务重写日志，使日志大小与在途任务数相当
+ */
+class JobJournal implements JobStatusPoller.JobListener, Closeable {
+
+    private static final Log LOGGER = LogFactory.getLog(JobJournal.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String JOURNAL_FILE_NAME = "asr-jobs.journal";
+
+    enum RecordType {
+        SUBMITTED, FINISHED, DELIVERED, ABANDONED
+    }
+
+    private final File journalFile;
+    private final int compactThreshold;
+    //Map<任务id，未完成回调的任务>
+    private final Map<String, JournaledJob> liveJobs = new LinkedHashMap<>();
+    private final ScheduledExecutorService syncExecutor;
+
+    private FileOutputStream output;
+    private Writer writer;
+    private boolean dirty;
+    private int recordsSinceCompaction;
+
+    private JobJournal(File journalFile, int compactThreshold, long syncIntervalInMillis) throws IOException {
+        this.journalFile = journalFile;
+        this.compactThreshold = compactThreshold;
+        replay();
+        compact();
+        this.syncExecutor = new ScheduledThreadPoolExecutor(1,
+                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-journal-sync-%d"));
+        this.syncExecutor.scheduleWithFixedDelay(this::syncQuietly, syncIntervalInMillis, syncIntervalInMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 打开日志目录并重放已有的日志
+     *
+     * @param journalDir           日志目录
+     * @param compactThreshold     追加多少条记录后压缩日志
+     * @param syncIntervalInMillis 批量fsync的间隔
+     */
+    static JobJournal open(String journalDir, int compactThreshold, long syncIntervalInMillis) throws IOException {
+        File dir = new File(journalDir);
+        FileUtils.forceMkdir(dir);
+        return new JobJournal(new File(dir, JOURNAL_FILE_NAME), compactThreshold, syncIntervalInMillis);
+    }
+
+    /**
+     * @return 重放得到的、尚未完成回调的任务
+     */
+    synchronized List<JournaledJob> pendingJobs() {
+        List<JournaledJob> jobs = new ArrayList<>(liveJobs.size());
+        for (JournaledJob job : liveJobs.values()) {
+            jobs.add(job.copy());
+        }
+        return jobs;
+    }
+
+    void submitted(String jobId, String audioUrl, String callbackUrl) {
+        submitted(jobId, audioUrl, callbackUrl, null);
+    }
+
+    /**
+     * @param endpoint 提交任务的账号名称，恢复时用同一账号查询
+     */
+    void submitted(String jobId, String audioUrl, String callbackUrl, String endpoint) {
+        Record record = new Record(RecordType.SUBMITTED, jobId, audioUrl, callbackUrl);
+        record.endpoint = endpoint;
+        append(record);
+    }
+
+    /**
+     * 记录长音频的合并任务
+     *
+     * @param jobId    各片段jobId逗号拼接的合并任务id
+     * @param segments 各片段，按时间排序
+     */
+    void segmentsSubmitted(String jobId, String audioUrl, String callbackUrl, List<JournaledSegment> segments) {
+        Record record = new Record(RecordType.SUBMITTED, jobId, audioUrl, callbackUrl);
+        record.segments = segments;
+        append(record);
+    }
+
+    void delivered(String jobId, String callbackUrl) {
+        append(new Record(RecordType.DELIVERED, jobId, null, callbackUrl));
+    }
+
+    void abandoned(String jobId, String callbackUrl) {
+        append(new Record(RecordType.ABANDONED, jobId, null, callbackUrl));
+    }
+
+    @Override
+    public void onJobDone(String jobId, Object result) {
+        append(new Record(RecordType.FINISHED, jobId, null, null));
+    }
+
+    /**
+     * 把已写入的记录刷到磁盘
+     */
+    synchronized void sync() throws IOException {
+        if (dirty) {
+            writer.flush();
+            output.getChannel().force(false);
+            dirty = false;
+        }
+    }
+
+    @Override
+    public void close() {
+        CommonUtils.destroyExecutors(syncExecutor, "journalSyncExecutor");
+        synchronized (this) {
+            syncQuietly();
+            LOGGER.info(String.format("Close job journal, %d job(s) left to resume.", liveJobs.size()));
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private synchronized void append(Record record) {
+        if (!apply(record)) {
+            return;
+        }
+        try {
+            writeRecord(writer, record);
+            dirty = true;
+            if (++recordsSinceCompaction >= compactThreshold) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.error(String.format("Write job journal failed, job[%s] %s.", record.jobId, record.type), e);
+        }
+    }
+
+    /**
+     * 把一条记录应用到在途任务上
+     *
+     * @return 记录是否改变了任务状态，不改变状态的记录无需写入
+     */
+    private boolean apply(Record record) {
+        if (record.type == null || record.jobId == null) {
+            return false;
+        }
+        JournaledJob job = liveJobs.get(record.jobId);
+        switch (record.type) {
+            case SUBMITTED:
+                if (job == null) {
+                    job = new JournaledJob(record.jobId);
+                    liveJobs.put(record.jobId, job);
+                }
+                if (record.endpoint != null) {
+                    job.endpoint = record.endpoint;
+                }
+                if (record.segments != null) {
+                    job.segments = record.segments;
+                }
+                job.pendingCallbacks.put(record.callbackUrl, record.audioUrl);
+                return true;
+            case FINISHED:
+                if (job == null || job.finished) {
+                    return false;
+                }
+                job.finished = true;
+                return true;
+            case DELIVERED:
+            case ABANDONED:
+                if (job == null || job.pendingCallbacks.remove(record.callbackUrl) == null) {
+                    return false;
+                }
+                if (job.pendingCallbacks.isEmpty()) {
+                    liveJobs.remove(record.jobId);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!journalFile.isFile()) {
+            return;
+        }
+        int lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(objectMapper.readValue(line, Record.class));
+                } catch (IOException e) {
+                    //进程异常退出时最后一行可能不完整
+                    LOGGER.warn(String.format("Skip broken journal record at line %d.", lineNumber));
+                }
+            }
+        }
+        LOGGER.info(String.format("Replay job journal done, %d record(s), %d job(s) to resume.", lineNumber,
+                liveJobs.size()));
+    }
+
+    /**
+     * 只保留在途任务，写入临时文件后替换原日志
+     */
+    private void compact() throws IOException {
+        File tmpFile = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+        int records = 0;
+        try (FileOutputStream tmpOutput = new FileOutputStream(tmpFile);
+             Writer tmpWriter = new BufferedWriter(new OutputStreamWriter(tmpOutput, StandardCharsets.UTF_8))) {
+            for (JournaledJob job : liveJobs.values()) {
+                for (Map.Entry<String, String> callback : job.pendingCallbacks.entrySet()) {
+                    Record record = new Record(RecordType.SUBMITTED, job.jobId, callback.getValue(),
+                            callback.getKey());
+                    record.endpoint = job.endpoint;
+                    record.segments = job.segments;
+                    writeRecord(tmpWriter, record);
+                    records++;
+                }
+                if (job.finished) {
+                    writeRecord(tmpWriter, new Record(RecordType.FINISHED, job.jobId, null, null));
+                    records++;
+                }
+            }
+            tmpWriter.flush();
+            tmpOutput.getChannel().force(false);
+        }
+
+        IOUtils.closeQuietly(writer);
+        Files.move(tmpFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        output = new FileOutputStream(journalFile, true);
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        dirty = false;
+        //压缩后留下的记录也计入，避免在途任务很多时频繁压缩
+        recordsSinceCompaction = records;
+        LOGGER.debug(String.format("Compact job journal done, %d record(s) kept.", records));
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            LOGGER.error("Sync job journal failed.", e);
+        }
+    }
+
+    private static void writeRecord(Writer writer, Record record) throws IOException {
+        writer.write(objectMapper.writeValueAsString(record));
+        writer.write('\n');
+    }
+
+    /**
+     * 一个尚未完成回调的任务
+     */
+    static class JournaledJob {
+
+        private final String jobId;
+        private String endpoint;
+        private boolean finished;
+        private List<JournaledSegment> segments;
+        //Map<回调url，音频url>
+        private final Map<String, String> pendingCallbacks = new LinkedHashMap<>();
+
+        JournaledJob(String jobId) {
+            this.jobId = jobId;
+        }
+
+        String getJobId() {
+            return jobId;
+        }
+
+        /**
+         * @return 提交任务的账号名称，旧版本的日志中没有记录时为null
+         */
+        String getEndpoint() {
+            return endpoint;
+        }
+
+        boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * @return 长音频合并任务的各片段，普通任务为null
+         */
+        List<JournaledSegment> getSegments() {
+            return segments;
+        }
+
+        /**
+         * @return Map<回调url，音频url>
+         */
+        Map<String, String> getPendingCallbacks() {
+            return Collections.unmodifiableMap(pendingCallbacks);
+        }
+
+        private JournaledJob copy() {
+            JournaledJob copy = new JournaledJob(jobId);
+            copy.endpoint = endpoint;
+            copy.finished = finished;
+            copy.segments = segments;
+            copy.pendingCallbacks.putAll(pendingCallbacks);
+            return copy;
+        }
+    }
+
+    /**
+     * 长音频合并任务中的一个片段
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class JournaledSegment {
+        @JsonProperty("job_id")
+        private String jobId;
+        @JsonProperty("endpoint")
+        private String endpoint;
+        @JsonProperty("offset")
+        private long offsetInMillis;
+
+        JournaledSegment() {
+        }
+
+        JournaledSegment(String jobId, String endpoint, long offsetInMillis) {
+            this.jobId = jobId;
+            this.endpoint = endpoint;
+            this.offsetInMillis = offsetInMillis;
+        }
+
+        String getJobId() {
+            return jobId;
+        }
+
+        /**
+         * @return 提交此片段的账号名称
+         */
+        String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return 片段在原音频中的起始时间
+         */
+        long getOffsetInMillis() {
+            return offsetInMillis;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Record {
+        @JsonProperty("type")
+        RecordType type;
+        @JsonProperty("job_id")
+        String jobId;
+        @JsonProperty("audio_url")
+        String audioUrl;
+        @JsonProperty("callback_url")
+        String callbackUrl;
+        @JsonProperty("endpoint")
+        String endpoint;
+        @JsonProperty("segments")
+        List<JournaledSegment> segments;
+        @JsonProperty("time")
+        long time;
+
+        Record() {
+        }
+
+        Record(RecordType type, String jobId, String audioUrl, String callbackUrl) {
+            this.type = type;
+            this.jobId = jobId;
+            this.audioUrl = audioUrl;
+            this.callbackUrl = callbackUrl;
+            this.time = System.currentTimeMillis();
+        }
+    }
+}
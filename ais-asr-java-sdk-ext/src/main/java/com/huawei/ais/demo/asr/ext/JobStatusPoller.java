@@ -0,0 +1,445 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.huawei.ais.demo.asr.Config;
+import com.huawei.ais.demo.asr.model.GetResultRes;
+import com.huawei.ais.demo.asr.model.JobStatus;
+
+/**
+ * 识别任务状态轮询器<p/>
+ * 待查询的任务按下次查询时间放在延时队列中，由少量轮询线程在到期时发起状态查询，
+ * 任务未结束则重新入队，任务结束后才把回调任务提交到callbackExecutors中执行。
+ * 因此在途任务数只受内存限制，而不会长期占用回调线程池中的线程。<p/>
+ * 同一个任务可以有多个回调订阅者，任务结束时逐一回调，并通知注册的JobListener。<br/>
+ * 查询返回非2xx（限流、服务端错误等）时任务可能仍在运行，稍后重新查询，连续MAX_QUERY_ERRORS次失败后
+ * 以错误响应回调并停止查询；只有任务FINISHED/FAILED后才清理它的音频
+ */
+class JobStatusPoller {
+
+    private static final Log LOGGER = LogFactory.getLog(JobStatusPoller.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private static final AsrMetrics METRICS = AsrMetrics.getInstance();
+
+    private static final String GET_JOB_RESULT_URI_TEMPLATE = "/v1.0/voice/asr/long-sentence?job_id=%s&format="
+            + CONFIG.getAsrFormatType();
+
+    private static final String JSON_ROOT = "result";
+    private static final long QUERY_JOB_RESULT_INTERVAL = CONFIG.getQueryInterval();
+    private static final int MAX_QUERY_ERRORS = CONFIG.getQueryMaxErrors();
+
+    private final ScheduledThreadPoolExecutor pollExecutor;
+    private final ExecutorService callbackExecutors;
+    private final CallbackBatcher callbackBatcher;
+    private final JobJournal jobJournal;
+    private final RateLimiter queryRateLimiter;
+    private final PollPlanner pollPlanner;
+    private final StorageJanitor storageJanitor;
+    private final Map<String, PollJob> watchingJobs = new ConcurrentHashMap<>();
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param callbackBatcher  批量回调，为null时每个任务单独回调
+     * @param jobJournal       任务日志，为null时不记录
+     * @param queryRateLimiter 查询任务状态的限速器
+     * @param pollPlanner      决定每次查询的间隔
+     * @param storageJanitor   任务结束后清理音频占用的存储，为null时不清理
+     */
+    JobStatusPoller(ExecutorService callbackExecutors, CallbackBatcher callbackBatcher, JobJournal jobJournal,
+                    RateLimiter queryRateLimiter, PollPlanner pollPlanner, StorageJanitor storageJanitor) {
+        this.callbackExecutors = callbackExecutors;
+        this.callbackBatcher = callbackBatcher;
+        this.jobJournal = jobJournal;
+        this.queryRateLimiter = queryRateLimiter;
+        this.pollPlanner = pollPlanner;
+        this.storageJanitor = storageJanitor;
+        if (jobJournal != null) {
+            listeners.add(jobJournal);
+        }
+        this.pollExecutor = new ScheduledThreadPoolExecutor(CONFIG.getQueryPoolSize(),
+                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-query-job-%d"));
+        //销毁时不再执行尚未到期的查询
+        this.pollExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.pollExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 将已提交的识别任务加入轮询队列，任务结束后自动回调
+     *
+     * @param audioUrl        音频的文件的url
+     * @param jobId           识别任务id
+     * @param callbackUrl     识别结束后的回调url
+     * @param endpoint        提交此任务的账号，之后的查询都使用此账号，任务结束时结束它的在途计数
+     * @param audioSize       音频大小（字节），用于预测识别耗时，未知时为-1
+     */
+    void watch(String audioUrl, String jobId, String callbackUrl, AsrEndpoint endpoint, long audioSize) {
+        journalSubmitted(jobId, audioUrl, callbackUrl, endpoint.getName());
+        PollJob pollJob = new PollJob(jobId, endpoint, pollPlanner.plan(audioSize));
+        pollJob.addSubscriber(audioUrl, callbackUrl);
+        watchingJobs.put(jobId, pollJob);
+        schedule(pollJob, jobId, pollJob.plan.nextDelayInMillis());
+    }
+
+    /**
+     * 轮询长音频切分出的一个片段，片段任务不单独记录任务日志（由journalSegments记录的合并任务恢复），
+     * 也不通知JobListener和回调，结束后只交给onDone合并
+     *
+     * @param segmentName 片段名称，用于日志
+     * @param jobId       片段的识别任务id
+     * @param endpoint    提交此片段的账号
+     * @param audioSize   片段大小（字节）
+     * @param onDone      片段任务结束后调用
+     */
+    void watchSegment(String segmentName, String jobId, AsrEndpoint endpoint, long audioSize, JobListener onDone) {
+        PollJob pollJob = new PollJob(jobId, endpoint, pollPlanner.plan(audioSize), segmentName, onDone);
+        watchingJobs.put(jobId, pollJob);
+        schedule(pollJob, jobId, pollJob.plan.nextDelayInMillis());
+    }
+
+    /**
+     * 恢复任务日志中合并任务的一个片段，立即查询一次状态，结束后交给onDone合并
+     *
+     * @param segmentName 片段名称，用于日志
+     * @param jobId       片段的识别任务id
+     * @param endpoint    提交此片段的账号
+     * @param onDone      片段任务结束后调用
+     */
+    void resumeSegment(String segmentName, String jobId, AsrEndpoint endpoint, JobListener onDone) {
+        endpoint.jobStarted();
+        PollJob pollJob = new PollJob(jobId, endpoint, pollPlanner.plan(-1), segmentName, onDone);
+        watchingJobs.put(jobId, pollJob);
+        schedule(pollJob, jobId, 0);
+    }
+
+    /**
+     * 记录长音频合并任务的任务日志，重启后重新轮询各片段并合并结果回调
+     *
+     * @param jobId    各片段jobId逗号拼接的合并任务id
+     * @param segments 各片段的jobId、账号和起始时间
+     */
+    void journalSegments(String jobId, String audioUrl, String callbackUrl,
+                         List<JobJournal.JournaledSegment> segments) {
+        if (jobJournal != null) {
+            jobJournal.segmentsSubmitted(jobId, audioUrl, callbackUrl, segments);
+        }
+    }
+
+    /**
+     * 恢复任务日志中尚未完成回调的任务，立即查询一次状态，已结束的任务直接回调
+     *
+     * @param journaledJob    任务日志中的任务
+     * @param endpoint     提交此任务的账号
+     */
+    void resume(JobJournal.JournaledJob journaledJob, AsrEndpoint endpoint) {
+        endpoint.jobStarted();
+        PollJob pollJob = new PollJob(journaledJob.getJobId(), endpoint, pollPlanner.plan(-1));
+        for (Map.Entry<String, String> callback : journaledJob.getPendingCallbacks().entrySet()) {
+            pollJob.addSubscriber(callback.getValue(), callback.getKey());
+        }
+        LOGGER.info(String.format("Resume job[%s] from journal, %d callback(s) pending.", journaledJob.getJobId(),
+                journaledJob.getPendingCallbacks().size()));
+        watchingJobs.put(journaledJob.getJobId(), pollJob);
+        schedule(pollJob, journaledJob.getJobId(), 0);
+    }
+
+    /**
+     * 订阅一个正在轮询的任务，任务结束后同样回调到callbackUrl
+     *
+     * @return 任务不在轮询中（未提交或已结束）时返回false
+     */
+    boolean subscribe(String jobId, String audioUrl, String callbackUrl) {
+        PollJob pollJob = watchingJobs.get(jobId);
+        if (pollJob != null && pollJob.addSubscriber(audioUrl, callbackUrl)) {
+            journalSubmitted(jobId, audioUrl, callbackUrl, pollJob.endpoint.getName());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 直接回调一个已知的结果，不再查询任务状态
+     *
+     * @param endpoint 提交此任务的账号名称，回调完成前重启时用它重新查询结果
+     */
+    void deliver(String audioUrl, String jobId, String callbackUrl, Object result, String endpoint) {
+        journalSubmitted(jobId, audioUrl, callbackUrl, endpoint);
+        deliver(audioUrl, jobId, callbackUrl, result);
+    }
+
+    /**
+     * 直接回调一个不能直接重新查询的结果（如多个片段合并的结果），不再记录SUBMITTED，
+     * 合并任务已由journalSegments记录
+     */
+    void deliver(String audioUrl, String jobId, String callbackUrl, Object result) {
+        new Delivery(new Subscriber(audioUrl, callbackUrl), jobId, result).run();
+    }
+
+    /**
+     * 放弃已提交但不再轮询的任务（如有片段提交失败的长音频中已提交的片段），清理它的音频
+     */
+    void abandon(String jobId) {
+        if (storageJanitor != null) {
+            storageJanitor.jobDone(jobId);
+        }
+    }
+
+    void addListener(JobListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return 当前等待查询的任务数
+     */
+    int pendingJobs() {
+        return watchingJobs.size();
+    }
+
+    void destroy() {
+        LOGGER.info(String.format("Shutdown job poller, %d pending job(s) will not be queried any more.",
+                pendingJobs()));
+        CommonUtils.destroyExecutors(pollExecutor, "pollExecutor");
+    }
+
+    private void journalSubmitted(String jobId, String audioUrl, String callbackUrl, String endpoint) {
+        if (jobJournal != null) {
+            jobJournal.submitted(jobId, audioUrl, callbackUrl, endpoint);
+        }
+    }
+
+    private void schedule(Runnable task, String jobId, long delayInMillis) {
+        try {
+            pollExecutor.schedule(task, delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.error(String.format("Job poller has been shutdown, stop querying job[%s].", jobId));
+        }
+    }
+
+    /**
+     * 任务结束监听器，在回调订阅者之前调用
+     */
+    interface JobListener {
+
+        /**
+         * @param jobId  识别任务id
+         * @param result 任务结果，查询成功时为GetResultRes，查询失败时为错误响应字符串
+         */
+        void onJobDone(String jobId, Object result);
+    }
+
+    private static class Subscriber {
+
+        private final String audioUrl;
+        private final String callbackUrl;
+
+        Subscriber(String audioUrl, String callbackUrl) {
+            this.audioUrl = audioUrl;
+            this.callbackUrl = callbackUrl;
+        }
+    }
+
+    /**
+     * 把回调任务提交到callbackExecutors，线程池满时稍后再试；开启批量回调时交给callbackBatcher
+     */
+    private class Delivery implements Runnable {
+
+        private final Subscriber subscriber;
+        private final String jobId;
+        private final Object result;
+
+        Delivery(Subscriber subscriber, String jobId, Object result) {
+            this.subscriber = subscriber;
+            this.jobId = jobId;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            if (callbackBatcher != null) {
+                callbackBatcher.add(subscriber.audioUrl, jobId, subscriber.callbackUrl, result);
+                return;
+            }
+            try {
+                LOGGER.info(String.format("Create callback task for job[%s].", jobId));
+                callbackExecutors.submit(new CallbackTask(subscriber.audioUrl, jobId, subscriber.callbackUrl,
+                        result));
+            } catch (RejectedExecutionException e) {
+                LOGGER.error(String.format("Submit callback task failed for job[%s], will try later.", jobId));
+                schedule(this, jobId, QUERY_JOB_RESULT_INTERVAL);
+            }
+        }
+    }
+
+    private class PollJob implements Runnable {
+
+        private final String jobId;
+        private final AsrEndpoint endpoint;
+        private final PollPlanner.Plan plan;
+        private final String segmentName;
+        private final JobListener segmentListener;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private boolean done;
+        private boolean permitReserved;
+        //连续返回非2xx的查询次数
+        private int failedQueries;
+
+        PollJob(String jobId, AsrEndpoint endpoint, PollPlanner.Plan plan) {
+            this(jobId, endpoint, plan, null, null);
+        }
+
+        PollJob(String jobId, AsrEndpoint endpoint, PollPlanner.Plan plan, String segmentName,
+                JobListener segmentListener) {
+            this.jobId = jobId;
+            this.endpoint = endpoint;
+            this.plan = plan;
+            this.segmentName = segmentName;
+            this.segmentListener = segmentListener;
+        }
+
+        synchronized boolean addSubscriber(String audioUrl, String callbackUrl) {
+            if (done) {
+                return false;
+            }
+            subscribers.add(new Subscriber(audioUrl, callbackUrl));
+            return true;
+        }
+
+        private synchronized List<Subscriber> markDone() {
+            done = true;
+            return new ArrayList<>(subscribers);
+        }
+
+        private synchronized String audioUrl() {
+            return subscribers.isEmpty() ? segmentName : subscribers.get(0).audioUrl;
+        }
+
+        @Override
+        public void run() {
+            if (!permitReserved) {
+                //令牌不足时不阻塞轮询线程，到令牌发放时间再查询
+                long waitInNanos = queryRateLimiter.reserve();
+                if (waitInNanos > 0) {
+                    permitReserved = true;
+                    schedule(this, jobId, TimeUnit.NANOSECONDS.toMillis(waitInNanos) + 1);
+                    return;
+                }
+            }
+            permitReserved = false;
+
+            Object result;
+            try {
+                result = queryJobResult();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error(String.format("Query job[%s] result error, will try later.", jobId), e);
+                result = null;
+            }
+
+            if (result == null) {
+                //任务还未处理完或查询异常，等待下一次查询
+                schedule(this, jobId, plan.nextDelayInMillis());
+                return;
+            }
+            if (result instanceof GetResultRes
+                    && JobStatus.valueFrom(((GetResultRes) result).getStatusCode()) == JobStatus.FINISHED) {
+                plan.finished();
+            }
+            METRICS.recordJobDone(plan.getPolls(), plan.elapsedInMillis());
+            endpoint.jobEnded();
+            if (storageJanitor != null) {
+                if (result instanceof GetResultRes) {
+                    storageJanitor.jobDone(jobId);
+                } else {
+                    //放弃查询时任务可能仍在识别，保留音频
+                    storageJanitor.forget(jobId);
+                }
+            }
+
+            if (segmentListener != null) {
+                markDone();
+                watchingJobs.remove(jobId, this);
+                try {
+                    segmentListener.onJobDone(jobId, result);
+                } catch (RuntimeException e) {
+                    LOGGER.error(String.format("Segment listener failed for job[%s].", jobId), e);
+                }
+                return;
+            }
+            for (JobListener listener : listeners) {
+                try {
+                    listener.onJobDone(jobId, result);
+                } catch (RuntimeException e) {
+                    LOGGER.error(String.format("Job listener failed for job[%s].", jobId), e);
+                }
+            }
+            List<Subscriber> doneSubscribers = markDone();
+            watchingJobs.remove(jobId, this);
+            for (Subscriber subscriber : doneSubscribers) {
+                new Delivery(subscriber, jobId, result).run();
+            }
+        }
+
+        /**
+         * 查询一次任务状态
+         *
+         * @return 任务已结束时返回结果，连续MAX_QUERY_ERRORS次查询失败时返回最后的错误响应，
+         * 任务未结束或查询失败次数未超限时返回null
+         */
+        private Object queryJobResult() throws IOException {
+            String audioUrl = audioUrl();
+            String url = String.format(GET_JOB_RESULT_URI_TEMPLATE, jobId);
+            HttpResponse getResponse = endpoint.getAisAccessClient().get(url);
+            if (getResponse == null) {
+                throw new IOException("No response from asr service.");
+            }
+            if (!HttpJsonDataUtils.isOKResponded(getResponse)) {
+                String responseStr = EntityUtils.toString(getResponse.getEntity(), "UTF-8");
+                if (++failedQueries < MAX_QUERY_ERRORS) {
+                    LOGGER.warn(String.format("Query job[%s] result failed[%d/%d], will try later: %s", jobId,
+                            failedQueries, MAX_QUERY_ERRORS, responseStr));
+                    return null;
+                }
+                LOGGER.error(String.format("Query job[%s] result failed %d times, give up! associated audio_url:%s",
+                        jobId, failedQueries, audioUrl));
+                LOGGER.info(responseStr);
+                return responseStr;
+            }
+            failedQueries = 0;
+            GetResultRes jobResult
+                    = HttpJsonDataUtils.getResponseObject(getResponse, GetResultRes.class, JSON_ROOT);
+            JobStatus jobStatus = JobStatus.valueFrom(jobResult.getStatusCode());
+
+            // 根据任务状态决定继续轮询或者回调结果
+            if (jobStatus == JobStatus.ACCEPTED || jobStatus == JobStatus.RUNNING) {
+                LOGGER.info(String.format("Job[%s] %s, waiting...", jobId, jobResult.getStatusMsg()));
+                return null;
+            } else if (jobStatus == JobStatus.FAILED) {
+                LOGGER.error(String.format("Job[%s] has failed, %s, associated audio_url:%s",
+                        jobId, jobResult.getStatusMsg(), audioUrl));
+                return jobResult;
+            } else if (jobStatus == JobStatus.FINISHED) {
+                LOGGER.info(String.format("Job[%s] has finished.", jobId));
+                return jobResult;
+            } else {
+                LOGGER.info("Should not be here!");
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.Map;
+
+/**
+ * 指标上报接口，通过AsrServiceUtils.addMetricsReporter注册后，
+ * 每隔metrics.report.interval秒在上报线程中调用一次，实现应尽快返回
+ */
+public interface MetricsReporter {
+
+    /**
+     * @param metrics 指标名到指标值的映射，名称形如download.time.p99、submit.pool.queue.size，
+     *                耗时单位为毫秒，直方图为自启动（或上次reset）以来的累计值
+     */
+    void report(Map<String, Number> metrics);
+}
@@ -0,0 +1,80 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.huawei.ais.demo.asr.CommonUtils;
+
+/**
+ * 提交流水线中的一个阶段：固定数量的工作线程和有界队列<p/>
+ * 上游通过put交接任务，队列已满时阻塞上游的工作线程，下游的拥塞由此逐级传回到最前面的准入许可
+ */
+class PipelineStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder blocked = new LongAdder();
+
+    /**
+     * @param name      阶段名称，用于线程名和日志
+     * @param threads   工作线程数
+     * @param queueSize 排队等待的任务数上限
+     */
+    PipelineStage(String name, int threads, int queueSize) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-" + name + "-%d"));
+        //任务直接放入队列，不经过execute，所以先启动全部线程
+        this.executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * 交给此阶段执行，队列已满时等待空位
+     *
+     * @throws InterruptedException       等待时被中断
+     * @throws RejectedExecutionException 此阶段已关闭
+     */
+    void put(Runnable task) throws InterruptedException {
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        checkRunning();
+        if (!queue.offer(task)) {
+            blocked.increment();
+            queue.put(task);
+        }
+        //关闭后放入的任务不会再被执行
+        if (executor.isShutdown() && queue.remove(task)) {
+            checkRunning();
+        }
+    }
+
+    /**
+     * 不等待的交接，队列已满时返回false
+     */
+    boolean offer(Runnable task) {
+        checkRunning();
+        return executor.getQueue().offer(task);
+    }
+
+    /**
+     * @return 线程状态，rejectedCount为队列已满、上游不得不等待的次数
+     */
+    PoolStats stats() {
+        return new PoolStats(executor.getPoolSize(), executor.getActiveCount(), executor.getQueue().size(),
+                executor.getCompletedTaskCount(), blocked.sum());
+    }
+
+    void destroy() {
+        CommonUtils.destroyExecutors(executor, name);
+    }
+
+    private void checkRunning() {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException(String.format("Pipeline stage[%s] has been shutdown.", name));
+        }
+    }
+}
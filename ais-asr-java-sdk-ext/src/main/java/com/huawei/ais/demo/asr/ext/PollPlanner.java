@@ -0,0 +1,192 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.concurrent.TimeUnit;
+
+import com.huawei.ais.demo.asr.Config;
+
+/**
+ * 自适应轮询计划<p/>
+ * 按音频大小预测识别耗时：每MB音频的识别耗时（毫秒）记录在对数分桶的直方图中，取中位数乘以音频大小作为预测值，
+ * 样本不足时使用query.prior.millis.per.mb。首次查询安排在预测完成的时间点，未完成则从预测值的1/4开始
+ * 按query.backoff.multiplier倍退避，每次间隔限制在[query.min.interval, query.max.interval]之间。<br/>
+ * 查询到完成时只知道任务在上一次查询与这一次查询之间结束，记录两者的中点；首次查询就已完成时中点为预测值的一半，
+ * 使总是早于预测完成的任务逐步缩短预测，而不是停留在首次查询的时间点。<br/>
+ * 音频大小未知或未开启query.adaptive.enabled时，每次都按固定的service.asr.query.interval查询
+ */
+class PollPlanner {
+
+    private static final Config CONFIG = Config.getInstance();
+
+    //样本数达到此值后才用直方图预测
+    private static final int MIN_SAMPLES = 20;
+    //样本总数超过此值时所有桶减半，使预测跟随近期的识别速度
+    private static final int DECAY_THRESHOLD = 1000;
+    //每个桶的上下界相差2^(1/4)倍，预测误差不超过约19%
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    private static final int BUCKET_COUNT = 25 * BUCKETS_PER_DOUBLING;
+    //小于256KB的音频按256KB计，避免短音频的固定开销放大每MB耗时
+    private static final double MIN_SIZE_IN_MB = 0.25;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private final boolean adaptive;
+    private final long fixedIntervalInMillis;
+    private final long minIntervalInMillis;
+    private final long maxIntervalInMillis;
+    private final double backoffMultiplier;
+    private final double priorMillisPerMb;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long samples;
+
+    PollPlanner() {
+        this(CONFIG.isQueryAdaptiveEnabled(), CONFIG.getQueryInterval(), CONFIG.getQueryMinInterval(),
+                CONFIG.getQueryMaxInterval(), CONFIG.getQueryBackoffMultiplier(), CONFIG.getQueryPriorMillisPerMb());
+    }
+
+    PollPlanner(boolean adaptive, long fixedIntervalInMillis, long minIntervalInMillis, long maxIntervalInMillis,
+                double backoffMultiplier, double priorMillisPerMb) {
+        this.adaptive = adaptive;
+        this.fixedIntervalInMillis = fixedIntervalInMillis;
+        this.minIntervalInMillis = minIntervalInMillis;
+        this.maxIntervalInMillis = Math.max(minIntervalInMillis, maxIntervalInMillis);
+        this.backoffMultiplier = Math.max(1, backoffMultiplier);
+        this.priorMillisPerMb = priorMillisPerMb;
+    }
+
+    /**
+     * 为刚提交的任务制定轮询计划
+     *
+     * @param audioSize 音频大小（字节），未知时为-1
+     */
+    Plan plan(long audioSize) {
+        if (!adaptive || audioSize < 0) {
+            return new Plan(audioSize, -1);
+        }
+        return new Plan(audioSize, predictInMillis(audioSize));
+    }
+
+    /**
+     * @return 预测的识别耗时（毫秒）
+     */
+    synchronized long predictInMillis(long audioSize) {
+        double millisPerMb = samples >= MIN_SAMPLES ? median() : priorMillisPerMb;
+        return (long) (millisPerMb * sizeInMb(audioSize));
+    }
+
+    /**
+     * 记录一个已完成任务的实际耗时
+     *
+     * @param audioSize       音频大小（字节）
+     * @param elapsedInMillis 从提交到查询到完成的耗时
+     */
+    synchronized void record(long audioSize, long elapsedInMillis) {
+        if (audioSize < 0 || elapsedInMillis <= 0) {
+            return;
+        }
+        buckets[bucketOf(elapsedInMillis / sizeInMb(audioSize))]++;
+        if (++samples > DECAY_THRESHOLD) {
+            samples = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] /= 2;
+                samples += buckets[i];
+            }
+        }
+    }
+
+    private double median() {
+        long half = (samples + 1) / 2;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= half) {
+                //取桶的几何中点
+                return Math.pow(2, (i + 0.5) / BUCKETS_PER_DOUBLING);
+            }
+        }
+        return priorMillisPerMb;
+    }
+
+    private static int bucketOf(double millisPerMb) {
+        if (millisPerMb < 1) {
+            return 0;
+        }
+        int bucket = (int) (Math.log(millisPerMb) / Math.log(2) * BUCKETS_PER_DOUBLING);
+        return Math.min(BUCKET_COUNT - 1, bucket);
+    }
+
+    private static double sizeInMb(long audioSize) {
+        return Math.max(MIN_SIZE_IN_MB, audioSize / BYTES_PER_MB);
+    }
+
+    private long clamp(double intervalInMillis) {
+        return (long) Math.max(minIntervalInMillis, Math.min(maxIntervalInMillis, intervalInMillis));
+    }
+
+    /**
+     * 一个任务的轮询计划，由轮询该任务的线程依次调用，不需要同步
+     */
+    class Plan {
+
+        private final long audioSize;
+        private final long predictedInMillis;
+        private final long startTime = System.nanoTime();
+        private long lastDelayInMillis;
+        //上一次查询（首次查询前为提交）距制定计划的时间
+        private long lastPollInMillis;
+        private int polls;
+
+        private Plan(long audioSize, long predictedInMillis) {
+            this.audioSize = audioSize;
+            this.predictedInMillis = predictedInMillis;
+        }
+
+        /**
+         * @return 距下一次查询的等待时间（毫秒）
+         */
+        long nextDelayInMillis() {
+            lastPollInMillis = elapsedInMillis();
+            polls++;
+            if (predictedInMillis < 0) {
+                return fixedIntervalInMillis;
+            }
+            if (polls == 1) {
+                lastDelayInMillis = clamp(predictedInMillis);
+            } else if (polls == 2) {
+                lastDelayInMillis = clamp(predictedInMillis / 4.0);
+            } else {
+                lastDelayInMillis = clamp(lastDelayInMillis * backoffMultiplier);
+            }
+            return lastDelayInMillis;
+        }
+
+        /**
+         * @return 已安排的查询次数
+         */
+        int getPolls() {
+            return polls;
+        }
+
+        /**
+         * @return 从制定计划（提交任务）到现在的耗时
+         */
+        long elapsedInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        }
+
+        /**
+         * 任务已完成，把估计的实际耗时计入直方图
+         */
+        void finished() {
+            finished(elapsedInMillis());
+        }
+
+        /**
+         * @param polledInMillis 查询到完成时距制定计划的时间，任务在上一次查询与此之间完成，按中点计
+         */
+        void finished(long polledInMillis) {
+            if (predictedInMillis >= 0) {
+                record(audioSize, (lastPollInMillis + polledInMillis) / 2);
+            }
+        }
+    }
+}
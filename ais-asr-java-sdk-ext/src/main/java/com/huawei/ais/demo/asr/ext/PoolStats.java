@@ -0,0 +1,62 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * 线程池状态快照
+ */
+public class PoolStats {
+
+    private final int poolSize;
+    private final int activeCount;
+    private final int queueSize;
+    private final long completedTaskCount;
+    private final long rejectedCount;
+
+    @ConstructorProperties({"poolSize", "activeCount", "queueSize", "completedTaskCount", "rejectedCount"})
+    public PoolStats(int poolSize, int activeCount, int queueSize, long completedTaskCount, long rejectedCount) {
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.queueSize = queueSize;
+        this.completedTaskCount = completedTaskCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    /**
+     * @return 当前线程数
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return 正在执行任务的线程数
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return 排队中的任务数
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    /**
+     * @return 被拒绝的任务数，包括未取得准入许可的调用
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pool=%d active=%d queue=%d completed=%d rejected=%d", poolSize, activeCount,
+                queueSize, completedTaskCount, rejectedCount);
+    }
+}
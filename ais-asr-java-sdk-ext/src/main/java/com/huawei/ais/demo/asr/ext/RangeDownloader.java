@@ -0,0 +1,311 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+/**
+ * 分段并发下载音频到本地文件<p/>
+ * 第一个请求带Range头取第一段，音频源返回206时从Content-Range得到总长度，预分配文件后把其余各段分给
+ * 最多parallelism个连接并发下载，各段按偏移量直接写入FileChannel；返回200（不支持Range）时整体下载。<br/>
+ * 每段失败后从已写入的位置续传，最多重试retries次，任一段最终失败时其余段停止下载
+ */
+class RangeDownloader {
+
+    private static final Log LOGGER = LogFactory.getLog(RangeDownloader.class);
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final CloseableHttpClient httpClient;
+    private final ExecutorService rangeExecutors;
+    private final long partSize;
+    private final int parallelism;
+    private final int retries;
+
+    /**
+     * @param rangeExecutors 下载其余各段的线程池，线程不足时少开连接，由调用线程下载剩余的段
+     * @param partSize       每段的字节数，不大于0时不分段
+     * @param parallelism    每个音频同时下载的段数，包括调用线程
+     * @param retries        每段失败后的重试次数
+     */
+    RangeDownloader(CloseableHttpClient httpClient, ExecutorService rangeExecutors, long partSize, int parallelism,
+                    int retries) {
+        this.httpClient = httpClient;
+        this.rangeExecutors = rangeExecutors;
+        this.partSize = partSize;
+        this.parallelism = parallelism;
+        this.retries = retries;
+    }
+
+    /**
+     * @return 下载的字节数
+     */
+    long download(String audioUrl, File destFile) throws IOException {
+        FileUtils.forceMkdir(destFile.getAbsoluteFile().getParentFile());
+        try (RandomAccessFile file = new RandomAccessFile(destFile, "rw")) {
+            file.setLength(0);
+            Download download = new Download(audioUrl, file);
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    return download.start();
+                } catch (IOException e) {
+                    if (download.planned || attempt >= retries) {
+                        throw e;
+                    }
+                    LOGGER.warn(String.format("Download %s failed, retry %d/%d: %s", audioUrl, attempt + 1, retries,
+                            e.getMessage()));
+                    file.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个音频的下载过程
+     */
+    private class Download {
+
+        private final String audioUrl;
+        private final RandomAccessFile file;
+        private final AtomicInteger nextPart = new AtomicInteger(1);
+        private volatile boolean aborted;
+        private boolean ranged = partSize > 0;
+        private long length;
+        private int parts;
+        //第一段已取得总长度并开始并发下载，此后的失败不再整体重试
+        private boolean planned;
+
+        Download(String audioUrl, RandomAccessFile file) {
+            this.audioUrl = audioUrl;
+            this.file = file;
+        }
+
+        long start() throws IOException {
+            HttpGet get = new HttpGet(audioUrl);
+            if (ranged) {
+                get.setHeader("Range", "bytes=0-" + (partSize - 1));
+            }
+            try (CloseableHttpResponse response = httpClient.execute(get)) {
+                int status = response.getStatusLine().getStatusCode();
+                long total = status == HttpStatus.SC_PARTIAL_CONTENT ? totalLength(response) : -1;
+                if (ranged && status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                    //空文件
+                    return 0;
+                }
+                if (status == HttpStatus.SC_OK) {
+                    //不支持Range，整体下载
+                    return copy(response.getEntity().getContent(), 0, Long.MAX_VALUE);
+                }
+                if (total >= 0) {
+                    return downloadInParts(response, total);
+                }
+                if (!ranged || status != HttpStatus.SC_PARTIAL_CONTENT) {
+                    throw new IOException("Download audio failed, response status:" + response.getStatusLine());
+                }
+            }
+            LOGGER.warn(String.format("Total length of %s is unknown, download it without Range.", audioUrl));
+            ranged = false;
+            return start();
+        }
+
+        /**
+         * 第一段由调用线程继续读完，其余各段由最多parallelism - 1个线程与调用线程一起领取
+         */
+        private long downloadInParts(CloseableHttpResponse firstResponse, long total) throws IOException {
+            planned = true;
+            length = total;
+            parts = (int) ((total + partSize - 1) / partSize);
+            file.setLength(total);
+            List<Future<?>> workers = startWorkers();
+            IOException failure = null;
+            try {
+                long firstEnd = Math.min(partSize, total);
+                long written = copyQuietly(firstResponse.getEntity().getContent(), 0, firstEnd);
+                if (written < firstEnd) {
+                    fetchRange(written, firstEnd - 1);
+                }
+                downloadParts();
+            } catch (IOException e) {
+                aborted = true;
+                failure = e;
+            }
+            IOException workerFailure = awaitWorkers(workers);
+            if (failure != null || workerFailure != null) {
+                throw failure != null ? failure : workerFailure;
+            }
+            return total;
+        }
+
+        private List<Future<?>> startWorkers() {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 1; i < Math.min(parallelism, parts); i++) {
+                try {
+                    workers.add(rangeExecutors.submit(() -> {
+                        downloadParts();
+                        return null;
+                    }));
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+            LOGGER.info(String.format("Download %s (%d bytes) in %d parts with %d connections.", audioUrl, length,
+                    parts, workers.size() + 1));
+            return workers;
+        }
+
+        /**
+         * 领取尚未下载的段直到全部领完
+         */
+        private void downloadParts() throws IOException {
+            for (int part = nextPart.getAndIncrement(); part < parts && !aborted; part = nextPart.getAndIncrement()) {
+                try {
+                    fetchRange(part * partSize, Math.min(length, (part + 1) * partSize) - 1);
+                } catch (IOException e) {
+                    aborted = true;
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * 下载[from, to]，失败后从已写入的位置续传
+         */
+        private void fetchRange(long from, long to) throws IOException {
+            long written = 0;
+            for (int attempt = 0; ; attempt++) {
+                HttpGet get = new HttpGet(audioUrl);
+                get.setHeader("Range", "bytes=" + (from + written) + "-" + to);
+                try (CloseableHttpResponse response = httpClient.execute(get)) {
+                    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                        throw new IOException("Range request failed, response status:" + response.getStatusLine());
+                    }
+                    written += copyQuietly(response.getEntity().getContent(), from + written, to + 1 - from - written);
+                    if (written == to + 1 - from) {
+                        return;
+                    }
+                    throw new IOException(String.format("Range ended early, %d of %d bytes.", written,
+                            to + 1 - from));
+                } catch (IOException e) {
+                    if (aborted || attempt >= retries) {
+                        throw e;
+                    }
+                    LOGGER.warn(String.format("Download range %d-%d of %s failed, retry %d/%d: %s", from + written,
+                            to, audioUrl, attempt + 1, retries, e.getMessage()));
+                }
+            }
+        }
+
+        /**
+         * 同copy，但读取中途失败时返回已写入的字节数，由调用方续传
+         */
+        private long copyQuietly(InputStream input, long position, long maxBytes) throws IOException {
+            long[] written = new long[1];
+            try {
+                copy(input, position, maxBytes, written);
+            } catch (IOException e) {
+                if (aborted) {
+                    throw e;
+                }
+                LOGGER.warn(String.format("Read %s at %d interrupted after %d bytes: %s", audioUrl, position,
+                        written[0], e.getMessage()));
+            }
+            return written[0];
+        }
+
+        private long copy(InputStream input, long position, long maxBytes) throws IOException {
+            long[] written = new long[1];
+            copy(input, position, maxBytes, written);
+            return written[0];
+        }
+
+        /**
+         * 把数据流按偏移量写入文件，最多写maxBytes字节，written随写入更新
+         */
+        private void copy(InputStream input, long position, long maxBytes, long[] written) throws IOException {
+            FileChannel channel = file.getChannel();
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (written[0] < maxBytes) {
+                if (aborted) {
+                    throw new InterruptedIOException("Download of " + audioUrl + " has been aborted.");
+                }
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, maxBytes - written[0]));
+                if (read < 0) {
+                    break;
+                }
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                while (data.hasRemaining()) {
+                    channel.write(data, position + written[0] + data.position());
+                }
+                written[0] += read;
+            }
+        }
+
+        /**
+         * 等待其余连接结束，已失败时它们在读完当前缓冲后退出
+         *
+         * @return 第一个失败的连接的异常，都成功时返回null
+         */
+        private IOException awaitWorkers(List<Future<?>> workers) {
+            IOException failure = null;
+            boolean interrupted = false;
+            for (Future<?> worker : workers) {
+                while (true) {
+                    try {
+                        worker.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        aborted = true;
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                                    : new IOException(e.getCause());
+                        }
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                return new InterruptedIOException("Interrupted while downloading " + audioUrl);
+            }
+            return failure;
+        }
+
+        /**
+         * @return Content-Range中的总长度，缺失或未知时为-1
+         */
+        private long totalLength(CloseableHttpResponse response) {
+            Header contentRange = response.getFirstHeader("Content-Range");
+            Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange.getValue());
+            if (matcher == null || !matcher.find() || "*".equals(matcher.group(3))
+                    || Long.parseLong(matcher.group(1)) != 0) {
+                return -1;
+            }
+            return Long.parseLong(matcher.group(3));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速器<p/>
+ * 以固定速率生成令牌，空闲时最多积攒burst个令牌，允许短时突发；令牌不足时返回需要等待的时间，
+ * 由调用方决定是阻塞等待还是稍后再试（轮询线程和异步调用不应阻塞）。<br/>
+ * 速率小于等于0时不限速
+ */
+class RateLimiter {
+
+    private final long intervalInNanos;
+    private final long burstInNanos;
+    //下一个令牌的理论发放时间
+    private long nextPermitTime;
+
+    /**
+     * @param permitsPerSecond 每秒发放的令牌数，小于等于0时不限速
+     * @param burst            最多积攒的令牌数
+     */
+    RateLimiter(double permitsPerSecond, int burst) {
+        this.intervalInNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+        this.burstInNanos = Math.max(0, burst - 1) * intervalInNanos;
+        this.nextPermitTime = System.nanoTime() - burstInNanos;
+    }
+
+    /**
+     * 突发容量等于每秒令牌数（至少为1）
+     */
+    static RateLimiter perSecond(double permitsPerSecond) {
+        return new RateLimiter(permitsPerSecond, (int) Math.max(1, Math.ceil(permitsPerSecond)));
+    }
+
+    /**
+     * 预定一个令牌
+     *
+     * @return 调用方需要等待的纳秒数，0表示可以立即执行
+     */
+    long reserve() {
+        return tryReserve(Long.MAX_VALUE);
+    }
+
+    /**
+     * 在最长等待时间内预定一个令牌
+     *
+     * @param timeoutInNanos 可接受的最长等待时间
+     * @return 调用方需要等待的纳秒数；超过timeoutInNanos时返回-1，且不消耗令牌
+     */
+    synchronized long tryReserve(long timeoutInNanos) {
+        if (intervalInNanos == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long permitTime = Math.max(nextPermitTime, now - burstInNanos);
+        long waitInNanos = Math.max(0, permitTime - now);
+        if (waitInNanos > timeoutInNanos) {
+            return -1;
+        }
+        nextPermitTime = permitTime + intervalInNanos;
+        return waitInNanos;
+    }
+
+    /**
+     * 阻塞直到取得一个令牌
+     */
+    void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve());
+    }
+}
@@ -0,0 +1,191 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.huawei.ais.demo.asr.model.GetResultRes;
+import com.huawei.ais.demo.asr.model.JobStatus;
+
+/**
+ * 切分后分别识别的一段长音频<p/>
+ * 每个片段是一个独立的识别任务，全部结束后按片段顺序合并识别结果：
+ * 带时间戳的结果（service.asr.format=2）中的时间加上片段在原音频中的起始时间，
+ * 任一片段失败时以该片段的结果作为整体结果。合并后的结果以各片段jobId逗号拼接作为jobId回调一次。<br/>
+ * 合并任务连同各片段的jobId、账号和起始时间记录在任务日志中，重启后重新轮询各片段，已结束的片段立即得到结果
+ */
+class SegmentedJob {
+
+    private static final Log LOGGER = LogFactory.getLog(SegmentedJob.class);
+
+    private static final Pattern TIMESTAMP = Pattern.compile("(\\d+):(\\d{2}):(\\d{2})\\.(\\d{3})");
+    private static final Pattern TIME_RANGE = Pattern.compile("\\[" + TIMESTAMP + "," + TIMESTAMP + "]");
+
+    private final String jobId;
+    private final long[] offsetsInMillis;
+    private final AtomicReferenceArray<Object> results;
+    private final AtomicInteger remaining;
+    private final BiConsumer<String, Object> onDone;
+
+    /**
+     * @param jobIds          各片段的识别任务id，按时间排序
+     * @param offsetsInMillis 各片段在原音频中的起始时间
+     * @param onDone          全部片段结束后以合并的jobId和结果调用
+     */
+    SegmentedJob(List<String> jobIds, long[] offsetsInMillis, BiConsumer<String, Object> onDone) {
+        this.jobId = String.join(",", jobIds);
+        this.offsetsInMillis = offsetsInMillis;
+        this.results = new AtomicReferenceArray<>(jobIds.size());
+        this.remaining = new AtomicInteger(jobIds.size());
+        this.onDone = onDone;
+    }
+
+    /**
+     * 所有片段提交结束后开始轮询，全部结束后把合并的结果回调到callbackUrl
+     *
+     * @param jobIds    各片段的识别任务id，提交失败的片段为null
+     * @param endpoints 各片段选中的账号，尚未选择账号的片段为null
+     * @return 合并任务的jobId，有片段提交失败时结束已选账号的在途计数并放弃已提交的片段，返回null
+     */
+    static String watch(JobStatusPoller jobStatusPoller, String audioUrl, String callbackUrl,
+                        List<WavSplitter.Segment> segments, String[] jobIds, AsrEndpoint[] endpoints) {
+        int count = segments.size();
+        if (Arrays.asList(jobIds).contains(null)) {
+            LOGGER.error(String.format("Submit segments failed for audio[%s], %d of %d submitted.", audioUrl,
+                    count - Arrays.stream(jobIds).filter(jobId -> jobId == null).count(), count));
+            for (int i = 0; i < count; i++) {
+                if (endpoints[i] != null) {
+                    endpoints[i].jobEnded();
+                }
+                if (jobIds[i] != null) {
+                    jobStatusPoller.abandon(jobIds[i]);
+                }
+            }
+            return null;
+        }
+        long[] offsetsInMillis = segments.stream().mapToLong(WavSplitter.Segment::getOffsetInMillis).toArray();
+        SegmentedJob segmentedJob = new SegmentedJob(Arrays.asList(jobIds), offsetsInMillis,
+                (jobId, result) -> jobStatusPoller.deliver(audioUrl, jobId, callbackUrl, result));
+        List<JobJournal.JournaledSegment> journaledSegments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            journaledSegments.add(new JobJournal.JournaledSegment(jobIds[i], endpoints[i].getName(),
+                    offsetsInMillis[i]));
+        }
+        jobStatusPoller.journalSegments(segmentedJob.getJobId(), audioUrl, callbackUrl, journaledSegments);
+        LOGGER.info(String.format("Start polling %d segments of job[%s].", count, segmentedJob.getJobId()));
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            jobStatusPoller.watchSegment(segments.get(i).getFilePath(), jobIds[i], endpoints[i],
+                    segments.get(i).getSize(), (jobId, result) -> segmentedJob.segmentDone(index, result));
+        }
+        return segmentedJob.getJobId();
+    }
+
+    /**
+     * 恢复任务日志中尚未完成回调的合并任务，重新轮询各片段，全部结束后合并结果回调到尚未回调成功的地址
+     *
+     * @param journaledJob 任务日志中的合并任务
+     */
+    static void resume(JobStatusPoller jobStatusPoller, JobJournal.JournaledJob journaledJob,
+                       EndpointRouter endpointRouter) {
+        List<JobJournal.JournaledSegment> segments = journaledJob.getSegments();
+        List<String> jobIds = new ArrayList<>(segments.size());
+        long[] offsetsInMillis = new long[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            jobIds.add(segments.get(i).getJobId());
+            offsetsInMillis[i] = segments.get(i).getOffsetInMillis();
+        }
+        Map<String, String> pendingCallbacks = journaledJob.getPendingCallbacks();
+        SegmentedJob segmentedJob = new SegmentedJob(jobIds, offsetsInMillis, (jobId, result) -> {
+            for (Map.Entry<String, String> callback : pendingCallbacks.entrySet()) {
+                jobStatusPoller.deliver(callback.getValue(), jobId, callback.getKey(), result);
+            }
+        });
+        LOGGER.info(String.format("Resume %d segments of job[%s] from journal, %d callback(s) pending.",
+                segments.size(), segmentedJob.getJobId(), pendingCallbacks.size()));
+        //日志中的任务至少有一个尚未完成的回调
+        String audioUrl = pendingCallbacks.values().iterator().next();
+        for (int i = 0; i < segments.size(); i++) {
+            int index = i;
+            jobStatusPoller.resumeSegment(String.format("%s#%d", audioUrl, index), jobIds.get(i),
+                    endpointRouter.byName(segments.get(i).getEndpoint()),
+                    (jobId, result) -> segmentedJob.segmentDone(index, result));
+        }
+    }
+
+    String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * 第index个片段的识别任务结束
+     *
+     * @param result 查询成功时为GetResultRes，查询失败时为错误响应字符串
+     */
+    void segmentDone(int index, Object result) {
+        results.set(index, result);
+        if (remaining.decrementAndGet() == 0) {
+            LOGGER.info(String.format("All %d segments of job[%s] are done, merge the results.", results.length(),
+                    jobId));
+            onDone.accept(jobId, merge());
+        }
+    }
+
+    private Object merge() {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < results.length(); i++) {
+            Object result = results.get(i);
+            if (!(result instanceof GetResultRes)
+                    || JobStatus.valueFrom(((GetResultRes) result).getStatusCode()) != JobStatus.FINISHED) {
+                LOGGER.error(String.format("Segment %d of job[%s] did not finish.", i, jobId));
+                return result;
+            }
+            String segmentWords = ((GetResultRes) result).getWords();
+            if (segmentWords == null || segmentWords.isEmpty()) {
+                continue;
+            }
+            if (words.length() > 0 && words.charAt(words.length() - 1) != '\n' && segmentWords.startsWith("[")) {
+                words.append('\n');
+            }
+            words.append(shiftTimestamps(segmentWords, offsetsInMillis[i]));
+        }
+        return new GetResultRes(JobStatus.FINISHED.getStatusCode(), "Finished", words.toString());
+    }
+
+    /**
+     * 把[HH:mm:ss.SSS,HH:mm:ss.SSS]形式的时间段整体后移offsetInMillis
+     */
+    static String shiftTimestamps(String words, long offsetInMillis) {
+        if (offsetInMillis == 0) {
+            return words;
+        }
+        Matcher matcher = TIME_RANGE.matcher(words);
+        StringBuffer shifted = new StringBuffer(words.length());
+        while (matcher.find()) {
+            long begin = toMillis(matcher, 1) + offsetInMillis;
+            long end = toMillis(matcher, 5) + offsetInMillis;
+            matcher.appendReplacement(shifted, "[" + formatMillis(begin) + "," + formatMillis(end) + "]");
+        }
+        matcher.appendTail(shifted);
+        return shifted.toString();
+    }
+
+    private static long toMillis(Matcher matcher, int group) {
+        return ((Long.parseLong(matcher.group(group)) * 60 + Long.parseLong(matcher.group(group + 1))) * 60
+                + Long.parseLong(matcher.group(group + 2))) * 1000 + Long.parseLong(matcher.group(group + 3));
+    }
+
+    private static String formatMillis(long millis) {
+        return String.format("%02d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60,
+                millis % 1000);
+    }
+}
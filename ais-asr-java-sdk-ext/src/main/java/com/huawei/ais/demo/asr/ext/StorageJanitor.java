@@ -0,0 +1,192 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.huawei.ais.demo.obs.ObsFileHandle;
+
+/**
+ * 清理识别任务占用的本地文件和OBS文件<p/>
+ * 提交成功的任务按jobId记录其音频，任务结束（FINISHED/FAILED）或提交失败时立即删除本地文件，
+ * OBS文件在保留时间后由后台线程批量删除；保留期间同一个OBS文件被重新提交（去重缓存中失败任务的重试）时取消删除。<br/>
+ * 批量删除失败的文件在下一轮重试，连续失败MAX_DELETE_ATTEMPTS次后放弃
+ */
+class StorageJanitor {
+
+    private static final Log LOGGER = LogFactory.getLog(StorageJanitor.class);
+
+    private static final int MAX_DELETE_ATTEMPTS = 3;
+
+    private final long retentionInMillis;
+    private final long intervalInMillis;
+    private final Map<String, AudioPayload> trackedJobs = new ConcurrentHashMap<>();
+    //按加入顺序排列，由this保护
+    private final Map<ObsFileHandle, PendingDelete> pendingDeletes = new LinkedHashMap<>();
+    private final ScheduledThreadPoolExecutor cleanExecutor;
+
+    /**
+     * @param retentionInMillis 任务结束后OBS文件的保留时间
+     * @param intervalInMillis  批量删除OBS文件的间隔，为0时不启动后台线程，由调用方调用cleanUp
+     */
+    StorageJanitor(long retentionInMillis, long intervalInMillis) {
+        this.retentionInMillis = retentionInMillis;
+        this.intervalInMillis = intervalInMillis;
+        if (intervalInMillis > 0) {
+            cleanExecutor = new ScheduledThreadPoolExecutor(1,
+                    CommonUtils.ThreadFactoryConstructor(true, "asr-sdk-storage-cleaner-%d"));
+            cleanExecutor.scheduleWithFixedDelay(this::scheduledCleanUp, intervalInMillis, intervalInMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            cleanExecutor = null;
+        }
+    }
+
+    /**
+     * 记录提交成功的任务的音频，任务结束时由jobDone释放
+     */
+    void track(String jobId, AudioPayload payload) {
+        ObsFileHandle obsFileHandle = payload.getObsFileHandle();
+        if (obsFileHandle != null) {
+            synchronized (this) {
+                pendingDeletes.remove(obsFileHandle);
+            }
+        }
+        trackedJobs.put(jobId, payload);
+    }
+
+    /**
+     * 任务结束，释放它的音频，未记录的任务（如从任务日志恢复的任务）忽略
+     */
+    void jobDone(String jobId) {
+        AudioPayload payload = trackedJobs.remove(jobId);
+        if (payload != null) {
+            release(payload);
+        }
+    }
+
+    /**
+     * 不再跟踪任务，但保留它的音频，用于无法确认任务是否已结束的情况（如连续查询失败后放弃）
+     */
+    void forget(String jobId) {
+        AudioPayload payload = trackedJobs.remove(jobId);
+        if (payload != null) {
+            LOGGER.warn(String.format("Job[%s] is no longer tracked, its audio files are kept.", jobId));
+        }
+    }
+
+    /**
+     * 立即删除本地文件，OBS文件在保留时间后删除
+     */
+    void release(AudioPayload payload) {
+        deleteLocalFile(payload.getLocalFilePath());
+        ObsFileHandle obsFileHandle = payload.getObsFileHandle();
+        if (obsFileHandle != null && !obsFileHandle.isDeleted()) {
+            synchronized (this) {
+                pendingDeletes.put(obsFileHandle, new PendingDelete(System.currentTimeMillis() + retentionInMillis));
+            }
+        }
+    }
+
+    void deleteLocalFile(String filePath) {
+        if (filePath != null) {
+            FileUtils.deleteQuietly(new File(filePath));
+        }
+    }
+
+    /**
+     * @return 尚未结束的任务数
+     */
+    int trackedJobs() {
+        return trackedJobs.size();
+    }
+
+    /**
+     * @return 等待删除的OBS文件数
+     */
+    synchronized int pendingDeletes() {
+        return pendingDeletes.size();
+    }
+
+    /**
+     * 批量删除已过保留时间的OBS文件
+     *
+     * @param all 为true时忽略保留时间，删除所有等待删除的文件
+     * @return 删除成功的文件数
+     */
+    int cleanUp(boolean all) {
+        long now = System.currentTimeMillis();
+        Map<ObsFileHandle, PendingDelete> due = new LinkedHashMap<>();
+        synchronized (this) {
+            Iterator<Map.Entry<ObsFileHandle, PendingDelete>> it = pendingDeletes.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ObsFileHandle, PendingDelete> entry = it.next();
+                if (all || entry.getValue().dueAt <= now) {
+                    due.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        List<ObsFileHandle> failed = ObsFileHandle.deleteAll(new ArrayList<>(due.keySet()));
+        for (ObsFileHandle obsFileHandle : failed) {
+            PendingDelete pending = due.get(obsFileHandle);
+            if (pending.attempts + 1 < MAX_DELETE_ATTEMPTS) {
+                synchronized (this) {
+                    pendingDeletes.putIfAbsent(obsFileHandle, new PendingDelete(now, pending.attempts + 1));
+                }
+            }
+        }
+        LOGGER.info(String.format("Deleted %d obs object(s), %d failed.", due.size() - failed.size(),
+                failed.size()));
+        return due.size() - failed.size();
+    }
+
+    /**
+     * 停止后台线程，并删除所有等待删除的OBS文件；尚未结束的任务的文件保留
+     */
+    void destroy() {
+        CommonUtils.destroyExecutors(cleanExecutor, "cleanExecutor");
+        cleanUp(true);
+        if (!trackedJobs.isEmpty()) {
+            LOGGER.info(String.format("%d job(s) still running, their audio files are kept.", trackedJobs.size()));
+        }
+    }
+
+    private void scheduledCleanUp() {
+        try {
+            cleanUp(false);
+        } catch (RuntimeException e) {
+            LOGGER.error(String.format("Clean up obs objects failed, will try in %d ms.", intervalInMillis), e);
+        }
+    }
+
+    private static class PendingDelete {
+
+        private final long dueAt;
+        private final int attempts;
+
+        PendingDelete(long dueAt) {
+            this(dueAt, 0);
+        }
+
+        PendingDelete(long dueAt, int attempts) {
+            this.dueAt = dueAt;
+            this.attempts = attempts;
+        }
+    }
+}
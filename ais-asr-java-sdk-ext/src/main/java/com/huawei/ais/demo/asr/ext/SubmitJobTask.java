@@ -2,102 +2,260 @@ package com.huawei.ais.demo.asr.ext;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
 
-import com.huawei.ais.demo.HttpJsonDataUtils;
 import com.huawei.ais.demo.asr.Config;
-import com.huawei.ais.demo.asr.model.SubmitReq;
-import com.huawei.ais.demo.asr.model.SubmitSuccessRes;
 import com.huawei.ais.demo.obs.ObsFileHandle;
 import com.huawei.ais.demo.obs.SimpleObsClient;
-import com.huawei.ais.sdk.AisAccess;
 
 class SubmitJobTask implements Callable<String> {
 
     private static final Log LOGGER = LogFactory.getLog(SubmitJobTask.class);
 
-    private static final String SUBMIT_JOB_URI = "/v1.0/voice/asr/long-sentence";
-    private static final String JSON_ROOT = "result";
-
     private static final Config CONFIG = Config.getInstance();
 
+    private static final WavSplitter WAV_SPLITTER = new WavSplitter(CONFIG.getSegmentDuration() * 1000L,
+            CONFIG.getSegmentSilenceWindow());
+
     private String audioUrl;
     private String callbackUrl;
-    private AisAccess aisAccessClient;
-    private SimpleObsClient simpleObsClient;
-    private ExecutorService callbackExecutors;
+    private EndpointRouter endpointRouter;
+    private AudioDownloader audioDownloader;
+    private JobStatusPoller jobStatusPoller;
+    private AudioDedupCache dedupCache;
+    private AsrSubmitter asrSubmitter;
+    private ExecutorService segmentExecutors;
+    private StorageJanitor storageJanitor;
+    private AsrEndpoint endpoint;
+    private boolean submittedHere;
+    private boolean watched;
 
-    SubmitJobTask(String audioUrl, String callbackUrl, AisAccess aisAccessClient, SimpleObsClient simpleObsClient,
-                  ExecutorService callbackExecutors) {
+    /**
+     * @param endpointRouter    选择提交任务的账号，上传OBS、提交和之后的轮询都使用选中的账号
+     * @param dedupCache        音频去重缓存，为null时不去重
+     * @param asrSubmitter      提交识别任务，按QPS和并发数限制
+     * @param segmentExecutors  并发上传、提交长音频片段的线程池，为null时不切分；开启去重时不切分
+     * @param storageJanitor    清理去重命中后不再需要的音频，为null时不清理
+     */
+    SubmitJobTask(String audioUrl, String callbackUrl, EndpointRouter endpointRouter, AudioDownloader audioDownloader,
+                  JobStatusPoller jobStatusPoller, AudioDedupCache dedupCache, AsrSubmitter asrSubmitter,
+                  ExecutorService segmentExecutors, StorageJanitor storageJanitor) {
         this.audioUrl = audioUrl;
         this.callbackUrl = callbackUrl;
-        this.aisAccessClient = aisAccessClient;
-        this.simpleObsClient = simpleObsClient;
-        this.callbackExecutors = callbackExecutors;
+        this.endpointRouter = endpointRouter;
+        this.audioDownloader = audioDownloader;
+        this.jobStatusPoller = jobStatusPoller;
+        this.dedupCache = dedupCache;
+        this.asrSubmitter = asrSubmitter;
+        this.segmentExecutors = segmentExecutors;
+        this.storageJanitor = storageJanitor;
     }
 
     @Override
     public String call() throws IOException {
-        String filePath = downloadAudio(audioUrl);
-        ObsFileHandle obsFileHandle = simpleObsClient.uploadFile(CONFIG.getObsBucketName(), filePath);
-        String jobId = null;
+        endpoint = endpointRouter.choose();
         try {
-            jobId = submitJobToAsrService(audioUrl, obsFileHandle.generateSharedDownloadUrl());
-            if (jobId != null) {
-                LOGGER.info(String.format("Create callback task for job[%s].", jobId));
-                callbackExecutors.submit(new CallbackTask(audioUrl, jobId, callbackUrl, aisAccessClient));
-                return jobId;
+            return transferAndSubmit();
+        } finally {
+            if (!watched) {
+                //没有提交成功或复用了已有的任务，不占用此账号的在途计数
+                endpoint.jobEnded();
+            }
+        }
+    }
+
+    private String transferAndSubmit() throws IOException {
+        if (dedupCache == null) {
+            if (segmentExecutors != null) {
+                return submitSegmented();
+            }
+            return submitAndWatch(audioDownloader.fetch(audioUrl, endpoint.getSimpleObsClient(),
+                    endpoint.getObsBucketName(), null));
+        }
+
+        AudioDedupCache.CachedAudio cached = dedupCache.getOrLoad(AudioDedupCache.urlKey(audioUrl),
+                this::downloadOnce);
+        if (cached == null || submittedHere) {
+            return cached == null ? null : cached.getJobId();
+        }
+        if (join(cached)) {
+            return cached.getJobId();
+        }
+        //缓存的任务已失败，重新识别，OBS文件仍在时不再重复上传；内联提交的音频不缓存内容，重新下载
+        dedupCache.invalidate(cached);
+        ObsFileHandle obsFileHandle = cached.getObsFileHandle();
+        if (obsFileHandle == null || obsFileHandle.isDeleted()) {
+            return submitAndWatch(audioDownloader.fetch(audioUrl, endpoint.getSimpleObsClient(),
+                    endpoint.getObsBucketName(), null));
+        }
+        return submitAndWatch(AudioPayload.obs(obsFileHandle));
+    }
+
+    /**
+     * 下载音频并计算内容摘要，内容相同的音频复用已上传的OBS文件和识别任务
+     */
+    private AudioDedupCache.CachedAudio downloadOnce() throws IOException {
+        MessageDigest contentDigest = AudioDedupCache.newContentDigest();
+        SimpleObsClient simpleObsClient = endpoint.getSimpleObsClient();
+        String bucketName = endpoint.getObsBucketName();
+        if (CONFIG.isDownloadStreaming()) {
+            //流式模式下摘要在上传完成后才能得到，只能节省识别的开销
+            AudioPayload payload = audioDownloader.fetch(audioUrl, simpleObsClient, bucketName, contentDigest);
+            String contentKey = AudioDedupCache.contentKey(contentDigest);
+            AudioDedupCache.CachedAudio cached = dedupCache.getOrLoad(contentKey,
+                    () -> submitAndCache(payload, contentKey));
+            if (!submittedHere && storageJanitor != null) {
+                //内容相同的音频已经提交过，刚上传的文件不再需要
+                storageJanitor.release(payload);
             }
-        } catch (RejectedExecutionException e1) {
-            LOGGER.error(String.format("Submit callback task failed. job_id=%s audio_url=%s.", jobId, audioUrl));
+            return cached;
+        }
+
+        String filePath = audioDownloader.downloadToFile(audioUrl, contentDigest);
+        String contentKey = AudioDedupCache.contentKey(contentDigest);
+        AudioDedupCache.CachedAudio cached = dedupCache.getOrLoad(contentKey, () -> submitAndCache(
+                audioDownloader.uploadOrInline(simpleObsClient, bucketName, filePath), contentKey));
+        if (!submittedHere && storageJanitor != null) {
+            storageJanitor.deleteLocalFile(filePath);
+        }
+        return cached;
+    }
+
+    /**
+     * 提交识别任务并开始轮询，轮询前先写入缓存，保证任务结束时能在缓存中找到它
+     *
+     * @return 缓存条目，提交失败时返回null
+     */
+    private AudioDedupCache.CachedAudio submitAndCache(AudioPayload payload, String contentKey)
+            throws IOException {
+        String jobId = asrSubmitter.submit(audioUrl, payload, endpoint);
+        if (jobId == null) {
+            LOGGER.error(String.format("Submit job to asr service failed for audio[%s].", audioUrl));
+            return null;
+        }
+        AudioDedupCache.CachedAudio cached = new AudioDedupCache.CachedAudio(payload.getObsFileHandle(), jobId,
+                endpoint.getName());
+        submittedHere = true;
+        dedupCache.put(AudioDedupCache.urlKey(audioUrl), cached);
+        dedupCache.put(contentKey, cached);
+        LOGGER.info(String.format("Start polling job[%s].", jobId));
+        watched = true;
+        jobStatusPoller.watch(audioUrl, jobId, callbackUrl, endpoint, payload.getSize());
+        return cached;
+    }
+
+    /**
+     * 复用缓存的识别结果，或订阅进行中的任务
+     *
+     * @return 任务已失败、无法复用时返回false
+     */
+    private boolean join(AudioDedupCache.CachedAudio cached) {
+        if (cached.getResult() == null
+                && jobStatusPoller.subscribe(cached.getJobId(), audioUrl, callbackUrl)) {
+            LOGGER.info(String.format("Audio[%s] joins job[%s] in progress.", audioUrl, cached.getJobId()));
+            return true;
+        }
+        //任务结束时先记录结果再停止接受订阅，所以订阅失败后再取一次结果
+        if (cached.getResult() != null) {
+            LOGGER.info(String.format("Audio[%s] hits the finished job[%s].", audioUrl, cached.getJobId()));
+            jobStatusPoller.deliver(audioUrl, cached.getJobId(), callbackUrl, cached.getResult(),
+                    cached.getEndpoint());
+            return true;
+        }
+        return false;
+    }
+
+    private String submitAndWatch(AudioPayload payload) throws IOException {
+        String jobId = asrSubmitter.submit(audioUrl, payload, endpoint);
+        if (jobId != null) {
+            LOGGER.info(String.format("Start polling job[%s].", jobId));
+            watched = true;
+            jobStatusPoller.watch(audioUrl, jobId, callbackUrl, endpoint, payload.getSize());
+            return jobId;
         }
         LOGGER.error(String.format("Submit job to asr service failed for audio[%s].", audioUrl));
         return null;
     }
 
-    private String downloadAudio(String audioUrl) throws IOException {
-        LOGGER.info("Begin to download audio file... url:" + audioUrl);
-        try {
-            URL url = new URL(audioUrl);
-            String urlDecoded = URLDecoder.decode(audioUrl, "UTF-8");
-            String fileName = urlDecoded.substring(urlDecoded.lastIndexOf("/") + 1);
-            File destFile = new File("data/" + fileName);
-            FileUtils.copyURLToFile(url, destFile);
-            LOGGER.info("Download done! local:" + destFile.getAbsolutePath());
-            return destFile.getAbsolutePath();
-        } catch (IOException e) {
-            LOGGER.error("Download audio failed. audio_url:" + audioUrl, e);
-            throw e;
+    /**
+     * 下载音频，WAV音频超过segment.duration时切分成片段，各片段分别选择账号并发上传、提交，全部结束后合并结果回调一次
+     *
+     * @return 各片段jobId逗号拼接的任务id，有片段提交失败时返回null
+     */
+    private String submitSegmented() throws IOException {
+        String filePath = audioDownloader.downloadToFile(audioUrl, null);
+        List<WavSplitter.Segment> segments = WAV_SPLITTER.split(filePath);
+        if (segments.isEmpty()) {
+            return submitAndWatch(audioDownloader.uploadOrInline(endpoint.getSimpleObsClient(),
+                    endpoint.getObsBucketName(), filePath));
         }
-    }
+        //各片段已写成独立的文件
+        FileUtils.deleteQuietly(new File(filePath));
 
-    private String submitJobToAsrService(String audio, String obsUrl) throws IOException {
-        SubmitReq submitReq = new SubmitReq();
-        submitReq.setUrl(obsUrl);
+        int count = segments.size();
+        String[] jobIds = new String[count];
+        AsrEndpoint[] endpoints = new AsrEndpoint[count];
+        List<Future<?>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(segmentExecutors.submit(() -> {
+                endpoints[index] = endpointRouter.choose();
+                jobIds[index] = submitSegment(segments.get(index), endpoints[index]);
+            }));
+        }
+        awaitUninterruptibly(futures);
 
-        HttpResponse response = aisAccessClient.post(SUBMIT_JOB_URI, HttpJsonDataUtils.objectToHttpEntity(submitReq));
-        if (!HttpJsonDataUtils.isOKResponded(response)) {
-            LOGGER.error(String.format("Submit the job failed, audio_url:%s obs_url:%s", audio, obsUrl));
-            LOGGER.debug("Request body:" + HttpJsonDataUtils.objectToPrettyJsonString(submitReq));
-            String responseStr = EntityUtils.toString(response.getEntity(), "UTF-8");
-            LOGGER.error(responseStr);
+        return SegmentedJob.watch(jobStatusPoller, audioUrl, callbackUrl, segments, jobIds, endpoints);
+    }
 
+    /**
+     * 上传并提交一个片段，片段文件随后删除
+     *
+     * @return 识别任务id，失败时返回null
+     */
+    private String submitSegment(WavSplitter.Segment segment, AsrEndpoint segmentEndpoint) {
+        try {
+            AudioPayload payload = audioDownloader.uploadOrInline(segmentEndpoint.getSimpleObsClient(),
+                    segmentEndpoint.getObsBucketName(), segment.getFilePath());
+            return asrSubmitter.submit(segment.getFilePath(), payload, segmentEndpoint);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error(String.format("Submit segment %s failed.", segment.getFilePath()), e);
+            return null;
+        } finally {
+            FileUtils.deleteQuietly(new File(segment.getFilePath()));
         }
+    }
 
-        // 获取到提交成功的任务ID, 准备进行结果的查询
-        SubmitSuccessRes submitResult = HttpJsonDataUtils.getResponseObject(response, SubmitSuccessRes.class, JSON_ROOT);
-        String jobId = submitResult.getJobId();
-        LOGGER.info("Submit job done, job_id=" + jobId);
-        return jobId;
+    /**
+     * 等待所有片段提交结束，已选中的账号要在此之后结束在途计数，所以中断时也不提前返回
+     */
+    private static void awaitUninterruptibly(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    LOGGER.error("Submit segment failed.", e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
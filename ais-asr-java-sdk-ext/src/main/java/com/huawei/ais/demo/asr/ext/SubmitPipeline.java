@@ -0,0 +1,267 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.huawei.ais.demo.asr.Config;
+
+/**
+ * 分阶段的提交流水线，下载、上传OBS、提交识别任务三个阶段各有独立的线程池和有界队列<p/>
+ * 每个阶段做完自己的部分就把任务交给下一阶段，慢的音频源只占用下载线程，不影响其他任务的上传和提交；
+ * 三个阶段的线程数可以分别按入站带宽、OBS带宽和asr.submit.qps配置。<p/>
+ * 下游队列已满时上游的工作线程阻塞在交接上，任务在离开下载阶段时才归还准入许可，
+ * 因此拥塞会一直传回到callAsrService，由它拒绝或等待新的调用。<p/>
+ * 流式模式下载和上传在下载阶段一并完成；开启segment.enabled时，WAV长音频在下载阶段切分，各片段分别上传和提交
+ */
+class SubmitPipeline {
+
+    private static final Log LOGGER = LogFactory.getLog(SubmitPipeline.class);
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private final EndpointRouter endpointRouter;
+    private final AudioDownloader audioDownloader;
+    private final AsrSubmitter asrSubmitter;
+    private final JobStatusPoller jobStatusPoller;
+    private final Semaphore admission;
+    private final WavSplitter wavSplitter;
+
+    private final PipelineStage downloadStage;
+    private final PipelineStage uploadStage;
+    private final PipelineStage submitStage;
+
+    /**
+     * @param admission   准入许可，调用方取得许可后调用submit，任务离开下载阶段时归还
+     * @param wavSplitter 长音频切分器，为null时不切分
+     */
+    SubmitPipeline(EndpointRouter endpointRouter, AudioDownloader audioDownloader, AsrSubmitter asrSubmitter,
+                   JobStatusPoller jobStatusPoller, Semaphore admission, WavSplitter wavSplitter) {
+        this.endpointRouter = endpointRouter;
+        this.audioDownloader = audioDownloader;
+        this.asrSubmitter = asrSubmitter;
+        this.jobStatusPoller = jobStatusPoller;
+        this.admission = admission;
+        this.wavSplitter = wavSplitter;
+        //许可在下载线程回到队列取任务前归还，为每个下载线程在队列中预留一个位置，取得许可的任务放入队列时不会失败
+        this.downloadStage = new PipelineStage("download", CONFIG.getPipelineDownloadThreads(),
+                CONFIG.getPipelineDownloadQueueSize() + CONFIG.getPipelineDownloadThreads());
+        this.uploadStage = new PipelineStage("upload", CONFIG.getPipelineUploadThreads(),
+                CONFIG.getPipelineUploadQueueSize());
+        this.submitStage = new PipelineStage("submit", CONFIG.getPipelineSubmitThreads(),
+                CONFIG.getPipelineSubmitQueueSize());
+    }
+
+    /**
+     * @return 准入许可数，等于下载阶段的线程数加队列长度，取得许可的任务进入下载阶段时不会等待
+     */
+    static int admissionPermits() {
+        return CONFIG.getPipelineDownloadThreads() + CONFIG.getPipelineDownloadQueueSize();
+    }
+
+    /**
+     * 把已取得准入许可的任务放入下载阶段
+     *
+     * @return 任务提交成功后完成的future，值为云端识别任务的jobId，提交失败时为null
+     * @throws RejectedExecutionException 流水线已关闭
+     */
+    CompletableFuture<String> submit(String audioUrl, String callbackUrl) {
+        Job job = new Job(audioUrl, callbackUrl);
+        if (!downloadStage.offer(() -> download(job))) {
+            throw new RejectedExecutionException("Download stage is full.");
+        }
+        return job.future;
+    }
+
+    PoolStats getDownloadStats() {
+        return downloadStage.stats();
+    }
+
+    PoolStats getUploadStats() {
+        return uploadStage.stats();
+    }
+
+    PoolStats getSubmitStats() {
+        return submitStage.stats();
+    }
+
+    /**
+     * 按下载、上传、提交的顺序关闭，上游交接给下游的任务仍能执行完
+     */
+    void destroy() {
+        downloadStage.destroy();
+        uploadStage.destroy();
+        submitStage.destroy();
+    }
+
+    private void download(Job job) {
+        try {
+            if (CONFIG.isDownloadStreaming()) {
+                job.endpoint = endpointRouter.choose();
+                AudioPayload payload = audioDownloader.fetch(job.audioUrl, job.endpoint.getSimpleObsClient(),
+                        job.endpoint.getObsBucketName(), null);
+                handOff(submitStage, job, () -> submit(job, payload));
+                return;
+            }
+            String filePath = audioDownloader.downloadToFile(job.audioUrl, null);
+            List<WavSplitter.Segment> segments = wavSplitter == null ? null : wavSplitter.split(filePath);
+            if (segments == null || segments.isEmpty()) {
+                handOff(uploadStage, job, () -> upload(job, filePath));
+            } else {
+                FileUtils.deleteQuietly(new File(filePath));
+                new SegmentedUpload(job, segments).start();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(job, e);
+        } finally {
+            admission.release();
+        }
+    }
+
+    private void upload(Job job, String filePath) {
+        try {
+            job.endpoint = endpointRouter.choose();
+            AudioPayload payload = audioDownloader.uploadOrInline(job.endpoint.getSimpleObsClient(),
+                    job.endpoint.getObsBucketName(), filePath);
+            handOff(submitStage, job, () -> submit(job, payload));
+        } catch (IOException | RuntimeException e) {
+            fail(job, e);
+        }
+    }
+
+    private void submit(Job job, AudioPayload payload) {
+        String jobId;
+        try {
+            jobId = asrSubmitter.submit(job.audioUrl, payload, job.endpoint);
+        } catch (IOException | RuntimeException e) {
+            fail(job, e);
+            return;
+        }
+        if (jobId == null) {
+            LOGGER.error(String.format("Submit job to asr service failed for audio[%s].", job.audioUrl));
+            job.endpoint.jobEnded();
+            job.future.complete(null);
+            return;
+        }
+        LOGGER.info(String.format("Start polling job[%s].", jobId));
+        jobStatusPoller.watch(job.audioUrl, jobId, job.callbackUrl, job.endpoint, payload.getSize());
+        job.future.complete(jobId);
+    }
+
+    /**
+     * 交给下一阶段，等待时被中断或下一阶段已关闭则任务失败
+     */
+    private void handOff(PipelineStage next, Job job, Runnable task) {
+        try {
+            next.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, e);
+        } catch (RejectedExecutionException e) {
+            fail(job, e);
+        }
+    }
+
+    private static void fail(Job job, Exception e) {
+        LOGGER.error(String.format("Submit audio[%s] failed in pipeline.", job.audioUrl), e);
+        if (job.endpoint != null) {
+            job.endpoint.jobEnded();
+        }
+        job.future.completeExceptionally(e);
+    }
+
+    private static class Job {
+
+        private final String audioUrl;
+        private final String callbackUrl;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        //上传阶段（流式模式下为下载阶段）选定，此后只由下一阶段访问，交接经过队列，不需要volatile
+        private AsrEndpoint endpoint;
+
+        Job(String audioUrl, String callbackUrl) {
+            this.audioUrl = audioUrl;
+            this.callbackUrl = callbackUrl;
+        }
+    }
+
+    /**
+     * 切分后的各片段分别选择账号，经过上传和提交阶段，全部提交结束后一起开始轮询
+     */
+    private class SegmentedUpload {
+
+        private final Job job;
+        private final List<WavSplitter.Segment> segments;
+        private final String[] jobIds;
+        private final AsrEndpoint[] endpoints;
+        private final AtomicInteger remaining;
+
+        SegmentedUpload(Job job, List<WavSplitter.Segment> segments) {
+            this.job = job;
+            this.segments = segments;
+            this.jobIds = new String[segments.size()];
+            this.endpoints = new AsrEndpoint[segments.size()];
+            this.remaining = new AtomicInteger(segments.size());
+        }
+
+        void start() {
+            for (int i = 0; i < segments.size(); i++) {
+                int index = i;
+                try {
+                    uploadStage.put(() -> upload(index));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done(index, null);
+                } catch (RejectedExecutionException e) {
+                    done(index, null);
+                }
+            }
+        }
+
+        private void upload(int index) {
+            WavSplitter.Segment segment = segments.get(index);
+            try {
+                endpoints[index] = endpointRouter.choose();
+                AudioPayload payload = audioDownloader.uploadOrInline(endpoints[index].getSimpleObsClient(),
+                        endpoints[index].getObsBucketName(), segment.getFilePath());
+                submitStage.put(() -> submit(index, payload));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                done(index, null);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error(String.format("Upload segment %s failed.", segment.getFilePath()), e);
+                done(index, null);
+            } finally {
+                FileUtils.deleteQuietly(new File(segment.getFilePath()));
+            }
+        }
+
+        private void submit(int index, AudioPayload payload) {
+            String jobId = null;
+            try {
+                jobId = asrSubmitter.submit(segments.get(index).getFilePath(), payload, endpoints[index]);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error(String.format("Submit segment %s failed.", segments.get(index).getFilePath()), e);
+            }
+            done(index, jobId);
+        }
+
+        /**
+         * 最后一个片段结束时开始轮询全部片段，各片段的jobId和账号在AtomicInteger递减之前写入，对最后一个片段可见
+         */
+        private void done(int index, String jobId) {
+            jobIds[index] = jobId;
+            if (remaining.decrementAndGet() == 0) {
+                job.future.complete(SegmentedJob.watch(jobStatusPoller, job.audioUrl, job.callbackUrl, segments,
+                        jobIds, endpoints));
+            }
+        }
+    }
+}
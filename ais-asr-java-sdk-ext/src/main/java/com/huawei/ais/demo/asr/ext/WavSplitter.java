@@ -0,0 +1,308 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * 按时长把PCM编码的WAV音频切分成多个片段<p/>
+ * 音频平均切成若干段，每段不超过segmentMillis；切分点在目标位置前后silenceWindowMillis内找平均幅度最小的20毫秒，
+ * 尽量不在句子中间切断。非PCM编码、无法解析文件头或时长不超过segmentMillis的音频不切分。<p/>
+ * 每个片段写成独立的WAV文件，并记录它在原音频中的起始时间，合并识别结果时据此修正时间戳
+ */
+class WavSplitter {
+
+    private static final Log LOGGER = LogFactory.getLog(WavSplitter.class);
+
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int FMT_PCM_SIZE = 16;
+    //WAVE_FORMAT_EXTENSIBLE的fmt块：16字节基本信息 + cbSize + 22字节扩展，扩展的最后16字节为子格式GUID
+    private static final int FMT_EXTENSIBLE_SIZE = 40;
+    private static final int EXTENSION_SIZE = 22;
+    //KSDATAFORMAT_SUBTYPE_PCM在文件中的字节序
+    private static final byte[] SUBTYPE_PCM = {0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x10, 0x00,
+            (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71};
+    private static final int SILENCE_PROBE_MILLIS = 20;
+
+    private final long segmentMillis;
+    private final long silenceWindowMillis;
+
+    /**
+     * @param segmentMillis       每个片段的最长时长
+     * @param silenceWindowMillis 在切分点前后寻找静音的范围，为0时按固定时长切分
+     */
+    WavSplitter(long segmentMillis, long silenceWindowMillis) {
+        this.segmentMillis = segmentMillis;
+        this.silenceWindowMillis = silenceWindowMillis;
+    }
+
+    /**
+     * 切分音频，片段文件与原文件放在同一目录下
+     *
+     * @param filePath 本地音频文件
+     * @return 按时间排序的片段，不能或不需要切分时返回空列表
+     */
+    List<Segment> split(String filePath) throws IOException {
+        File file = new File(filePath);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Format format = Format.read(channel);
+            if (format == null) {
+                LOGGER.info(String.format("%s is not a PCM wav file, submit it as a whole.", filePath));
+                return Collections.emptyList();
+            }
+            long frames = format.dataLength / format.blockAlign;
+            long totalMillis = format.millisOf(frames);
+            if (segmentMillis <= 0 || totalMillis <= segmentMillis) {
+                return Collections.emptyList();
+            }
+
+            long[] cuts = cutPoints(channel, format, frames);
+            String baseName = file.getName().replaceFirst("\\.[^.]*$", "");
+            List<Segment> segments = new ArrayList<>(cuts.length - 1);
+            try {
+                for (int i = 0; i + 1 < cuts.length; i++) {
+                    File segmentFile = new File(file.getAbsoluteFile().getParentFile(),
+                            String.format("%s.part%03d.wav", baseName, i));
+                    writeSegment(channel, format, cuts[i], cuts[i + 1], segmentFile);
+                    segments.add(new Segment(segmentFile.getAbsolutePath(), format.millisOf(cuts[i]),
+                            segmentFile.length()));
+                }
+            } catch (IOException e) {
+                for (Segment segment : segments) {
+                    FileUtils.deleteQuietly(new File(segment.getFilePath()));
+                }
+                throw e;
+            }
+            LOGGER.info(String.format("Split %s (%d ms) into %d segments.", filePath, totalMillis, segments.size()));
+            return segments;
+        }
+    }
+
+    /**
+     * @return 各片段的起始帧，最后一个元素为总帧数
+     */
+    private long[] cutPoints(FileChannel channel, Format format, long frames) throws IOException {
+        int count = (int) ((format.millisOf(frames) + segmentMillis - 1) / segmentMillis);
+        long windowFrames = silenceWindowMillis * format.sampleRate / 1000;
+        long[] cuts = new long[count + 1];
+        cuts[count] = frames;
+        for (int i = 1; i < count; i++) {
+            long target = frames * i / count;
+            cuts[i] = quietestFrame(channel, format, target, Math.max(cuts[i - 1] + 1, target - windowFrames),
+                    Math.min(frames - 1, target + windowFrames));
+        }
+        return cuts;
+    }
+
+    /**
+     * 在[from, to]内以20毫秒为单位找平均幅度最小的位置，幅度相同时取离target最近的
+     */
+    private static long quietestFrame(FileChannel channel, Format format, long target, long from, long to)
+            throws IOException {
+        if (from >= to || format.bitsPerSample != 8 && format.bitsPerSample != 16) {
+            return target;
+        }
+        long probeFrames = Math.max(1, format.sampleRate * SILENCE_PROBE_MILLIS / 1000);
+        ByteBuffer window = ByteBuffer.allocate((int) ((to - from + probeFrames) * format.blockAlign))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, window, format.dataOffset + from * format.blockAlign);
+        window.flip();
+
+        int samplesPerProbe = (int) probeFrames * format.channels;
+        int bytesPerSample = format.bitsPerSample / 8;
+        long quietest = target;
+        long quietestEnergy = Long.MAX_VALUE;
+        for (long start = from; start <= to; start += probeFrames) {
+            int position = (int) ((start - from) * format.blockAlign);
+            if (position + samplesPerProbe * bytesPerSample > window.limit()) {
+                break;
+            }
+            long energy = 0;
+            for (int i = 0; i < samplesPerProbe; i++) {
+                int offset = position + i * bytesPerSample;
+                energy += bytesPerSample == 2 ? Math.abs(window.getShort(offset))
+                        : Math.abs((window.get(offset) & 0xFF) - 128);
+            }
+            if (energy < quietestEnergy
+                    || energy == quietestEnergy && Math.abs(start - target) < Math.abs(quietest - target)) {
+                quietest = start;
+                quietestEnergy = energy;
+            }
+        }
+        return quietest;
+    }
+
+    private static void writeSegment(FileChannel source, Format format, long fromFrame, long toFrame, File dest)
+            throws IOException {
+        long dataLength = (toFrame - fromFrame) * format.blockAlign;
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt((int) (WAV_HEADER_SIZE - 8 + dataLength))
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) FORMAT_PCM).putShort((short) format.channels)
+                .putInt(format.sampleRate).putInt(format.sampleRate * format.blockAlign)
+                .putShort((short) format.blockAlign).putShort((short) format.bitsPerSample)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt((int) dataLength);
+        header.flip();
+
+        try (FileChannel target = FileChannel.open(dest.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                target.write(header);
+            }
+            long position = format.dataOffset + fromFrame * format.blockAlign;
+            for (long copied = 0; copied < dataLength; ) {
+                copied += source.transferTo(position + copied, dataLength - copied, target);
+            }
+        }
+    }
+
+    /**
+     * @return 读到文件末尾前是否已读满buffer
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * WAV文件头中切分需要的信息
+     */
+    private static class Format {
+
+        private int channels;
+        private int sampleRate;
+        private int blockAlign;
+        private int bitsPerSample;
+        private long dataOffset;
+        private long dataLength;
+
+        long millisOf(long frames) {
+            return frames * 1000 / sampleRate;
+        }
+
+        /**
+         * @return 不是PCM编码的WAV文件时返回null，WAVE_FORMAT_EXTENSIBLE的子格式也须是PCM
+         */
+        static Format read(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(FMT_EXTENSIBLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(12);
+            if (!readFully(channel, buffer, 0) || !"RIFF".equals(fourCc(buffer, 0))
+                    || !"WAVE".equals(fourCc(buffer, 8))) {
+                return null;
+            }
+
+            Format format = null;
+            long fileSize = channel.size();
+            for (long position = 12; position + 8 <= fileSize; ) {
+                buffer.clear().limit(8);
+                readFully(channel, buffer, position);
+                String chunkId = fourCc(buffer, 0);
+                long chunkSize = buffer.getInt(4) & 0xFFFFFFFFL;
+                if ("fmt ".equals(chunkId)) {
+                    if (chunkSize < FMT_PCM_SIZE) {
+                        return null;
+                    }
+                    buffer.clear().limit((int) Math.min(chunkSize, FMT_EXTENSIBLE_SIZE));
+                    if (!readFully(channel, buffer, position + 8)) {
+                        return null;
+                    }
+                    int audioFormat = buffer.getShort(0) & 0xFFFF;
+                    if (audioFormat != FORMAT_PCM
+                            && (audioFormat != FORMAT_EXTENSIBLE || !isPcmExtension(buffer, chunkSize))) {
+                        return null;
+                    }
+                    format = new Format();
+                    format.channels = buffer.getShort(2) & 0xFFFF;
+                    format.sampleRate = buffer.getInt(4);
+                    format.blockAlign = buffer.getShort(12) & 0xFFFF;
+                    format.bitsPerSample = buffer.getShort(14) & 0xFFFF;
+                } else if ("data".equals(chunkId)) {
+                    if (format == null || format.sampleRate <= 0 || format.blockAlign == 0) {
+                        return null;
+                    }
+                    format.dataOffset = position + 8;
+                    //边录边写的文件可能没有回填data长度
+                    long available = fileSize - format.dataOffset;
+                    format.dataLength = chunkSize == 0 || chunkSize > available ? available : chunkSize;
+                    return format;
+                }
+                position += 8 + chunkSize + (chunkSize & 1);
+            }
+            return null;
+        }
+
+        /**
+         * @return 扩展部分完整且子格式为PCM（而不是IEEE浮点等）
+         */
+        private static boolean isPcmExtension(ByteBuffer fmt, long chunkSize) {
+            if (chunkSize < FMT_EXTENSIBLE_SIZE || (fmt.getShort(FMT_PCM_SIZE) & 0xFFFF) < EXTENSION_SIZE) {
+                return false;
+            }
+            for (int i = 0; i < SUBTYPE_PCM.length; i++) {
+                if (fmt.get(FMT_EXTENSIBLE_SIZE - SUBTYPE_PCM.length + i) != SUBTYPE_PCM[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String fourCc(ByteBuffer buffer, int offset) {
+            byte[] id = new byte[4];
+            for (int i = 0; i < id.length; i++) {
+                id[i] = buffer.get(offset + i);
+            }
+            return new String(id, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * 切分出的一个片段
+     */
+    static class Segment {
+
+        private final String filePath;
+        private final long offsetInMillis;
+        private final long size;
+
+        Segment(String filePath, long offsetInMillis, long size) {
+            this.filePath = filePath;
+            this.offsetInMillis = offsetInMillis;
+            this.size = size;
+        }
+
+        String getFilePath() {
+            return filePath;
+        }
+
+        /**
+         * @return 片段在原音频中的起始时间（毫秒）
+         */
+        long getOffsetInMillis() {
+            return offsetInMillis;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package com.huawei.ais.demo.asr.model;
 
+import java.io.IOException;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
+@JsonDeserialize(using = GetResultRes.Deserializer.class)
 public class GetResultRes {
     @JsonProperty("status_code")
     int statusCode;
@@ -10,6 +18,15 @@ public class GetResultRes {
     @JsonProperty("words")
     String words;
 
+    public GetResultRes() {
+    }
+
+    public GetResultRes(int statusCode, String statusMsg, String words) {
+        this.statusCode = statusCode;
+        this.statusMsg = statusMsg;
+        this.words = words;
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
@@ -21,4 +38,51 @@ public class GetResultRes {
     public String getWords() {
         return words;
     }
+
+    /**
+     * 流式解析查询结果：status_code先于words出现且任务尚未结束时直接跳过words，不生成识别结果字符串；
+     * words先于status_code出现时无法回退，照常解析
+     */
+    static class Deserializer extends StdDeserializer<GetResultRes> {
+
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() {
+            super(GetResultRes.class);
+        }
+
+        @Override
+        public GetResultRes deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            GetResultRes result = new GetResultRes();
+            boolean statusKnown = false;
+            JsonToken token = parser.getCurrentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = parser.nextToken();
+            }
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                String fieldName = parser.getCurrentName();
+                token = parser.nextToken();
+                switch (fieldName) {
+                    case "status_code":
+                        result.statusCode = parser.getValueAsInt();
+                        statusKnown = true;
+                        break;
+                    case "status_msg":
+                        result.statusMsg = parser.getValueAsString();
+                        break;
+                    case "words":
+                        if (token == JsonToken.VALUE_STRING
+                                && (!statusKnown || JobStatus.valueFrom(result.statusCode) == JobStatus.FINISHED)) {
+                            result.words = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return result;
+        }
+    }
 }
@@ -12,6 +12,10 @@ public enum JobStatus {
         this.statusCode = statusCode;
     }
 
+    public int getStatusCode() {
+        return statusCode;
+    }
+
     public static JobStatus valueFrom(int statusCode) {
         for (JobStatus jobStatus : JobStatus.values()) {
             if (jobStatus.statusCode == statusCode) {
@@ -1,6 +1,7 @@
 package com.huawei.ais.demo.asr.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -8,8 +9,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class SubmitReq {
     @JsonProperty("url")
     String url;
-    @JsonProperty("data")
+    @JsonIgnore
     String data;
+    @JsonIgnore
+    byte[] audio;
     @JsonProperty("category")
     Category category;
 
@@ -29,6 +32,18 @@ public class SubmitReq {
         this.data = data;
     }
 
+    /**
+     * @param audio 音频内容，序列化时由JsonGenerator直接编码为base64写入data，不生成中间的base64字符串
+     */
+    public void setAudio(byte[] audio) {
+        this.audio = audio;
+    }
+
+    @JsonProperty("data")
+    Object getDataForJson() {
+        return audio != null ? audio : data;
+    }
+
     public Category getCategory() {
         return category;
     }
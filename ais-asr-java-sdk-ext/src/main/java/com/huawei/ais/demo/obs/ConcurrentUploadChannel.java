@@ -1,86 +1,304 @@
 package com.huawei.ais.demo.obs;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import com.obs.services.ObsClient;
 import com.obs.services.exception.ObsException;
-import com.obs.services.model.*;
+import com.obs.services.model.AbortMultipartUploadRequest;
+import com.obs.services.model.CompleteMultipartUploadRequest;
+import com.obs.services.model.InitiateMultipartUploadRequest;
+import com.obs.services.model.InitiateMultipartUploadResult;
+import com.obs.services.model.ListPartsRequest;
+import com.obs.services.model.ListPartsResult;
+import com.obs.services.model.Multipart;
+import com.obs.services.model.PartEtag;
+import com.obs.services.model.UploadPartRequest;
+import com.obs.services.model.UploadPartResult;
 
 /**
- * copy from OBS Java SDK
+ * 大文件分段并发上传<p/>
+ * 每个实例只负责一次上传，分段状态均保存在实例中，多个文件可以同时上传。
+ * 分段在SimpleObsClient共享的有界线程池中执行，单个文件同时在途的分段数受parallelism限制，
+ * 分段失败会单独重试，重试仍失败则取消整个分段上传任务。<p/>
+ * 配置了断点目录时，uploadId和已完成分段会记录在断点文件中，上传失败后保留已上传的分段，
+ * 再次上传同一文件时通过listParts确认OBS中已有的分段，并按断点中记录的MD5确认本地文件的对应内容未变，
+ * 只上传缺失或内容不一致的部分；超过保留时间的断点不再续传，其分段上传任务会被取消。<p/>
+ * 也可以上传长度已知的数据流：依次读出分段大小的缓冲交给线程池上传，在途的缓冲不超过parallelism个，
+ * 数据流无法重读，因此不记录断点，失败时直接取消分段上传任务
  */
 public class ConcurrentUploadChannel {
 
-    private static final int PART_SIZE_IN_MB_DEFAULT = 5;
-    private static ExecutorService executorService = Executors.newFixedThreadPool(5);
-    private static List<PartEtag> partETags = Collections.synchronizedList(new ArrayList<PartEtag>());
-    private ObsClient obsClient;
-    private String bucketName;
-    private String objectKey;
-    private File file;
+    private static final Log LOGGER = LogFactory.getLog(ConcurrentUploadChannel.class);
+
+    private static final int MAX_PART_COUNT = 10000;
+    private static final int LIST_PARTS_MAX = 1000;
+    private static final long RETRY_BACKOFF_MILLIS = 1000;
+
+    private final ObsClient obsClient;
+    private final String bucketName;
+    private final String objectKey;
+    private final File file;
+    private final InputStream input;
+    private final long contentLength;
+    private final ExecutorService partUploadExecutor;
+    private final MultipartUploadOptions options;
+
+    private final List<PartEtag> partETags = Collections.synchronizedList(new ArrayList<PartEtag>());
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private UploadCheckpoint checkpoint;
 
-    public ConcurrentUploadChannel(ObsClient obsClient, String bucketName, String objectKey, File file) {
+    public ConcurrentUploadChannel(ObsClient obsClient, String bucketName, String objectKey, File file,
+                                   ExecutorService partUploadExecutor, MultipartUploadOptions options) {
         this.obsClient = obsClient;
         this.bucketName = bucketName;
         this.objectKey = objectKey;
         this.file = file;
+        this.input = null;
+        this.contentLength = file.length();
+        this.partUploadExecutor = partUploadExecutor;
+        this.options = options;
     }
 
-    public void upload() {
-        upload(PART_SIZE_IN_MB_DEFAULT);
+    /**
+     * 上传长度已知的数据流，数据流由调用方负责关闭
+     */
+    public ConcurrentUploadChannel(ObsClient obsClient, String bucketName, String objectKey, InputStream input,
+                                   long contentLength, ExecutorService partUploadExecutor,
+                                   MultipartUploadOptions options) {
+        this.obsClient = obsClient;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+        this.file = null;
+        this.input = input;
+        this.contentLength = contentLength;
+        this.partUploadExecutor = partUploadExecutor;
+        this.options = options;
     }
 
-    public void upload(int partSizeInMB) {
-        String uploadId = claimUploadId();
-        System.out.println("Claiming a new upload id " + uploadId + "\n");
-
-        long partSize = partSizeInMB * 1024 * 1024L;// 5MB
-        long fileLength = file.length();
+    public void upload() {
+        long partSize = options.getPartSizeInMB() * 1024 * 1024L;
+        long fileLength = contentLength;
         long partCount = fileLength % partSize == 0 ? fileLength / partSize : fileLength / partSize + 1;
-
-        if (partCount > 10000) {
-            throw new RuntimeException("Total parts count should not exceed 10000");
-        } else {
-            System.out.println("Total parts count " + partCount + "\n");
+        if (partCount > MAX_PART_COUNT) {
+            throw new IllegalArgumentException("Total parts count should not exceed " + MAX_PART_COUNT);
         }
 
-        //Upload multiparts to your bucket
-        System.out.println("Begin to upload multiparts to OBS from a file\n");
-        for (int i = 0; i < partCount; i++) {
-            long offset = i * partSize;
-            long currPartSize = (i + 1 == partCount) ? fileLength - offset : partSize;
-            executorService.execute(new PartUploader(
-                    obsClient, bucketName, objectKey, file, offset, currPartSize, i + 1, uploadId));
+        String uploadId = input == null ? resumeUploadId(partSize) : null;
+        if (uploadId == null) {
+            uploadId = claimUploadId();
+            LOGGER.info(String.format("Claiming a new upload id %s for %s, total parts count %d.",
+                    uploadId, objectKey, partCount));
+            if (input == null && options.getCheckpointDir() != null) {
+                checkpoint = new UploadCheckpoint(
+                        UploadCheckpoint.locate(options.getCheckpointDir(), bucketName, objectKey),
+                        bucketName, objectKey, uploadId, file, partSize);
+                checkpoint.save();
+            }
         }
 
-        //Waiting for all parts finished
-        executorService.shutdown();
-        while (!executorService.isTerminated()) {
-            try {
-                executorService.awaitTermination(5, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        try {
+            if (input == null) {
+                uploadParts(uploadId, partSize, fileLength, (int) partCount);
+            } else {
+                uploadStreamParts(uploadId, partSize, fileLength, (int) partCount);
             }
+            if (failure.get() != null) {
+                throw new IllegalStateException("Upload multiparts fail for " + objectKey, failure.get());
+            }
+            completeMultipartUpload(uploadId);
+            LOGGER.info("Succeed to complete multiparts into an object named " + objectKey);
+        } catch (RuntimeException e) {
+            if (checkpoint == null) {
+                abortMultipartUpload(uploadId);
+            } else {
+                LOGGER.warn(String.format("Upload[%s] for %s failed with %d part(s) done, keep it for resuming.",
+                        uploadId, objectKey, partETags.size()));
+            }
+            throw e;
         }
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+    }
 
-        //Verify whether all parts are finished
-        if (partETags.size() != partCount) {
-            throw new IllegalStateException("Upload multiparts fail due to some parts are not finished yet");
-        } else {
-            System.out.println("Succeed to complete multiparts into an object named " + objectKey + "\n");
+    /**
+     * 根据断点文件续传
+     *
+     * @return 可续传时返回原uploadId，已上传的分段会加入partETags；不可续传时返回null
+     */
+    private String resumeUploadId(long partSize) {
+        if (options.getCheckpointDir() == null) {
+            return null;
+        }
+        UploadCheckpoint saved = UploadCheckpoint.load(
+                UploadCheckpoint.locate(options.getCheckpointDir(), bucketName, objectKey));
+        if (saved == null) {
+            return null;
+        }
+        if (saved.isExpired(TimeUnit.SECONDS.toMillis(options.getCheckpointExpiryInSeconds()))) {
+            LOGGER.info(String.format("Upload[%s] for %s expired, start over.", saved.uploadId, objectKey));
+            abortMultipartUpload(saved.uploadId);
+            saved.delete();
+            return null;
+        }
+        if (!saved.matches(bucketName, objectKey, file, partSize)) {
+            LOGGER.info(String.format("File %s changed since upload[%s], start over.", file, saved.uploadId));
+            abortMultipartUpload(saved.uploadId);
+            saved.delete();
+            return null;
         }
 
-        listAllParts(uploadId);
+        Map<Integer, String> uploadedParts;
+        try {
+            uploadedParts = listUploadedParts(saved, partSize);
+        } catch (ObsException | IOException e) {
+            LOGGER.warn(String.format("Upload[%s] for %s can not be resumed, start over.", saved.uploadId,
+                    objectKey), e);
+            abortMultipartUpload(saved.uploadId);
+            saved.delete();
+            return null;
+        }
+        for (Map.Entry<Integer, String> part : uploadedParts.entrySet()) {
+            partETags.add(new PartEtag(part.getValue(), part.getKey()));
+        }
+        saved.replaceParts(uploadedParts);
+        saved.save();
+        checkpoint = saved;
+        LOGGER.info(String.format("Resume upload[%s] for %s, %d part(s) already uploaded.", saved.uploadId,
+                objectKey, uploadedParts.size()));
+        return saved.uploadId;
+    }
 
-        completeMultipartUpload(uploadId);
+    /**
+     * 以OBS中实际存在、大小正确且本地内容的MD5与断点记录一致的分段为准
+     */
+    private Map<Integer, String> listUploadedParts(UploadCheckpoint saved, long partSize)
+            throws ObsException, IOException {
+        String uploadId = saved.uploadId;
+        long fileLength = file.length();
+        Map<Integer, String> uploadedParts = new TreeMap<>();
+        Integer partNumberMarker = null;
+        ListPartsResult partListing;
+        do {
+            partListing = obsClient.listParts(new ListPartsRequest(bucketName, objectKey, uploadId,
+                    LIST_PARTS_MAX, partNumberMarker));
+            for (Multipart part : partListing.getMultipartList()) {
+                long offset = (part.getPartNumber() - 1) * partSize;
+                long expectedSize = Math.min(partSize, fileLength - offset);
+                String md5 = saved.getPartMd5(part.getPartNumber());
+                if (part.getSize() != null && part.getSize() == expectedSize && md5 != null
+                        && md5.equals(UploadCheckpoint.md5Of(file, offset, expectedSize))) {
+                    uploadedParts.put(part.getPartNumber(), part.getEtag());
+                }
+            }
+            String nextMarker = partListing.getNextPartNumberMarker();
+            partNumberMarker = nextMarker == null ? null : Integer.valueOf(nextMarker);
+        } while (partListing.isTruncated() && partNumberMarker != null);
+        return uploadedParts;
+    }
 
+    private void uploadParts(String uploadId, long partSize, long fileLength, int partCount) {
+        Set<Integer> uploadedPartNumbers = new HashSet<>();
+        for (PartEtag partEtag : partETags) {
+            uploadedPartNumbers.add(partEtag.getPartNumber());
+        }
+        Semaphore inFlightParts = new Semaphore(options.getParallelism());
+        List<Future<?>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount && failure.get() == null; i++) {
+                if (uploadedPartNumbers.contains(i + 1)) {
+                    continue;
+                }
+                long offset = i * partSize;
+                long currPartSize = (i + 1 == partCount) ? fileLength - offset : partSize;
+                inFlightParts.acquire();
+                try {
+                    futures.add(partUploadExecutor.submit(
+                            new PartUploader(uploadId, offset, currPartSize, i + 1, null, inFlightParts)));
+                } catch (RuntimeException e) {
+                    inFlightParts.release();
+                    throw e;
+                }
+            }
+            awaitParts(futures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            cancelPartsOnFailure(futures);
+        }
+    }
+
+    /**
+     * 依次从数据流读出每个分段，读下一个分段前先取得许可，内存中最多有parallelism个分段
+     */
+    private void uploadStreamParts(String uploadId, long partSize, long length, int partCount) {
+        Semaphore inFlightParts = new Semaphore(options.getParallelism());
+        List<Future<?>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount && failure.get() == null; i++) {
+                long offset = i * partSize;
+                int currPartSize = (int) ((i + 1 == partCount) ? length - offset : partSize);
+                inFlightParts.acquire();
+                try {
+                    byte[] data = new byte[currPartSize];
+                    IOUtils.readFully(input, data);
+                    futures.add(partUploadExecutor.submit(
+                            new PartUploader(uploadId, offset, currPartSize, i + 1, data, inFlightParts)));
+                } catch (IOException | RuntimeException e) {
+                    inFlightParts.release();
+                    throw e;
+                }
+            }
+            awaitParts(futures);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Read stream for %s failed.", objectKey), e);
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            cancelPartsOnFailure(futures);
+        }
+    }
+
+    private void awaitParts(List<Future<?>> futures) throws InterruptedException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private void cancelPartsOnFailure(List<Future<?>> futures) {
+        if (failure.get() != null) {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
     }
 
     private String claimUploadId() throws ObsException {
@@ -90,79 +308,103 @@ public class ConcurrentUploadChannel {
     }
 
     private void completeMultipartUpload(String uploadId) throws ObsException {
+        List<PartEtag> sortedPartETags = new ArrayList<>(partETags);
         // Make part numbers in ascending order
-        Collections.sort(partETags, new Comparator<PartEtag>() {
+        Collections.sort(sortedPartETags, new Comparator<PartEtag>() {
             @Override
             public int compare(PartEtag o1, PartEtag o2) {
                 return o1.getPartNumber() - o2.getPartNumber();
             }
         });
 
-        System.out.println("Completing to upload multiparts\n");
         CompleteMultipartUploadRequest completeMultipartUploadRequest =
-                new CompleteMultipartUploadRequest(bucketName, objectKey, uploadId, partETags);
+                new CompleteMultipartUploadRequest(bucketName, objectKey, uploadId, sortedPartETags);
         obsClient.completeMultipartUpload(completeMultipartUploadRequest);
     }
 
-    private void listAllParts(String uploadId) throws ObsException {
-        System.out.println("Listing all parts......");
-        ListPartsRequest listPartsRequest = new ListPartsRequest(bucketName, objectKey, uploadId);
-        ListPartsResult partListing = obsClient.listParts(listPartsRequest);
-
-        for (Multipart part : partListing.getMultipartList()) {
-            System.out.println("\tPart#" + part.getPartNumber() + ", ETag=" + part.getEtag());
+    private void abortMultipartUpload(String uploadId) {
+        try {
+            obsClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, objectKey, uploadId));
+            LOGGER.info(String.format("Abort multipart upload[%s] for %s.", uploadId, objectKey));
+        } catch (ObsException e) {
+            LOGGER.error(String.format("Abort multipart upload[%s] for %s failed.", uploadId, objectKey), e);
         }
-        System.out.println();
     }
 
-    private static class PartUploader implements Runnable {
-
-        private ObsClient obsClient;
-
-        private String bucketName;
-
-        private String objectKey;
-
-        private File sampleFile;
-
-        private long offset;
-
-        private long partSize;
+    private class PartUploader implements Runnable {
 
-        private int partNumber;
+        private final String uploadId;
+        private final long offset;
+        private final long partSize;
+        private final int partNumber;
+        private final byte[] data;
+        private final Semaphore inFlightParts;
 
-        private String uploadId;
-
-        PartUploader(ObsClient obsClient, String bucketName, String objectKey, File sampleFile,
-                     long offset, long partSize, int partNumber, String uploadId) {
-            this.obsClient = obsClient;
-            this.bucketName = bucketName;
-            this.objectKey = objectKey;
-            this.sampleFile = sampleFile;
+        /**
+         * @param data 从数据流读出的分段内容，为null时从文件的offset处读取
+         */
+        PartUploader(String uploadId, long offset, long partSize, int partNumber, byte[] data,
+                     Semaphore inFlightParts) {
+            this.uploadId = uploadId;
             this.offset = offset;
             this.partSize = partSize;
             this.partNumber = partNumber;
-            this.uploadId = uploadId;
+            this.data = data;
+            this.inFlightParts = inFlightParts;
         }
 
         @Override
         public void run() {
             try {
-                UploadPartRequest uploadPartRequest = new UploadPartRequest();
-                uploadPartRequest.setBucketName(bucketName);
-                uploadPartRequest.setObjectKey(objectKey);
-                uploadPartRequest.setUploadId(this.uploadId);
-                uploadPartRequest.setFile(this.sampleFile);
-                uploadPartRequest.setPartSize(this.partSize);
-                uploadPartRequest.setOffset(this.offset);
-                uploadPartRequest.setPartNumber(this.partNumber);
-
-                UploadPartResult uploadPartResult = obsClient.uploadPart(uploadPartRequest);
-                System.out.println("Part#" + this.partNumber + " done\n");
-                partETags.add(new PartEtag(uploadPartResult.getEtag(), uploadPartResult.getPartNumber()));
-            } catch (Exception e) {
-                e.printStackTrace();
+                //续传时据此确认本地文件的这部分内容未变
+                String md5 = checkpoint == null ? null : UploadCheckpoint.md5Of(file, offset, partSize);
+                for (int attempt = 0; failure.get() == null; attempt++) {
+                    try {
+                        UploadPartResult uploadPartResult = obsClient.uploadPart(buildRequest());
+                        partETags.add(new PartEtag(uploadPartResult.getEtag(), uploadPartResult.getPartNumber()));
+                        if (checkpoint != null) {
+                            checkpoint.putPart(partNumber, uploadPartResult.getEtag(), md5);
+                            checkpoint.save();
+                        }
+                        LOGGER.debug(String.format("Part#%d of %s done.", partNumber, objectKey));
+                        return;
+                    } catch (ObsException e) {
+                        if (attempt >= options.getPartRetryTimes()) {
+                            LOGGER.error(String.format("Part#%d of %s failed, give up!", partNumber, objectKey), e);
+                            failure.compareAndSet(null, e);
+                            return;
+                        }
+                        LOGGER.warn(String.format("Part#%d of %s failed, retry[%d/%d].", partNumber, objectKey,
+                                attempt + 1, options.getPartRetryTimes()), e);
+                        TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MILLIS * (attempt + 1));
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error(String.format("Read part#%d of %s failed.", partNumber, file), e);
+                failure.compareAndSet(null, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlightParts.release();
+            }
+        }
+
+        private UploadPartRequest buildRequest() {
+            UploadPartRequest uploadPartRequest = new UploadPartRequest();
+            uploadPartRequest.setBucketName(bucketName);
+            uploadPartRequest.setObjectKey(objectKey);
+            uploadPartRequest.setUploadId(uploadId);
+            if (data != null) {
+                //每次重试都从头读缓冲
+                uploadPartRequest.setInput(new ByteArrayInputStream(data));
+            } else {
+                uploadPartRequest.setFile(file);
+                uploadPartRequest.setOffset(offset);
             }
+            uploadPartRequest.setPartSize(partSize);
+            uploadPartRequest.setPartNumber(partNumber);
+            return uploadPartRequest;
         }
     }
 
@@ -0,0 +1,99 @@
+package com.huawei.ais.demo.obs;
+
+/**
+ * 大文件分段上传参数
+ */
+public class MultipartUploadOptions {
+
+    private int partSizeInMB = 5;
+    private int parallelism = 5;
+    private int partRetryTimes = 2;
+    private int poolSize = 16;
+    private int poolQueueSize = 64;
+    private String checkpointDir;
+    private int checkpointExpiryInSeconds = 3600;
+
+    /**
+     * @return 每个分段的大小，单位MB，默认5
+     */
+    public int getPartSizeInMB() {
+        return partSizeInMB;
+    }
+
+    public MultipartUploadOptions setPartSizeInMB(int partSizeInMB) {
+        this.partSizeInMB = partSizeInMB;
+        return this;
+    }
+
+    /**
+     * @return 单个文件同时上传的最大分段数，默认5
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public MultipartUploadOptions setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @return 单个分段上传失败后的重试次数，默认2
+     */
+    public int getPartRetryTimes() {
+        return partRetryTimes;
+    }
+
+    public MultipartUploadOptions setPartRetryTimes(int partRetryTimes) {
+        this.partRetryTimes = partRetryTimes;
+        return this;
+    }
+
+    /**
+     * @return 所有上传共享的分段上传线程数，默认16
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public MultipartUploadOptions setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    /**
+     * @return 分段上传线程池的队列长度，队列满时由提交分段的线程自己上传，默认64
+     */
+    public int getPoolQueueSize() {
+        return poolQueueSize;
+    }
+
+    public MultipartUploadOptions setPoolQueueSize(int poolQueueSize) {
+        this.poolQueueSize = poolQueueSize;
+        return this;
+    }
+
+    /**
+     * @return 断点文件目录，为null时不记录断点，上传失败会直接取消分段上传任务
+     */
+    public String getCheckpointDir() {
+        return checkpointDir;
+    }
+
+    public MultipartUploadOptions setCheckpointDir(String checkpointDir) {
+        this.checkpointDir = checkpointDir;
+        return this;
+    }
+
+    /**
+     * @return 断点的保留时间，单位秒，超过后不再续传并取消分段上传任务，默认3600
+     */
+    public int getCheckpointExpiryInSeconds() {
+        return checkpointExpiryInSeconds;
+    }
+
+    public MultipartUploadOptions setCheckpointExpiryInSeconds(int checkpointExpiryInSeconds) {
+        this.checkpointExpiryInSeconds = checkpointExpiryInSeconds;
+        return this;
+    }
+}
@@ -1,5 +1,12 @@
 package com.huawei.ais.demo.obs;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import com.obs.services.model.HttpMethodEnum;
 
 public class ObsFileHandle {
@@ -9,8 +16,9 @@ public class ObsFileHandle {
     private String bucketName = "";
     private String objectKey = "";
     private SimpleObsClient obsClientTool = null;
+    private long size = -1;
 
-    private boolean isDeleted = false;
+    private volatile boolean isDeleted = false;
 
     protected ObsFileHandle(String bucketName, String objectKey, SimpleObsClient obsClientTool) {
         this.bucketName = bucketName;
@@ -18,6 +26,11 @@ public class ObsFileHandle {
         this.obsClientTool = obsClientTool;
     }
 
+    protected ObsFileHandle(String bucketName, String objectKey, SimpleObsClient obsClientTool, long size) {
+        this(bucketName, objectKey, obsClientTool);
+        this.size = size;
+    }
+
     /**
      * 获取OBS文件的临时授权下载链接，默认有效期为300秒
      *
@@ -41,6 +54,20 @@ public class ObsFileHandle {
         }
     }
 
+    /**
+     * @return 文件大小（字节），未知时为-1
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return 此文件是否已从OBS中删除
+     */
+    public boolean isDeleted() {
+        return isDeleted;
+    }
+
     /**
      * 从OBS中删除此文件
      */
@@ -50,4 +77,44 @@ public class ObsFileHandle {
             isDeleted = true;
         }
     }
+
+    /**
+     * 批量删除OBS文件，同一个客户端、同一个桶中的文件每1000个合并为一次删除请求
+     *
+     * @param handles 要删除的文件，已删除的文件会被忽略
+     * @return 删除失败的文件
+     */
+    public static List<ObsFileHandle> deleteAll(Collection<ObsFileHandle> handles) {
+        Map<SimpleObsClient, Map<String, List<ObsFileHandle>>> grouped = new LinkedHashMap<>();
+        for (ObsFileHandle handle : handles) {
+            if (!handle.isDeleted) {
+                grouped.computeIfAbsent(handle.obsClientTool, client -> new LinkedHashMap<>())
+                        .computeIfAbsent(handle.bucketName, bucket -> new ArrayList<>()).add(handle);
+            }
+        }
+
+        List<ObsFileHandle> failed = new ArrayList<>();
+        for (Map.Entry<SimpleObsClient, Map<String, List<ObsFileHandle>>> client : grouped.entrySet()) {
+            for (Map.Entry<String, List<ObsFileHandle>> bucket : client.getValue().entrySet()) {
+                List<ObsFileHandle> bucketHandles = bucket.getValue();
+                for (int from = 0; from < bucketHandles.size(); from += SimpleObsClient.MAX_KEYS_PER_DELETE) {
+                    List<ObsFileHandle> batch = bucketHandles.subList(from,
+                            Math.min(bucketHandles.size(), from + SimpleObsClient.MAX_KEYS_PER_DELETE));
+                    List<String> objectKeys = new ArrayList<>(batch.size());
+                    for (ObsFileHandle handle : batch) {
+                        objectKeys.add(handle.objectKey);
+                    }
+                    Set<String> failedKeys = client.getKey().deleteFiles(bucket.getKey(), objectKeys);
+                    for (ObsFileHandle handle : batch) {
+                        if (failedKeys.contains(handle.objectKey)) {
+                            failed.add(handle);
+                        } else {
+                            handle.isDeleted = true;
+                        }
+                    }
+                }
+            }
+        }
+        return failed;
+    }
 }
@@ -2,15 +2,30 @@ package com.huawei.ais.demo.obs;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.huawei.ais.common.AuthInfo;
 import com.huawei.ais.common.ProxyHostInfo;
+import com.huawei.ais.demo.asr.CommonUtils;
 import com.obs.services.ObsClient;
 import com.obs.services.ObsConfiguration;
+import com.obs.services.exception.ObsException;
+import com.obs.services.model.AbortMultipartUploadRequest;
+import com.obs.services.model.DeleteObjectsRequest;
+import com.obs.services.model.DeleteObjectsResult;
 import com.obs.services.model.HttpMethodEnum;
+import com.obs.services.model.KeyAndVersion;
 import com.obs.services.model.ObjectMetadata;
 import com.obs.services.model.ObsBucket;
 import com.obs.services.model.TemporarySignatureRequest;
@@ -24,12 +39,18 @@ public class SimpleObsClient {
 
     private static final long LARGE_FILE_THRESHOLD = 100 * 1024 * 1024; //Byte
 
+    static final int MAX_KEYS_PER_DELETE = 1000;
+
     private static final int CONN_TIMEOUT_DEFAULT = 10000; //ms
     private static final int SOCKET_TIMEOUT_DEFAULT = 30000; //ms
 
     private ObsClient obsClient;
     private String region;
 
+    private MultipartUploadOptions multipartUploadOptions = new MultipartUploadOptions();
+    private volatile ThreadPoolExecutor partUploadExecutor;
+    private volatile long lastCheckpointSweepTime;
+
     /**
      * 使用ClientContextUtils中配置的AK/SK创建简易OBS客户端，请确保对应的用户已开通OBS服务
      */
@@ -37,6 +58,16 @@ public class SimpleObsClient {
         this(authInfo.getAk(), authInfo.getSk(), authInfo.getRegion());
     }
 
+    /**
+     * 使用AuthInfo中的AK/SK连接指定地址的OBS服务
+     *
+     * @param endPoint OBS地址，形如http://127.0.0.1:9000，为空时使用region对应的公有云地址
+     */
+    public SimpleObsClient(AuthInfo authInfo, String endPoint) {
+        this(authInfo.getAk(), authInfo.getSk(), authInfo.getRegion(), endPoint, CONN_TIMEOUT_DEFAULT,
+                SOCKET_TIMEOUT_DEFAULT, null);
+    }
+
     /**
      * 使用ClientContextUtils中配置的AK/SK创建简易OBS客户端，请确保对应的用户已开通OBS服务<br/>
      * 并给客户端配置代理
@@ -94,13 +125,42 @@ public class SimpleObsClient {
      * @param proxyHostInfo
      */
     public SimpleObsClient(String ak, String sk, String region, int connTimeout, int socketTimeout, ProxyHostInfo proxyHostInfo) {
+        this(ak, sk, region, null, connTimeout, socketTimeout, proxyHostInfo);
+    }
+
+    /**
+     * 使用自定义的AK/SK和OBS地址创建简易OBS客户端，用于私有部署或本地模拟的OBS服务
+     *
+     * @param ak
+     * @param sk
+     * @param endPoint      OBS地址，形如http://127.0.0.1:9000，为空时使用region对应的公有云地址
+     * @param connTimeout   连接超时时间，ms
+     * @param socketTimeout 等待响应超时时间，ms
+     * @param proxyHostInfo
+     */
+    public SimpleObsClient(String ak, String sk, String region, String endPoint, int connTimeout, int socketTimeout,
+                           ProxyHostInfo proxyHostInfo) {
         this.region = region;
-        String endPoint = "obs." + region + ".myhwclouds.com";
         ObsConfiguration config = new ObsConfiguration();
         config.setSocketTimeout(connTimeout);
         config.setConnectionTimeout(socketTimeout);
-        config.setEndPoint(endPoint);
-        config.setHttpsOnly(true);
+        if (endPoint == null || endPoint.isEmpty()) {
+            config.setEndPoint("obs." + region + ".myhwclouds.com");
+            config.setHttpsOnly(true);
+        } else {
+            URI uri = URI.create(endPoint.contains("://") ? endPoint : "https://" + endPoint);
+            boolean https = "https".equalsIgnoreCase(uri.getScheme());
+            config.setEndPoint(uri.getHost());
+            config.setHttpsOnly(https);
+            if (uri.getPort() > 0) {
+                if (https) {
+                    config.setEndpointHttpsPort(uri.getPort());
+                } else {
+                    config.setEndpointHttpPort(uri.getPort());
+                }
+            }
+            usePathStyle(config);
+        }
         if (proxyHostInfo != null) {
             config.setHttpProxy(proxyHostInfo.getHostName(), proxyHostInfo.getPort(), proxyHostInfo.getUserName(),
                     proxyHostInfo.getPassword(), "");
@@ -108,6 +168,15 @@ public class SimpleObsClient {
         obsClient = new ObsClient(ak, sk, config);
     }
 
+    /**
+     * 自定义地址通常不支持桶名作为子域名，使用路径形式访问桶
+     */
+    //esdk-obs 2.1.22中setDisableDnsBucket已标记过时，但没有其他开启路径形式访问的方法
+    @SuppressWarnings("deprecation")
+    private static void usePathStyle(ObsConfiguration config) {
+        config.setDisableDnsBucket(true);
+    }
+
     /**
      * 创建桶
      *
@@ -154,13 +223,100 @@ public class SimpleObsClient {
         String objectKey = folderName + file.getName();
         LOGGER.info("Begin to upload file:" + file.getAbsolutePath());
         if (file.length() > LARGE_FILE_THRESHOLD) {
-            ConcurrentUploadChannel channel = new ConcurrentUploadChannel(obsClient, bucketName, objectKey, file);
+            abortExpiredUploadsIfDue();
+            ConcurrentUploadChannel channel = new ConcurrentUploadChannel(obsClient, bucketName, objectKey, file,
+                    getPartUploadExecutor(), multipartUploadOptions);
             channel.upload();
         } else {
             obsClient.putObject(bucketName, objectKey, file);
         }
         LOGGER.info("Upload done! file:" + file.getAbsolutePath());
-        return new ObsFileHandle(bucketName, objectKey, this);
+        return new ObsFileHandle(bucketName, objectKey, this, file.length());
+    }
+
+    /**
+     * 将数据流直接上传到OBS，不经过本地文件，{bucket}/{objectKey}<br/>
+     * 长度超过大文件阈值时与uploadFile一样分段并发上传，分段从数据流依次读入内存<br/>
+     * 数据流由调用方负责关闭
+     *
+     * @param bucketName    桶名称
+     * @param objectKey     文件在桶中的key
+     * @param input         数据流
+     * @param contentLength 数据长度，未知时传-1
+     * @return OBS文件句柄
+     */
+    public ObsFileHandle uploadStream(String bucketName, String objectKey, InputStream input, long contentLength) {
+        LOGGER.info("Begin to upload stream to:" + objectKey + ", content length:" + contentLength);
+        if (contentLength > LARGE_FILE_THRESHOLD) {
+            new ConcurrentUploadChannel(obsClient, bucketName, objectKey, input, contentLength,
+                    getPartUploadExecutor(), multipartUploadOptions).upload();
+            LOGGER.info("Upload done! object:" + objectKey);
+            return new ObsFileHandle(bucketName, objectKey, this, contentLength);
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (contentLength >= 0) {
+            metadata.setContentLength(contentLength);
+        }
+        obsClient.putObject(bucketName, objectKey, input, metadata);
+        LOGGER.info("Upload done! object:" + objectKey);
+        return new ObsFileHandle(bucketName, objectKey, this, contentLength);
+    }
+
+    /**
+     * 设置大文件分段上传参数，需在首次上传大文件前设置
+     *
+     * @param multipartUploadOptions 分段上传参数
+     */
+    public void setMultipartUploadOptions(MultipartUploadOptions multipartUploadOptions) {
+        this.multipartUploadOptions = multipartUploadOptions;
+    }
+
+    /**
+     * 取消断点目录中已超过保留时间的分段上传任务并删除其断点文件，释放OBS中不会再被续传的分段<br/>
+     * 多个账号共用断点目录时，不属于本账号的任务取消失败，断点文件保留给对应账号处理
+     *
+     * @return 已清理的断点数
+     */
+    public int abortExpiredUploads() {
+        lastCheckpointSweepTime = System.currentTimeMillis();
+        String checkpointDir = multipartUploadOptions.getCheckpointDir();
+        if (checkpointDir == null) {
+            return 0;
+        }
+        long expiryInMillis = TimeUnit.SECONDS.toMillis(multipartUploadOptions.getCheckpointExpiryInSeconds());
+        int aborted = 0;
+        for (UploadCheckpoint checkpoint : UploadCheckpoint.loadAll(checkpointDir)) {
+            if (!checkpoint.isExpired(expiryInMillis)) {
+                continue;
+            }
+            try {
+                obsClient.abortMultipartUpload(new AbortMultipartUploadRequest(checkpoint.bucketName,
+                        checkpoint.objectKey, checkpoint.uploadId));
+            } catch (ObsException e) {
+                //任务已不存在（已完成或已取消）时同样删除断点
+                if (e.getResponseCode() != 404) {
+                    LOGGER.warn("Abort expired upload[" + checkpoint.uploadId + "] for " + checkpoint.objectKey
+                            + " failed, code:" + e.getResponseCode() + ", message:" + e.getErrorMessage());
+                    continue;
+                }
+            }
+            checkpoint.delete();
+            aborted++;
+        }
+        if (aborted > 0) {
+            LOGGER.info("Aborted " + aborted + " expired multipart upload(s) in " + checkpointDir);
+        }
+        return aborted;
+    }
+
+    /**
+     * 每个保留时间内最多清理一次，只有分段上传才会产生断点，因此在分段上传前顺带清理
+     */
+    private void abortExpiredUploadsIfDue() {
+        long expiryInMillis = TimeUnit.SECONDS.toMillis(multipartUploadOptions.getCheckpointExpiryInSeconds());
+        if (System.currentTimeMillis() - lastCheckpointSweepTime > expiryInMillis) {
+            abortExpiredUploads();
+        }
     }
 
     /**
@@ -173,7 +329,8 @@ public class SimpleObsClient {
     public ObsFileHandle locateFile(String bucketName, String key) {
         ObjectMetadata objectMetadata = obsClient.getObjectMetadata(bucketName, key);
         if (objectMetadata != null) {
-            return new ObsFileHandle(bucketName, key, this);
+            return new ObsFileHandle(bucketName, key, this,
+                    objectMetadata.getContentLength() == null ? -1 : objectMetadata.getContentLength());
         } else {
             throw new IllegalArgumentException(key + " is not found in " + bucketName);
         }
@@ -194,10 +351,60 @@ public class SimpleObsClient {
         obsClient.deleteObject(bucketName, objectKey);
     }
 
+    /**
+     * 以一次批量删除请求删除同一个桶中的多个文件，使用quiet模式，响应中只返回删除失败的文件
+     *
+     * @param objectKeys 文件key，不超过1000个
+     * @return 删除失败的文件key
+     */
+    protected Set<String> deleteFiles(String bucketName, List<String> objectKeys) {
+        Set<String> failedKeys = new HashSet<>();
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName);
+        request.setQuiet(true);
+        request.setKeyAndVersions(objectKeys.stream().map(KeyAndVersion::new).toArray(KeyAndVersion[]::new));
+        try {
+            DeleteObjectsResult result = obsClient.deleteObjects(request);
+            List<DeleteObjectsResult.ErrorResult> errors = result.getErrorResults();
+            for (DeleteObjectsResult.ErrorResult error : errors == null
+                    ? Collections.<DeleteObjectsResult.ErrorResult>emptyList() : errors) {
+                LOGGER.warn("Delete object failed. key:" + error.getObjectKey() + ", code:" + error.getErrorCode()
+                        + ", message:" + error.getMessage());
+                failedKeys.add(error.getObjectKey());
+            }
+        } catch (ObsException e) {
+            LOGGER.error("Delete " + objectKeys.size() + " objects from " + bucketName + " failed.", e);
+            failedKeys.addAll(objectKeys);
+        }
+        return failedKeys;
+    }
+
+    /**
+     * 所有分段上传共享的有界线程池，首次上传大文件时创建，队列满时由提交分段的线程自己执行
+     */
+    private ThreadPoolExecutor getPartUploadExecutor() {
+        if (partUploadExecutor == null) {
+            synchronized (this) {
+                if (partUploadExecutor == null) {
+                    partUploadExecutor = new ThreadPoolExecutor(
+                            multipartUploadOptions.getPoolSize(),
+                            multipartUploadOptions.getPoolSize(),
+                            60,
+                            TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(multipartUploadOptions.getPoolQueueSize()),
+                            CommonUtils.ThreadFactoryConstructor(true, "obs-part-upload-%d"),
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+                    partUploadExecutor.allowCoreThreadTimeOut(true);
+                }
+            }
+        }
+        return partUploadExecutor;
+    }
+
     /**
      * 销毁OBS客户端
      */
     public void close() {
+        CommonUtils.destroyExecutors(partUploadExecutor, "partUploadExecutor");
         if (obsClient != null) {
             try {
                 obsClient.close();
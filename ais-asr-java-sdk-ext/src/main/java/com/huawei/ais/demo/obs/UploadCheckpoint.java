@@ -0,0 +1,189 @@
+package com.huawei.ais.demo.obs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 分段上传的断点记录，每个对象一个小文件，记录uploadId、已完成分段的ETag及其内容的MD5<p/>
+ * 上传失败或进程重启后可据此续传，只上传缺失的分段。重新下载的音频修改时间会变，
+ * 因此按文件长度和各分段的MD5判断本地文件是否与已上传的分段一致，而不比较修改时间。<br/>
+ * 断点文件的修改时间即最后一次上传分段的时间，超过保留时间的断点不再续传
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class UploadCheckpoint {
+
+    private static final Log LOGGER = LogFactory.getLog(UploadCheckpoint.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @JsonProperty("bucket_name")
+    String bucketName;
+    @JsonProperty("object_key")
+    String objectKey;
+    @JsonProperty("upload_id")
+    String uploadId;
+    @JsonProperty("file_length")
+    long fileLength;
+    @JsonProperty("part_size")
+    long partSize;
+    @JsonProperty("parts")
+    Map<Integer, String> parts = new TreeMap<>();
+    @JsonProperty("part_md5s")
+    Map<Integer, String> partMd5s = new TreeMap<>();
+
+    private File checkpointFile;
+
+    UploadCheckpoint() {
+    }
+
+    UploadCheckpoint(File checkpointFile, String bucketName, String objectKey, String uploadId, File file,
+                     long partSize) {
+        this.checkpointFile = checkpointFile;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+        this.uploadId = uploadId;
+        this.fileLength = file.length();
+        this.partSize = partSize;
+    }
+
+    /**
+     * @return 断点文件的位置
+     */
+    static File locate(String checkpointDir, String bucketName, String objectKey) {
+        return new File(checkpointDir, DigestUtils.md5Hex(bucketName + "/" + objectKey) + ".checkpoint");
+    }
+
+    /**
+     * 读取断点文件
+     *
+     * @return 断点记录，文件不存在或无法解析时返回null
+     */
+    static UploadCheckpoint load(File checkpointFile) {
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+        try {
+            UploadCheckpoint checkpoint = objectMapper.readValue(checkpointFile, UploadCheckpoint.class);
+            checkpoint.checkpointFile = checkpointFile;
+            return checkpoint;
+        } catch (IOException e) {
+            LOGGER.warn("Ignore broken upload checkpoint:" + checkpointFile.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 读取目录中的所有断点文件
+     */
+    static List<UploadCheckpoint> loadAll(String checkpointDir) {
+        List<UploadCheckpoint> checkpoints = new ArrayList<>();
+        File[] files = new File(checkpointDir).listFiles((dir, name) -> name.endsWith(".checkpoint"));
+        for (File file : files == null ? new File[0] : files) {
+            UploadCheckpoint checkpoint = load(file);
+            if (checkpoint != null) {
+                checkpoints.add(checkpoint);
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * 计算本地文件中一个分段的MD5
+     */
+    static String md5Of(File file, long offset, long length) throws IOException {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        byte[] buffer = new byte[64 * 1024];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file + " at " + (offset + length - remaining));
+                }
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * @return 断点记录是否属于同一个桶、对象和同样长度的本地文件，分段内容由调用方按MD5逐个确认
+     */
+    boolean matches(String bucketName, String objectKey, File file, long partSize) {
+        return this.bucketName.equals(bucketName)
+                && this.objectKey.equals(objectKey)
+                && this.fileLength == file.length()
+                && this.partSize == partSize;
+    }
+
+    /**
+     * @return 距最后一次保存是否已超过保留时间
+     */
+    boolean isExpired(long expiryInMillis) {
+        return System.currentTimeMillis() - checkpointFile.lastModified() > expiryInMillis;
+    }
+
+    /**
+     * @return 记录的分段内容MD5，未记录时返回null
+     */
+    synchronized String getPartMd5(int partNumber) {
+        return partMd5s.get(partNumber);
+    }
+
+    synchronized void putPart(int partNumber, String etag, String md5) {
+        parts.put(partNumber, etag);
+        partMd5s.put(partNumber, md5);
+    }
+
+    /**
+     * 只保留OBS中实际存在且内容一致的分段
+     */
+    synchronized void replaceParts(Map<Integer, String> uploadedParts) {
+        parts.clear();
+        parts.putAll(uploadedParts);
+        partMd5s.keySet().retainAll(uploadedParts.keySet());
+    }
+
+    /**
+     * 先写临时文件再替换，避免进程中途退出留下不完整的断点文件
+     */
+    synchronized void save() {
+        try {
+            File parent = checkpointFile.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create checkpoint dir:" + parent.getAbsolutePath());
+            }
+            File tmpFile = new File(parent, checkpointFile.getName() + ".tmp");
+            objectMapper.writeValue(tmpFile, this);
+            Files.move(tmpFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Save upload checkpoint failed:" + checkpointFile.getAbsolutePath(), e);
+        }
+    }
+
+    void delete() {
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            LOGGER.warn("Delete upload checkpoint failed:" + checkpointFile.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.huawei.ais.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import com.huawei.ais.demo.asr.model.GetResultRes;
+import com.huawei.ais.demo.asr.model.SubmitReq;
+import com.huawei.ais.demo.asr.model.SubmitSuccessRes;
+
+public class HttpJsonDataUtilsTest {
+
+    @Test
+    public void skipsWordsOfUnfinishedJob() throws IOException {
+        GetResultRes result = HttpJsonDataUtils.getResponseObject(response(
+                "{\"result\":{\"status_code\":1,\"status_msg\":\"Running\",\"words\":\"partial\",\"extra\":[1]}}",
+                ContentType.APPLICATION_JSON), GetResultRes.class, "result");
+
+        assertEquals(1, result.getStatusCode());
+        assertEquals("Running", result.getStatusMsg());
+        assertNull(result.getWords());
+    }
+
+    @Test
+    public void keepsWordsOfFinishedJobInAnyFieldOrder() throws IOException {
+        GetResultRes finished = HttpJsonDataUtils.getResponseObject(response(
+                "{\"result\":{\"status_code\":2,\"words\":\"[00:00:00.000,00:00:01.000] 你好。\"}}",
+                ContentType.APPLICATION_JSON), GetResultRes.class, "result");
+        GetResultRes wordsFirst = HttpJsonDataUtils.getResponseObject(response(
+                "{\"result\":{\"words\":\"你好。\",\"status_code\":2}}", ContentType.APPLICATION_JSON),
+                GetResultRes.class, "result");
+
+        assertEquals("[00:00:00.000,00:00:01.000] 你好。", finished.getWords());
+        assertEquals("你好。", wordsFirst.getWords());
+        assertEquals(2, wordsFirst.getStatusCode());
+    }
+
+    @Test
+    public void decodesDeclaredCharset() throws IOException {
+        ContentType gbk = ContentType.create("application/json", Charset.forName("GBK"));
+        GetResultRes result = HttpJsonDataUtils.getResponseObject(response(
+                "{\"result\":{\"status_code\":2,\"words\":\"识别结果\"}}", gbk), GetResultRes.class, "result");
+        SubmitSuccessRes submitted = HttpJsonDataUtils.getResponseObject(response(
+                "{\"result\":{\"job_id\":\"job-1\"}}", ContentType.APPLICATION_JSON), SubmitSuccessRes.class, "result");
+
+        assertEquals("识别结果", result.getWords());
+        assertEquals("job-1", submitted.getJobId());
+    }
+
+    @Test
+    public void encodesInlineAudioAsBase64Data() {
+        SubmitReq inline = new SubmitReq();
+        inline.setAudio("RIFF".getBytes(StandardCharsets.US_ASCII));
+        SubmitReq byUrl = new SubmitReq();
+        byUrl.setUrl("https://obs/a.wav");
+
+        assertEquals("{\"data\":\"UklGRg==\"}",
+                new String(HttpJsonDataUtils.objectToJsonBytes(inline), StandardCharsets.UTF_8));
+        assertEquals("{\"url\":\"https://obs/a.wav\"}", HttpJsonDataUtils.objectToJsonString(byUrl));
+    }
+
+    private static HttpResponse response(String body, ContentType contentType) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(body.getBytes(contentType.getCharset()), contentType));
+        return response;
+    }
+}
@@ -0,0 +1,73 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdmissionQueueTest {
+
+    @Test
+    public void poolGrowsBeforeHeadroomIsUsed() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue(1, 2);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, queue,
+                queue.rejectionPolicy(new ThreadPoolExecutor.AbortPolicy()));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(5);
+        Runnable task = () -> {
+            awaitQuietly(release);
+            finished.countDown();
+        };
+        try {
+            pool.execute(task);
+            pool.execute(task);
+            assertEquals(1, pool.getPoolSize());
+            assertEquals(1, queue.size());
+
+            //队列在queue.size处报满，线程数先增长到上限
+            pool.execute(task);
+            assertEquals(2, pool.getPoolSize());
+            assertEquals(1, queue.size());
+
+            //线程数已达上限后放入预留位置
+            pool.execute(task);
+            pool.execute(task);
+            assertEquals(3, queue.size());
+            try {
+                pool.execute(task);
+                fail("Task should be rejected after headroom is used up.");
+            } catch (RejectedExecutionException e) {
+                //预留位置也用完
+            }
+
+            release.countDown();
+            assertTrue(finished.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shutdownPoolRejects() {
+        AdmissionQueue queue = new AdmissionQueue(1, 1);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, queue,
+                queue.rejectionPolicy(new ThreadPoolExecutor.AbortPolicy()));
+        pool.shutdown();
+        pool.execute(() -> { });
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
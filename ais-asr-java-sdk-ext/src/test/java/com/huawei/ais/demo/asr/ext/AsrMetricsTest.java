@@ -0,0 +1,97 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class AsrMetricsTest {
+
+    @Test
+    public void histogramPercentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertEquals(1000, snapshot.getMax());
+        assertWithin(500, snapshot.getP50());
+        assertWithin(900, snapshot.getP90());
+        assertWithin(990, snapshot.getP99());
+    }
+
+    @Test
+    public void bucketBoundsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 3, 4, 7, 8, 100, 1023, 1024, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBoundOf(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void rejectionsAreCountedAndExposedOverJmx() throws Exception {
+        AsrMetrics metrics = AsrMetrics.getInstance();
+        metrics.reset();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+                metrics.countingAbortPolicy(true));
+        metrics.bindPools(pool, null);
+        metrics.registerMBean();
+        try {
+            pool.execute(() -> sleepQuietly(200));
+            pool.execute(() -> sleepQuietly(0));
+            try {
+                pool.execute(() -> sleepQuietly(0));
+            } catch (RejectedExecutionException e) {
+                //预期被拒绝
+            }
+            metrics.recordSubmit(AsrMetrics.startTimer());
+
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.huawei.ais.demo.asr:type=AsrMetrics");
+            CompositeData submitPool = (CompositeData) mBeanServer.getAttribute(objectName, "SubmitPool");
+            CompositeData submitTime = (CompositeData) mBeanServer.getAttribute(objectName, "SubmitTime");
+            assertEquals(1L, submitPool.get("rejectedCount"));
+            assertEquals(1, submitPool.get("queueSize"));
+            assertEquals(1L, submitTime.get("count"));
+
+            Map<String, Number> flat = metrics.toMap();
+            assertEquals(1L, flat.get("submit.pool.rejected"));
+            assertEquals(1L, flat.get("submit.time.count"));
+        } finally {
+            metrics.unregisterMBean();
+            metrics.bindPools(null, null);
+            pool.shutdownNow();
+            metrics.reset();
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(String.format("expected ~%d but was %d", expected, actual),
+                actual >= expected && actual <= expected * 1.25);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
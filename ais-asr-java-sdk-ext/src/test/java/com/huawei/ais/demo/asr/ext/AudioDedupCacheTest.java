@@ -0,0 +1,117 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huawei.ais.demo.asr.model.GetResultRes;
+
+public class AudioDedupCacheTest {
+
+    @Test
+    public void concurrentIdenticalRequestsLoadOnce() throws Exception {
+        AudioDedupCache cache = new AudioDedupCache(10, 3600);
+        String key = AudioDedupCache.urlKey("https://example.com/a.wav");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<AudioDedupCache.CachedAudio>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.getOrLoad(key, () -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return new AudioDedupCache.CachedAudio(null, "job-1");
+                })));
+            }
+            loading.await(5, TimeUnit.SECONDS);
+            //等其余线程都进入等待后再放行
+            TimeUnit.MILLISECONDS.sleep(200);
+            release.countDown();
+
+            AudioDedupCache.CachedAudio first = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<AudioDedupCache.CachedAudio> future : futures) {
+                assertSame(first, future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void waitersSeeLoaderFailure() throws Exception {
+        AudioDedupCache cache = new AudioDedupCache(10, 3600);
+        cache.getOrLoad("k", () -> {
+            throw new IOException("download failed");
+        });
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        AudioDedupCache cache = new AudioDedupCache(2, 3600);
+        cache.put("a", new AudioDedupCache.CachedAudio(null, "job-a"));
+        cache.put("b", new AudioDedupCache.CachedAudio(null, "job-b"));
+        assertNotNull(cache.get("a"));
+        cache.put("c", new AudioDedupCache.CachedAudio(null, "job-c"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void finishedResultIsKeptAndFailedJobIsEvicted() throws IOException {
+        AudioDedupCache cache = new AudioDedupCache(10, 3600);
+        AudioDedupCache.CachedAudio finished = new AudioDedupCache.CachedAudio(null, "job-ok");
+        AudioDedupCache.CachedAudio failed = new AudioDedupCache.CachedAudio(null, "job-bad");
+        cache.put("url:ok", finished);
+        cache.put("content:ok", finished);
+        cache.put("url:bad", failed);
+
+        cache.onJobDone("job-ok", result(2));
+        cache.onJobDone("job-bad", result(-1));
+
+        assertNotNull(cache.get("content:ok").getResult());
+        assertNull(cache.get("url:bad"));
+    }
+
+    @Test
+    public void contentKeyDependsOnContentOnly() {
+        MessageDigest first = AudioDedupCache.newContentDigest();
+        first.update("same audio".getBytes(StandardCharsets.UTF_8));
+        MessageDigest second = AudioDedupCache.newContentDigest();
+        second.update("same ".getBytes(StandardCharsets.UTF_8));
+        second.update("audio".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(AudioDedupCache.contentKey(first), AudioDedupCache.contentKey(second));
+    }
+
+    private static GetResultRes result(int statusCode) throws IOException {
+        return new ObjectMapper().readValue("{\"status_code\":" + statusCode + ",\"words\":\"hi\"}",
+                GetResultRes.class);
+    }
+}
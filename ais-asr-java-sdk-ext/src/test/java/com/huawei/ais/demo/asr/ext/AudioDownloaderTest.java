@@ -0,0 +1,49 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioDownloaderTest {
+
+    private FakeAudioSource audioSource;
+    private AudioDownloader audioDownloader;
+
+    @Before
+    public void setUp() throws Exception {
+        audioSource = new FakeAudioSource(2);
+        audioSource.start();
+        audioDownloader = new AudioDownloader();
+    }
+
+    @After
+    public void tearDown() {
+        audioDownloader.close();
+        audioSource.stop();
+    }
+
+    @Test
+    public void sameFileNameIsDownloadedToDistinctFiles() throws Exception {
+        File first = new File(audioDownloader.downloadToFile(audioSource.audioUrl("a", 1000), null));
+        File second = new File(audioDownloader.downloadToFile(audioSource.audioUrl("a", 2000), null));
+        try {
+            assertNotEquals(first, second);
+            assertTrue(first.getName().endsWith("-a.wav"));
+            assertTrue(second.getName().endsWith("-a.wav"));
+
+            //一个任务结束后删除自己的文件，不影响另一个任务
+            FileUtils.deleteQuietly(first);
+            assertEquals(2000, second.length());
+        } finally {
+            FileUtils.deleteQuietly(first);
+            FileUtils.deleteQuietly(second);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+public class CallbackBatcherTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private HttpServer server;
+    private final List<JsonNode> receivedBatches = new CopyOnWriteArrayList<>();
+    private volatile String ackBody = "";
+    private ExecutorService callbackExecutors;
+    private CallbackBatcher batcher;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/callback", exchange -> {
+            receivedBatches.add(objectMapper.readTree(IOUtils.toByteArray(exchange.getRequestBody())));
+            byte[] bytes = ackBody.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        });
+        server.start();
+        callbackExecutors = Executors.newFixedThreadPool(2);
+        CallbackTask.initCallbackTransport();
+        CallbackTask.initCallbackFailedTaskManager(callbackExecutors);
+        batcher = new CallbackBatcher(callbackExecutors, 3, 100);
+    }
+
+    @After
+    public void tearDown() {
+        batcher.destroy();
+        CallbackTask.destroyCallbackFailedTaskManager();
+        callbackExecutors.shutdownNow();
+        CallbackTask.destroyCallbackTransport();
+        server.stop(0);
+    }
+
+    @Test
+    public void fullBatchIsSentAsOneArray() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            batcher.add("a.wav", "job-" + i, callbackUrl(), "result-" + i);
+        }
+        waitForBatches(1);
+
+        assertEquals(1, receivedBatches.size());
+        JsonNode batch = receivedBatches.get(0);
+        assertEquals(3, batch.size());
+        assertEquals("job-0", batch.get(0).get("job_id").asText());
+        assertEquals("result-2", batch.get(2).get("asr_result").asText());
+    }
+
+    @Test
+    public void partialBatchIsSentAfterLinger() throws InterruptedException {
+        batcher.add("a.wav", "job-0", callbackUrl(), "result-0");
+        batcher.add("b.wav", "job-1", callbackUrl(), "result-1");
+        waitForBatches(1);
+
+        assertEquals(1, receivedBatches.size());
+        assertEquals(2, receivedBatches.get(0).size());
+    }
+
+    @Test
+    public void rejectedJobsAreRetriedIndividually() throws InterruptedException {
+        ackBody = "[{\"job_id\":\"job-0\",\"success\":true},{\"job_id\":\"job-1\",\"success\":false}]";
+        for (int i = 0; i < 3; i++) {
+            batcher.add("a.wav", "job-" + i, callbackUrl(), "result-" + i);
+        }
+        waitForBatches(1);
+        for (int i = 0; i < 50 && CallbackTask.pendingRetries() < 2; i++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        //job-1明确失败，job-2未出现在响应中，都需要重试
+        assertEquals(2, CallbackTask.pendingRetries());
+    }
+
+    private void waitForBatches(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && receivedBatches.size() < count; i++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        //多等一个linger周期，确认没有多余的批次
+        TimeUnit.MILLISECONDS.sleep(200);
+    }
+
+    private String callbackUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/callback";
+    }
+}
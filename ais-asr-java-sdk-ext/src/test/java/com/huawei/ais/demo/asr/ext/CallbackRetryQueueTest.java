@@ -0,0 +1,126 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.huawei.ais.demo.asr.Config;
+
+public class CallbackRetryQueueTest {
+
+    private static final Config CONFIG = Config.getInstance();
+
+    private RecordingExecutor callbackExecutors;
+    private CallbackRetryQueue retryQueue;
+
+    @Before
+    public void setUp() {
+        callbackExecutors = new RecordingExecutor();
+        retryQueue = new CallbackRetryQueue(callbackExecutors);
+    }
+
+    @After
+    public void tearDown() {
+        retryQueue.destroy();
+    }
+
+    @Test
+    public void backoffGrowsExponentiallyUpToMaxInterval() {
+        long interval = TimeUnit.SECONDS.toMillis(CONFIG.getRetryCallbackInterval());
+        long maxInterval = TimeUnit.SECONDS.toMillis(CONFIG.getRetryCallbackMaxInterval());
+
+        assertEquals(interval, CallbackRetryQueue.backoffInMillis(0, 0));
+        assertEquals((long) (interval * CONFIG.getRetryCallbackMultiplier()),
+                CallbackRetryQueue.backoffInMillis(1, 0));
+        assertEquals(maxInterval, CallbackRetryQueue.backoffInMillis(30, 0));
+    }
+
+    @Test
+    public void jitterSpreadsRetriesBelowTheComputedInterval() {
+        long upper = CallbackRetryQueue.backoffInMillis(2, 0);
+        long lower = CallbackRetryQueue.backoffInMillis(2, 0.999);
+
+        assertTrue(lower < upper);
+        assertTrue(lower >= (long) (upper * (1 - CONFIG.getRetryCallbackJitter())) - 1);
+    }
+
+    @Test
+    public void retriesInFlightAreCappedPerEndpoint() throws InterruptedException {
+        int cap = CONFIG.getRetryCallbackMaxPerEndpoint();
+        List<CallbackRetryQueue.RetryRecord> records = new ArrayList<>();
+        for (int i = 0; i < cap + 3; i++) {
+            records.add(newRecord("job-" + i, "http://slow.example.com/callback"));
+        }
+        CallbackRetryQueue.RetryRecord other = newRecord("job-other", "http://other.example.com/callback");
+        for (CallbackRetryQueue.RetryRecord record : records) {
+            retryQueue.schedule(record, 0);
+        }
+        retryQueue.schedule(other, 0);
+
+        waitForSubmitted(cap + 1);
+        assertEquals(cap + 1, callbackExecutors.submitted.size());
+        assertEquals(3, retryQueue.size());
+
+        retryQueue.attemptDone(records.get(0));
+        waitForSubmitted(cap + 2);
+        assertEquals(cap + 2, callbackExecutors.submitted.size());
+        assertEquals(2, retryQueue.size());
+    }
+
+    private void waitForSubmitted(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && callbackExecutors.submitted.size() < count; i++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    private static CallbackRetryQueue.RetryRecord newRecord(String jobId, String callbackUrl) {
+        return new CallbackRetryQueue.RetryRecord(new CallbackTask("a.wav", jobId, callbackUrl, null),
+                callbackUrl, 0, CallbackTask.CachedNotification.of("{}"));
+    }
+
+    /**
+     * 只记录提交的任务而不执行，避免真的发出回调请求
+     */
+    private static class RecordingExecutor extends AbstractExecutorService {
+
+        private final List<Runnable> submitted = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class CallbackTaskTest {
+
+    @Test
+    public void smallNotificationIsKeptAsIs() throws IOException {
+        String json = "{\"job_id\":\"1\",\"asr_result\":{\"words\":\"hello\"}}";
+        CallbackTask.CachedNotification notification = CallbackTask.CachedNotification.of(json);
+
+        assertFalse(notification.isCompressed());
+        assertEquals(json, new String(notification.toJson(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void largeNotificationIsCompressedAndRestored() throws IOException {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            words.append("识别结果").append(i).append(' ');
+        }
+        String json = "{\"job_id\":\"1\",\"asr_result\":{\"words\":\"" + words + "\"}}";
+        CallbackTask.CachedNotification notification = CallbackTask.CachedNotification.of(json);
+
+        assertTrue(notification.isCompressed());
+        assertEquals(json, new String(notification.toJson(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void retriesAreTrackedPerCallbackUrl() {
+        CallbackTask first = new CallbackTask("a.wav", "job-1", "http://a/callback", null);
+        CallbackTask second = new CallbackTask("a.wav", "job-1", "http://b/callback", null);
+
+        assertNotEquals(first, second);
+        assertEquals(first, new CallbackTask("b.wav", "job-1", "http://a/callback", null));
+    }
+}
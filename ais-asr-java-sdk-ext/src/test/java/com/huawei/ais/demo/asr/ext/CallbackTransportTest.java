@@ -0,0 +1,136 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class CallbackTransportTest {
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger plainRequests = new AtomicInteger();
+    private CallbackTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> respond(exchange, 200, "{\"code\":0}"));
+        server.createContext("/fail", exchange -> respond(exchange, 500, "busy"));
+        server.createContext("/echo", this::echo);
+        server.createContext("/plain", exchange -> {
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                respond(exchange, 415, "gzip not supported");
+            } else {
+                echo(exchange);
+            }
+        });
+        server.start();
+        transport = new CallbackTransport();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void connectionsAreReusedAcrossCallbacks() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            CallbackTransport.Response response = transport.post(url("/ok"), "{}".getBytes(StandardCharsets.UTF_8));
+            assertTrue(response.isOK());
+        }
+        assertEquals(1, clientPorts.size());
+        assertEquals(1, transport.connectionCount());
+    }
+
+    @Test
+    public void failedResponseIsReadAndConnectionReleased() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            CallbackTransport.Response response = transport.post(url("/fail"), "{}".getBytes(StandardCharsets.UTF_8));
+            assertFalse(response.isOK());
+            assertEquals(500, response.getStatusCode());
+            assertEquals("busy", response.getBody());
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void streamedNotificationIsGzippedWhenEnabled() throws IOException {
+        CallbackTransport gzipTransport = new CallbackTransport(true);
+        try {
+            CallbackTask.Notification notification = new CallbackTask.Notification("job-1", "识别结果");
+            CallbackTransport.Response response = gzipTransport.stream(url("/echo"), notification);
+
+            assertTrue(response.isOK());
+            assertEquals("gzip:{\"job_id\":\"job-1\",\"asr_result\":\"识别结果\"}", response.getBody());
+            assertEquals("plain:{\"job_id\":\"job-1\",\"asr_result\":\"识别结果\"}",
+                    transport.stream(url("/echo"), notification).getBody());
+        } finally {
+            gzipTransport.close();
+        }
+    }
+
+    @Test
+    public void rejectedGzipFallsBackToPlainForThatUrl() throws IOException {
+        CallbackTransport gzipTransport = new CallbackTransport(true);
+        try {
+            StringBuilder words = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                words.append("识别结果").append(i).append(' ');
+            }
+            String json = "{\"job_id\":\"1\",\"asr_result\":{\"words\":\"" + words + "\"}}";
+            CallbackTask.CachedNotification notification = CallbackTask.CachedNotification.of(json);
+
+            assertEquals("gzip:" + json, gzipTransport.post(url("/echo"), notification).getBody());
+            assertEquals("plain:" + json, gzipTransport.post(url("/plain"), notification).getBody());
+            assertEquals("plain:{}", gzipTransport.stream(url("/plain"), Collections.emptyMap()).getBody());
+            assertEquals(2, plainRequests.get());
+        } finally {
+            gzipTransport.close();
+        }
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void echo(HttpExchange exchange) throws IOException {
+        boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        InputStream body = gzip ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody();
+        String json = new String(IOUtils.toByteArray(body), StandardCharsets.UTF_8);
+        if (!gzip && exchange.getRequestURI().getPath().equals("/plain")) {
+            plainRequests.incrementAndGet();
+        }
+        respond(exchange, 200, (gzip ? "gzip:" : "plain:") + json);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        IOUtils.toByteArray(exchange.getRequestBody());
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
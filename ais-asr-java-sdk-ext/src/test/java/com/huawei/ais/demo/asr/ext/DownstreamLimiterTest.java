@@ -0,0 +1,81 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.huawei.ais.demo.asr.CommonUtils;
+
+public class DownstreamLimiterTest {
+
+    @Test
+    public void permitsAreCountedPerDownstream() throws Exception {
+        DownstreamLimiter limiter = new DownstreamLimiter(1);
+        limiter.acquire("http://a:80");
+        limiter.acquire("http://b:80");
+        assertEquals(1, limiter.inFlight("http://a:80"));
+        assertEquals(1, limiter.inFlight("http://b:80"));
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire("http://a:80");
+                acquired.countDown();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.release("http://a:80");
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    public void nonPositivePermitsAreUnlimited() throws Exception {
+        DownstreamLimiter limiter = DownstreamLimiter.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire("asr");
+        }
+        assertEquals(0, limiter.inFlight("asr"));
+    }
+
+    @Test
+    public void originIgnoresPathAndQuery() {
+        assertEquals("http://127.0.0.1:8080", DownstreamLimiter.origin("http://127.0.0.1:8080/callback/1?x=y"));
+        assertEquals("https://example.com", DownstreamLimiter.origin("https://example.com/a.wav"));
+        assertEquals("not a url", DownstreamLimiter.origin("not a url"));
+    }
+
+    @Test
+    public void virtualThreadExecutorRequiresJava21() throws Exception {
+        ExecutorService executor = CommonUtils.newVirtualThreadPerTaskExecutor("test-virtual-");
+        if (!javaVersionAtLeast(21)) {
+            assertNull(executor);
+            return;
+        }
+        assertNotNull(executor);
+        try {
+            Future<String> threadName = executor.submit(() -> Thread.currentThread().getName());
+            assertTrue(threadName.get(1, TimeUnit.SECONDS).startsWith("test-virtual-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean javaVersionAtLeast(int feature) {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= feature;
+    }
+}
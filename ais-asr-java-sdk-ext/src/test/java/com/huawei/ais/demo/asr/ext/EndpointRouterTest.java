@@ -0,0 +1,71 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.huawei.ais.demo.asr.AsrAccount;
+
+public class EndpointRouterTest {
+
+    @Test
+    public void leastLoadedEndpointIsChosen() {
+        AsrEndpoint busy = endpoint("busy");
+        AsrEndpoint idle = endpoint("idle");
+        EndpointRouter router = new EndpointRouter(Arrays.asList(busy, idle));
+        busy.jobStarted();
+
+        assertSame(idle, router.choose());
+        assertEquals(1, idle.getInFlight());
+    }
+
+    @Test
+    public void slowEndpointTakesFewerJobs() {
+        AsrEndpoint slow = endpoint("slow");
+        AsrEndpoint fast = endpoint("fast");
+        EndpointRouter router = new EndpointRouter(Arrays.asList(slow, fast));
+        slow.submitted(1000, false);
+        fast.submitted(100, false);
+
+        //快的账号在途9个任务时代价(9 + 1) * 100才与慢的账号相同
+        for (int i = 0; i < 9; i++) {
+            assertSame(fast, router.choose());
+        }
+        fast.jobStarted();
+        assertSame(slow, router.choose());
+    }
+
+    @Test
+    public void throttledEndpointIsAvoidedUntilAllAreThrottled() {
+        AsrEndpoint throttled = endpoint("throttled");
+        AsrEndpoint busy = endpoint("busy");
+        EndpointRouter router = new EndpointRouter(Arrays.asList(throttled, busy));
+        for (int i = 0; i < 10; i++) {
+            busy.jobStarted();
+        }
+        throttled.submitted(100, true);
+        assertSame(busy, router.choose());
+
+        busy.submitted(100, true);
+        assertSame(throttled, router.choose());
+    }
+
+    @Test
+    public void unknownNameFallsBackToFirstEndpoint() {
+        AsrEndpoint first = endpoint("first");
+        AsrEndpoint second = endpoint("second");
+        EndpointRouter router = new EndpointRouter(Arrays.asList(first, second));
+
+        assertSame(second, router.byName("second"));
+        assertSame(first, router.byName("removed"));
+        assertSame(first, router.byName(null));
+    }
+
+    private static AsrEndpoint endpoint(String name) {
+        AsrAccount account = new AsrAccount(name, "ak", "sk", "cn-north-4", "https://" + name, "", "bucket-" + name);
+        return new AsrEndpoint(account, null, null, 0.2, 60000);
+    }
+}
@@ -0,0 +1,138 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huawei.ais.demo.HttpJsonDataUtils;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 模拟长语音识别的提交任务和查询任务接口<p/>
+ * 提交的url需指向FakeObsService中已上传的对象（或以data提交音频内容），
+ * 任务在completionTime + 每MB millisPerMb之后结束，
+ * 按jobFailureRate的比例结束为失败
+ */
+class FakeAsrService extends FakeHttpServer {
+
+    private static final String LONG_SENTENCE_PATH = "/v1.0/voice/asr/long-sentence";
+    private static final long MB = 1024 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FakeObsService obsService;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private volatile long completionTimeInMillis;
+    private volatile long millisPerMb;
+    private volatile double jobFailureRate;
+    private volatile int sentences = 10;
+
+    FakeAsrService(int threads, FakeObsService obsService) throws IOException {
+        super("asr", threads);
+        this.obsService = obsService;
+    }
+
+    /**
+     * @param completionTimeInMillis 识别耗时的固定部分
+     * @param millisPerMb            每MB音频增加的识别耗时
+     */
+    FakeAsrService setCompletionTime(long completionTimeInMillis, long millisPerMb) {
+        this.completionTimeInMillis = completionTimeInMillis;
+        this.millisPerMb = millisPerMb;
+        return this;
+    }
+
+    FakeAsrService setJobFailureRate(double jobFailureRate) {
+        this.jobFailureRate = jobFailureRate;
+        return this;
+    }
+
+    /**
+     * @param sentences 识别结果中的句子数，决定查询和回调的响应大小
+     */
+    FakeAsrService setSentences(int sentences) {
+        this.sentences = sentences;
+        return this;
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals(LONG_SENTENCE_PATH)) {
+            respond(exchange, 404, "application/json", "{\"error_code\":\"APIG.0101\",\"error_msg\":\"Not found\"}");
+            return;
+        }
+        if ("POST".equals(exchange.getRequestMethod())) {
+            submit(exchange);
+        } else {
+            query(exchange);
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        JsonNode submitReq;
+        try (InputStream in = exchange.getRequestBody()) {
+            submitReq = objectMapper.readTree(in);
+        }
+        String url = submitReq.path("url").asText(null);
+        String data = submitReq.path("data").asText(null);
+        long size = data != null ? Base64.getDecoder().decode(data).length
+                : url == null ? -1 : obsService.sizeOf(url);
+        if (size < 0) {
+            respond(exchange, 400, "application/json",
+                    "{\"error_code\":\"AIS.0005\",\"error_msg\":\"The audio url is not accessible.\"}");
+            return;
+        }
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        long processingTime = completionTimeInMillis + millisPerMb * size / MB;
+        jobs.put(jobId, new Job(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(processingTime),
+                ThreadLocalRandom.current().nextDouble() < jobFailureRate));
+        respond(exchange, 200, "application/json", "{\"result\":{\"job_id\":\"" + jobId + "\"}}");
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String jobId = query == null ? null : query.replaceAll("^.*job_id=([^&]*).*$", "$1");
+        Job job = jobId == null ? null : jobs.get(jobId);
+        if (job == null) {
+            respond(exchange, 400, "application/json",
+                    "{\"error_code\":\"AIS.0007\",\"error_msg\":\"The job does not exist.\"}");
+            return;
+        }
+        String result;
+        if (System.nanoTime() < job.completeAt) {
+            result = "{\"status_code\":1,\"status_msg\":\"Running\"}";
+        } else if (job.failed) {
+            result = "{\"status_code\":-1,\"status_msg\":\"Failed\"}";
+        } else {
+            result = "{\"status_code\":2,\"status_msg\":\"Finished\",\"words\":"
+                    + HttpJsonDataUtils.objectToJsonString(words(sentences)) + "}";
+        }
+        respond(exchange, 200, "application/json", "{\"result\":" + result + "}");
+    }
+
+    private static String words(int sentences) {
+        StringBuilder words = new StringBuilder(sentences * 40);
+        for (int i = 0; i < sentences; i++) {
+            words.append(String.format("[00:%02d:%02d.000,00:%02d:%02d.500] 压测识别结果第%d句。%n",
+                    i / 60 % 60, i % 60, i / 60 % 60, i % 60, i + 1));
+        }
+        return words.toString();
+    }
+
+    private static class Job {
+        private final long completeAt;
+        private final boolean failed;
+
+        private Job(long completeAt, boolean failed) {
+            this.completeAt = completeAt;
+            this.failed = failed;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 模拟音频源，GET /audio/{N}/{name}.wav 返回N字节的静音WAV音频（16kHz、16位单声道），不占用磁盘<p/>
+ * 支持单个Range（bytes=a-b或bytes=a-），可限制每个连接的带宽，模拟高延迟、单连接跑不满带宽的音频源
+ */
+class FakeAudioSource extends FakeHttpServer {
+
+    private static final long DEFAULT_BYTES = 1024 * 1024;
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private volatile long bandwidth;
+
+    FakeAudioSource(int threads) throws IOException {
+        super("audio", threads);
+    }
+
+    /**
+     * @param bytesPerSecond 每个连接每秒最多发送的字节数，为0时不限制
+     */
+    FakeAudioSource setBandwidth(long bytesPerSecond) {
+        this.bandwidth = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param name  音频名称，不同名称的音频对去重缓存来说是不同的url
+     * @param bytes 音频大小
+     */
+    String audioUrl(String name, long bytes) {
+        return getUrl() + "/audio/" + bytes + "/" + name + ".wav";
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        String[] segments = exchange.getRequestURI().getPath().split("/");
+        long bytes = segments.length > 3 ? Long.parseLong(segments[2]) : DEFAULT_BYTES;
+        exchange.getResponseHeaders().set("Content-Type", "audio/wav");
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        long from = 0;
+        long to = bytes - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            from = Long.parseLong(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                to = Math.min(to, Long.parseLong(bounds[1]));
+            }
+            if (from >= bytes) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + bytes);
+                respond(exchange, 416, null, "");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + bytes);
+            exchange.sendResponseHeaders(206, to - from + 1);
+        } else {
+            exchange.sendResponseHeaders(200, bytes == 0 ? -1 : bytes);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            byte[] header = bytes >= WAV_HEADER_SIZE ? wavHeader(bytes - WAV_HEADER_SIZE) : new byte[0];
+            byte[] blank = new byte[CHUNK_SIZE];
+            for (long position = from; position <= to; position += CHUNK_SIZE) {
+                int length = (int) Math.min(CHUNK_SIZE, to + 1 - position);
+                byte[] chunk = blank;
+                if (position < header.length) {
+                    chunk = new byte[length];
+                    System.arraycopy(header, (int) position, chunk, 0,
+                            (int) Math.min(length, header.length - position));
+                }
+                out.write(chunk, 0, length);
+                throttle(length);
+            }
+        }
+    }
+
+    private void throttle(int length) throws IOException {
+        long bytesPerSecond = bandwidth;
+        if (bytesPerSecond > 0) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(length * 1000000L / bytesPerSecond);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private static byte[] wavHeader(long dataLength) {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt((int) (WAV_HEADER_SIZE - 8 + dataLength))
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) 1).putShort((short) 1).putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2)
+                .putShort((short) 2).putShort((short) 16)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt((int) dataLength);
+        return header.array();
+    }
+}
@@ -0,0 +1,35 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 模拟回调服务，POST /callback/{id} 读完回调内容后返回200，并通知listener收到了哪个id的回调
+ */
+class FakeCallbackSink extends FakeHttpServer {
+
+    private static final String CALLBACK_PATH = "/callback/";
+
+    private final Consumer<String> listener;
+
+    FakeCallbackSink(int threads, Consumer<String> listener) throws IOException {
+        super("callback", threads);
+        this.listener = listener;
+    }
+
+    String callbackUrl(String id) {
+        return getUrl() + CALLBACK_PATH + id;
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        drain(exchange);
+        respond(exchange, 200, "application/json", "{\"code\":0}");
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith(CALLBACK_PATH)) {
+            listener.accept(path.substring(CALLBACK_PATH.length()));
+        }
+    }
+}
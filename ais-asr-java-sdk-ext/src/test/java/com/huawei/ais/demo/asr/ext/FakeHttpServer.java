@@ -0,0 +1,158 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.huawei.ais.demo.asr.CommonUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 压测用的进程内HTTP服务，在子类的处理逻辑之前统一注入延迟、错误（500）和限流（429）<p/>
+ * 故障参数可在运行中修改，例如先让AsrServiceUtils正常初始化，再打开错误注入
+ */
+abstract class FakeHttpServer {
+
+    private final String name;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private volatile long latencyInMillis;
+    private volatile double errorRate;
+    private volatile double throttleRate;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param name    服务名称，用于线程名和统计输出
+     * @param threads 处理请求的线程数，注入的延迟会占用这些线程
+     */
+    FakeHttpServer(String name, int threads) throws IOException {
+        this.name = name;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads,
+                CommonUtils.ThreadFactoryConstructor(true, "fake-" + name + "-%d"));
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+    }
+
+    FakeHttpServer start() {
+        server.start();
+        return this;
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 服务地址，形如http://127.0.0.1:port
+     */
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param latencyInMillis 每个请求在处理前等待的时间
+     */
+    FakeHttpServer setLatency(long latencyInMillis) {
+        this.latencyInMillis = latencyInMillis;
+        return this;
+    }
+
+    /**
+     * @param errorRate 返回500的请求比例
+     */
+    FakeHttpServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param throttleRate 返回429的请求比例
+     */
+    FakeHttpServer setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    protected abstract void handle(HttpExchange exchange) throws IOException;
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            if (latencyInMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyInMillis);
+            }
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < throttleRate) {
+                throttled.increment();
+                respond(exchange, 429, "application/json",
+                        "{\"error_code\":\"APIG.0308\",\"error_msg\":\"Too many requests\"}");
+            } else if (roll < throttleRate + errorRate) {
+                errors.increment();
+                respond(exchange, 500, "application/json",
+                        "{\"error_code\":\"AIS.0500\",\"error_msg\":\"Injected error\"}");
+            } else {
+                handle(exchange);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            respond(exchange, 500, "text/plain", String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static void respond(HttpExchange exchange, int statusCode, String contentType, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(statusCode, data.length == 0 ? -1 : data.length);
+        if (data.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        }
+    }
+
+    /**
+     * 读完请求体
+     *
+     * @return 请求体的字节数
+     */
+    static long drain(HttpExchange exchange) throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: requests=%d, injected errors=%d, throttled=%d", name, requests.sum(),
+                errors.sum(), throttled.sum());
+    }
+}
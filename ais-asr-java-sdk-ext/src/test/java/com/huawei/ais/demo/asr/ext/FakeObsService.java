@@ -0,0 +1,180 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 模拟OBS，按路径形式（/bucket/key）处理创建桶、上传对象、分段上传、查询、删除和批量删除对象<p/>
+ * 只记录对象大小，不保存内容；下载对象时返回同样长度的空白数据。临时授权url只校验对象是否存在，不校验签名
+ */
+class FakeObsService extends FakeHttpServer {
+
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>");
+
+    private final Map<String, Long> objects = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> multipartUploads = new ConcurrentHashMap<>();
+
+    FakeObsService(int threads) throws IOException {
+        super("obs", threads);
+    }
+
+    /**
+     * @param signedUrl 临时授权url或对象url
+     * @return 对象大小，对象不存在时返回-1
+     */
+    long sizeOf(String signedUrl) {
+        Long size = objects.get(URI.create(signedUrl).getPath());
+        return size == null ? -1 : size;
+    }
+
+    int getObjectCount() {
+        return objects.size();
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+        String method = exchange.getRequestMethod();
+        boolean bucketOnly = path.indexOf('/', 1) < 0;
+        exchange.getResponseHeaders().set("x-obs-request-id", UUID.randomUUID().toString());
+
+        if ("POST".equals(method) && "delete".equals(query)) {
+            deleteObjects(exchange, path.replaceAll("/+$", ""));
+            return;
+        }
+        if (bucketOnly) {
+            //创建、删除桶
+            drain(exchange);
+            respond(exchange, "DELETE".equals(method) ? 204 : 200, null, "");
+            return;
+        }
+        String uploadId = queryParam(query, "uploadId");
+        switch (method) {
+            case "PUT":
+                long size = drain(exchange);
+                if (uploadId != null) {
+                    AtomicLong uploaded = multipartUploads.get(uploadId);
+                    if (uploaded == null) {
+                        respond(exchange, 404, "application/xml", error("NoSuchUpload"));
+                        return;
+                    }
+                    uploaded.addAndGet(size);
+                } else {
+                    objects.put(path, size);
+                }
+                exchange.getResponseHeaders().set("ETag", etag());
+                respond(exchange, 200, null, "");
+                return;
+            case "POST":
+                drain(exchange);
+                if (query != null && query.startsWith("uploads")) {
+                    uploadId = UUID.randomUUID().toString().replace("-", "");
+                    multipartUploads.put(uploadId, new AtomicLong());
+                    respond(exchange, 200, "application/xml", "<InitiateMultipartUploadResult>"
+                            + bucketAndKey(path) + "<UploadId>" + uploadId + "</UploadId>"
+                            + "</InitiateMultipartUploadResult>");
+                    return;
+                }
+                AtomicLong uploaded = uploadId == null ? null : multipartUploads.remove(uploadId);
+                if (uploaded == null) {
+                    respond(exchange, 404, "application/xml", error("NoSuchUpload"));
+                    return;
+                }
+                objects.put(path, uploaded.get());
+                respond(exchange, 200, "application/xml", "<CompleteMultipartUploadResult><Location>"
+                        + getUrl() + path + "</Location>" + bucketAndKey(path) + "<ETag>" + etag()
+                        + "</ETag></CompleteMultipartUploadResult>");
+                return;
+            case "HEAD":
+            case "GET":
+                Long objectSize = objects.get(path);
+                if (objectSize == null) {
+                    if ("HEAD".equals(method)) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        respond(exchange, 404, "application/xml", error("NoSuchKey"));
+                    }
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", etag());
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                if ("HEAD".equals(method)) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(objectSize));
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(200, objectSize == 0 ? -1 : objectSize);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    byte[] blank = new byte[64 * 1024];
+                    for (long remaining = objectSize; remaining > 0; remaining -= blank.length) {
+                        out.write(blank, 0, (int) Math.min(blank.length, remaining));
+                    }
+                }
+                return;
+            case "DELETE":
+                if (uploadId != null) {
+                    multipartUploads.remove(uploadId);
+                } else {
+                    objects.remove(path);
+                }
+                respond(exchange, 204, null, "");
+                return;
+            default:
+                respond(exchange, 405, "application/xml", error("MethodNotAllowed"));
+        }
+    }
+
+    /**
+     * 批量删除，quiet模式下只返回删除失败的对象，这里总是全部成功
+     */
+    private void deleteObjects(HttpExchange exchange, String bucketPath) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        Matcher matcher = DELETE_KEY.matcher(body);
+        while (matcher.find()) {
+            objects.remove(bucketPath + "/" + matcher.group(1));
+        }
+        respond(exchange, 200, "application/xml", "<DeleteResult></DeleteResult>");
+    }
+
+    private static String bucketAndKey(String path) {
+        int slash = path.indexOf('/', 1);
+        return "<Bucket>" + path.substring(1, slash) + "</Bucket><Key>" + path.substring(slash + 1) + "</Key>";
+    }
+
+    private static String etag() {
+        return "\"" + UUID.randomUUID().toString().replace("-", "") + "\"";
+    }
+
+    private static String error(String code) {
+        return "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>";
+    }
+
+    private static String queryParam(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String param : query.split("&")) {
+            if (param.startsWith(name + "=")) {
+                return param.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,131 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobJournalTest {
+
+    private File journalDir;
+
+    @Before
+    public void setUp() throws IOException {
+        journalDir = Files.createTempDirectory("asr-journal").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(journalDir);
+    }
+
+    @Test
+    public void unfinishedCallbacksSurviveReopen() throws IOException {
+        JobJournal journal = open(100);
+        journal.submitted("job-1", "a.wav", "http://a/cb");
+        journal.submitted("job-1", "a.wav", "http://b/cb");
+        journal.submitted("job-2", "b.wav", "http://a/cb");
+        journal.submitted("job-3", "c.wav", "http://a/cb");
+        journal.onJobDone("job-1", null);
+        journal.delivered("job-1", "http://a/cb");
+        journal.onJobDone("job-3", null);
+        journal.abandoned("job-3", "http://a/cb");
+        journal.close();
+
+        List<JobJournal.JournaledJob> pendingJobs = open(100).pendingJobs();
+        assertEquals(2, pendingJobs.size());
+        JobJournal.JournaledJob job1 = pendingJobs.get(0);
+        assertEquals("job-1", job1.getJobId());
+        assertTrue(job1.isFinished());
+        assertEquals(1, job1.getPendingCallbacks().size());
+        assertEquals("a.wav", job1.getPendingCallbacks().get("http://b/cb"));
+        JobJournal.JournaledJob job2 = pendingJobs.get(1);
+        assertEquals("job-2", job2.getJobId());
+        assertFalse(job2.isFinished());
+    }
+
+    @Test
+    public void brokenTailIsSkipped() throws IOException {
+        JobJournal journal = open(100);
+        journal.submitted("job-1", "a.wav", "http://a/cb");
+        journal.close();
+        FileUtils.write(journalFile(), "{\"type\":\"DELIVERED\",\"job_", StandardCharsets.UTF_8, true);
+
+        assertEquals(1, open(100).pendingJobs().size());
+    }
+
+    @Test
+    public void compactionKeepsOnlyLiveJobs() throws IOException {
+        JobJournal journal = open(10);
+        journal.submitted("job-live", "live.wav", "http://a/cb");
+        for (int i = 0; i < 100; i++) {
+            journal.submitted("job-" + i, i + ".wav", "http://a/cb");
+            journal.onJobDone("job-" + i, null);
+            journal.delivered("job-" + i, "http://a/cb");
+        }
+        journal.sync();
+
+        assertTrue(FileUtils.readLines(journalFile(), StandardCharsets.UTF_8).size() <= 10);
+        journal.close();
+        List<JobJournal.JournaledJob> pendingJobs = open(10).pendingJobs();
+        assertEquals(1, pendingJobs.size());
+        assertEquals("job-live", pendingJobs.get(0).getJobId());
+    }
+
+    @Test
+    public void endpointSurvivesCompaction() throws IOException {
+        JobJournal journal = open(3);
+        journal.submitted("job-old", "old.wav", "http://a/cb");
+        journal.submitted("job-b", "b.wav", "http://a/cb", "account-b");
+        journal.submitted("job-b", "b.wav", "http://b/cb");
+        journal.submitted("job-c", "c.wav", "http://a/cb", "account-c");
+        journal.close();
+
+        List<JobJournal.JournaledJob> pendingJobs = open(3).pendingJobs();
+        assertEquals(3, pendingJobs.size());
+        assertNull(pendingJobs.get(0).getEndpoint());
+        assertEquals("account-b", pendingJobs.get(1).getEndpoint());
+        assertEquals(2, pendingJobs.get(1).getPendingCallbacks().size());
+        assertEquals("account-c", pendingJobs.get(2).getEndpoint());
+    }
+
+    @Test
+    public void segmentsSurviveCompaction() throws IOException {
+        JobJournal journal = open(3);
+        journal.segmentsSubmitted("seg-1,seg-2", "long.wav", "http://a/cb", Arrays.asList(
+                new JobJournal.JournaledSegment("seg-1", "account-a", 0),
+                new JobJournal.JournaledSegment("seg-2", "account-b", 600000)));
+        journal.submitted("job-1", "a.wav", "http://a/cb");
+        journal.submitted("job-2", "b.wav", "http://a/cb");
+        journal.close();
+
+        List<JobJournal.JournaledJob> pendingJobs = open(3).pendingJobs();
+        assertEquals(3, pendingJobs.size());
+        List<JobJournal.JournaledSegment> segments = pendingJobs.get(0).getSegments();
+        assertEquals(2, segments.size());
+        assertEquals("seg-2", segments.get(1).getJobId());
+        assertEquals("account-b", segments.get(1).getEndpoint());
+        assertEquals(600000, segments.get(1).getOffsetInMillis());
+        assertNull(pendingJobs.get(1).getSegments());
+    }
+
+    private JobJournal open(int compactThreshold) throws IOException {
+        return JobJournal.open(journalDir.getAbsolutePath(), compactThreshold, 50);
+    }
+
+    private File journalFile() {
+        return new File(journalDir, "asr-jobs.journal");
+    }
+}
@@ -0,0 +1,163 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huawei.ais.common.AuthInfo;
+import com.huawei.ais.demo.asr.AsrAccount;
+import com.huawei.ais.demo.asr.Config;
+import com.huawei.ais.demo.obs.SimpleObsClient;
+import com.huawei.ais.sdk.AisAccess;
+
+public class JobStatusPollerTest {
+
+    private FakeObsService obsService;
+    private FakeAsrService asrService;
+    private SimpleObsClient obsClient;
+    private ExecutorService callbackExecutors;
+    private StorageJanitor storageJanitor;
+    private JobStatusPoller jobStatusPoller;
+    private File localFile;
+
+    @Before
+    public void setUp() throws Exception {
+        obsService = new FakeObsService(2);
+        obsService.start();
+        asrService = new FakeAsrService(2, obsService);
+        asrService.start();
+        obsClient = new SimpleObsClient("ak", "sk", "cn-north-1", obsService.getUrl(), 10000, 30000, null);
+        callbackExecutors = Executors.newSingleThreadExecutor();
+        storageJanitor = new StorageJanitor(0, 0);
+        jobStatusPoller = new JobStatusPoller(callbackExecutors, null, null, RateLimiter.perSecond(0),
+                new PollPlanner(false, 20, 20, 20, 1, 0), storageJanitor);
+        localFile = Files.createTempFile("poller", ".wav").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        jobStatusPoller.destroy();
+        callbackExecutors.shutdownNow();
+        obsClient.close();
+        asrService.stop();
+        obsService.stop();
+        localFile.delete();
+    }
+
+    @Test
+    public void throttledQueriesDoNotEndTheJob() throws Exception {
+        asrService.setThrottleRate(1);
+        byte[] data = new byte[16];
+        storageJanitor.track("job-1", AudioPayload.obs(
+                obsClient.uploadStream("bucket", "a.wav", new ByteArrayInputStream(data), data.length),
+                localFile.getAbsolutePath()));
+        jobStatusPoller.watch("http://audio/a.wav", "job-1", "http://127.0.0.1:1/callback", endpoint(), 16);
+
+        //连续失败次数未超限前一直查询，不清理音频
+        waitForRequests(Config.getInstance().getQueryMaxErrors() / 2);
+        assertEquals(1, jobStatusPoller.pendingJobs());
+        assertEquals(1, storageJanitor.trackedJobs());
+        assertTrue(localFile.exists());
+
+        //超限后放弃查询，任务可能仍在识别，音频仍然保留
+        waitForRequests(Config.getInstance().getQueryMaxErrors());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (jobStatusPoller.pendingJobs() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(0, jobStatusPoller.pendingJobs());
+        assertEquals(0, storageJanitor.trackedJobs());
+        assertTrue(localFile.exists());
+        assertEquals(0, storageJanitor.pendingDeletes());
+        assertEquals(1, obsService.getObjectCount());
+    }
+
+    @Test
+    public void segmentedJobIsResumedFromJournal() throws Exception {
+        asrService.setCompletionTime(0, 0);
+        AsrEndpoint endpoint = endpoint();
+        String first = submitInline(endpoint);
+        String second = submitInline(endpoint);
+        CountDownLatch delivered = new CountDownLatch(1);
+        FakeCallbackSink callbackSink = new FakeCallbackSink(1, id -> delivered.countDown());
+        callbackSink.start();
+        File journalDir = Files.createTempDirectory("asr-journal").toFile();
+        ExecutorService resumedCallbackExecutors = Executors.newSingleThreadExecutor();
+        JobStatusPoller resumedPoller = null;
+        try {
+            //上次运行时提交了两个片段，回调前进程退出
+            JobJournal journal = JobJournal.open(journalDir.getAbsolutePath(), 100, 50);
+            journal.segmentsSubmitted(first + "," + second, "http://audio/long.wav", callbackSink.callbackUrl("long"),
+                    Arrays.asList(new JobJournal.JournaledSegment(first, "fake", 0),
+                            new JobJournal.JournaledSegment(second, "fake", 600000)));
+            journal.close();
+
+            journal = JobJournal.open(journalDir.getAbsolutePath(), 100, 50);
+            CallbackTask.initCallbackTransport();
+            CallbackTask.setJobJournal(journal);
+            resumedPoller = new JobStatusPoller(resumedCallbackExecutors, null, journal, RateLimiter.perSecond(0),
+                    new PollPlanner(false, 20, 20, 20, 1, 0), null);
+            List<JobJournal.JournaledJob> pendingJobs = journal.pendingJobs();
+            assertEquals(1, pendingJobs.size());
+            SegmentedJob.resume(resumedPoller, pendingJobs.get(0),
+                    new EndpointRouter(Collections.singletonList(endpoint)));
+
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!journal.pendingJobs().isEmpty() && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertTrue(journal.pendingJobs().isEmpty());
+            journal.close();
+        } finally {
+            CallbackTask.setJobJournal(null);
+            CallbackTask.destroyCallbackTransport();
+            if (resumedPoller != null) {
+                resumedPoller.destroy();
+            }
+            resumedCallbackExecutors.shutdownNow();
+            callbackSink.stop();
+            FileUtils.deleteDirectory(journalDir);
+        }
+    }
+
+    private static String submitInline(AsrEndpoint endpoint) throws Exception {
+        HttpResponse response = endpoint.getAisAccessClient().post("/v1.0/voice/asr/long-sentence",
+                "{\"data\":\"AAAA\"}");
+        return new ObjectMapper().readTree(response.getEntity().getContent()).path("result").path("job_id").asText();
+    }
+
+    private AsrEndpoint endpoint() {
+        AsrAccount account = new AsrAccount("fake", "ak", "sk", "cn-north-4", asrService.getUrl(),
+                obsService.getUrl(), "bucket");
+        AisAccess aisAccess = new AisAccess(new AuthInfo(account.getAsrEndpoint(), account.getRegion(),
+                account.getAk(), account.getSk()), 1000, 1000, 5000);
+        AsrEndpoint endpoint = new AsrEndpoint(account, aisAccess, obsClient, 0.2, 60000);
+        endpoint.jobStarted();
+        return endpoint;
+    }
+
+    private void waitForRequests(long requests) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (asrService.getRequests() < requests && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.huawei.ais.demo.asr.ext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+
+/**
+ * 离线压测：在进程内启动模拟的音频源、OBS、长语音识别和回调服务，按目标速率调用AsrServiceUtils，
+ * 统计吞吐量、端到端与各环节耗时的分位数以及被拒绝的调用数，不访问公网也不消耗云服务配额<p/>
+ * 运行：mvn test-compile exec:java -Dexec.mainClass=com.huawei.ais.demo.asr.ext.LoadTestHarness
+ * -Dexec.classpathScope=test -Dloadtest.rate=50<p/>
+ * 压测参数（系统属性，括号内为默认值）：
+ * <ul>
+ * <li>loadtest.rate：每秒调用次数（20），loadtest.duration：持续秒数（30）</li>
+ * <li>loadtest.audio.bytes：每个音频的字节数（1048576）</li>
+ * <li>loadtest.admission.timeout：取得准入许可的最长等待毫秒数（0，即调用callAsrService，满时立即拒绝）</li>
+ * <li>loadtest.async：是否改用callAsrServiceAsync（false）</li>
+ * <li>loadtest.drain.timeout：停止调用后等待未完成任务的最长秒数（120）</li>
+ * <li>loadtest.{audio|obs|asr|callback}.latency、.error.rate、.throttle.rate：各模拟服务的延迟毫秒数、
+ * 返回500和429的比例（0）</li>
+ * <li>loadtest.audio.bandwidth：音频源每个连接每秒发送的字节数（0，不限制）</li>
+ * <li>loadtest.asr.completion.time、loadtest.asr.millis.per.mb：识别耗时的固定部分和每MB的增量（2000、1000）</li>
+ * <li>loadtest.asr.job.failure.rate：识别失败的任务比例（0），loadtest.asr.sentences：识别结果句子数（10）</li>
+ * <li>loadtest.log.level：日志级别（WARN）</li>
+ * </ul>
+ * AsrServiceUtils本身的配置同样可用系统属性覆盖，例如-Dsubmit.pool.max.size=50；
+ * 压测默认把轮询间隔缩短到1秒、任务日志写到临时目录
+ */
+public class LoadTestHarness {
+
+    private final ConcurrentHashMap<String, Call> pendingCalls = new ConcurrentHashMap<>();
+    private final LatencyHistogram endToEndTime = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder submitFailed = new LongAdder();
+    private final LongAdder calledBack = new LongAdder();
+    private volatile long lastCallbackTime;
+
+    public static void main(String[] args) throws Exception {
+        LogManager.getRootLogger().setLevel(Level.toLevel(System.getProperty("loadtest.log.level"), Level.WARN));
+        new LoadTestHarness().run();
+        System.exit(0);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        FakeAudioSource audioSource = new FakeAudioSource(64);
+        FakeObsService obsService = new FakeObsService(64);
+        FakeAsrService asrService = new FakeAsrService(64, obsService);
+        FakeCallbackSink callbackSink = new FakeCallbackSink(64, this::calledBack);
+        audioSource.start();
+        obsService.start();
+        asrService.start();
+        callbackSink.start();
+
+        defaultProperty("user.ak", "loadtest-ak");
+        defaultProperty("user.sk", "loadtest-sk");
+        defaultProperty("service.asr.endpint", asrService.getUrl());
+        defaultProperty("service.obs.endpoint", obsService.getUrl());
+        defaultProperty("service.obs.bucket.name", "loadtest");
+        defaultProperty("service.asr.query.interval", "1000");
+        defaultProperty("query.min.interval", "500");
+        defaultProperty("journal.dir", Files.createTempDirectory("asr-loadtest-journal").toString());
+        defaultProperty("metrics.report.interval", "0");
+
+        AsrServiceUtils asrServiceUtils = AsrServiceUtils.getInstance();
+
+        //AsrServiceUtils初始化时会创建桶，初始化之后再注入故障
+        inject(audioSource, "audio");
+        audioSource.setBandwidth(Long.getLong("loadtest.audio.bandwidth", 0));
+        inject(obsService, "obs");
+        inject(asrService, "asr");
+        inject(callbackSink, "callback");
+        asrService.setCompletionTime(Long.getLong("loadtest.asr.completion.time", 2000),
+                Long.getLong("loadtest.asr.millis.per.mb", 1000))
+                .setJobFailureRate(doubleProperty("loadtest.asr.job.failure.rate"))
+                .setSentences(Integer.getInteger("loadtest.asr.sentences", 10));
+
+        double rate = doubleProperty("loadtest.rate", 20);
+        long duration = Long.getLong("loadtest.duration", 30);
+        long audioBytes = Long.getLong("loadtest.audio.bytes", 1024 * 1024);
+        long admissionTimeout = Long.getLong("loadtest.admission.timeout", 0);
+        boolean async = Boolean.getBoolean("loadtest.async");
+        System.out.println(String.format("Load test started: %.1f calls/s for %ds, %d bytes per audio, %s mode.",
+                rate, duration, audioBytes, async ? "async" : "blocking"));
+
+        long startTime = System.nanoTime();
+        long endTime = startTime + TimeUnit.SECONDS.toNanos(duration);
+        long intervalInNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        int offered = 0;
+        for (long next = startTime; next < endTime; next += intervalInNanos) {
+            long waitInNanos = next - System.nanoTime();
+            if (waitInNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitInNanos);
+            }
+            String id = String.valueOf(offered++);
+            call(asrServiceUtils, id, audioSource.audioUrl(id, audioBytes), callbackSink.callbackUrl(id), async,
+                    admissionTimeout);
+        }
+        long offeredTime = System.nanoTime() - startTime;
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Long.getLong("loadtest.drain.timeout", 120));
+        while (!pendingCalls.isEmpty() && System.nanoTime() < drainDeadline) {
+            collectSubmitFailures();
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        collectSubmitFailures();
+
+        report(offered, offeredTime, startTime);
+        System.out.println(audioSource);
+        System.out.println(obsService);
+        System.out.println(asrService);
+        System.out.println(callbackSink);
+
+        asrServiceUtils.destroy();
+        System.out.println("obs objects left after destroy: " + obsService.getObjectCount());
+        audioSource.stop();
+        obsService.stop();
+        asrService.stop();
+        callbackSink.stop();
+    }
+
+    private void call(AsrServiceUtils asrServiceUtils, String id, String audioUrl, String callbackUrl, boolean async,
+                      long admissionTimeout) throws InterruptedException {
+        Call call = new Call();
+        pendingCalls.put(id, call);
+        try {
+            if (async) {
+                CompletableFuture<AsrResult> future = asrServiceUtils.callAsrServiceAsync(audioUrl, callbackUrl);
+                call.future = future;
+                future.whenComplete((result, e) -> {
+                    if (e != null && (e instanceof RejectedExecutionException
+                            || e.getCause() instanceof RejectedExecutionException)) {
+                        rejected(id);
+                    }
+                });
+            } else if (admissionTimeout > 0) {
+                call.future = asrServiceUtils.tryCallAsrService(audioUrl, callbackUrl, admissionTimeout,
+                        TimeUnit.MILLISECONDS);
+            } else {
+                call.future = asrServiceUtils.callAsrService(audioUrl, callbackUrl);
+            }
+        } catch (RejectedExecutionException e) {
+            rejected(id);
+        }
+    }
+
+    private void rejected(String id) {
+        if (pendingCalls.remove(id) != null) {
+            rejected.increment();
+        }
+    }
+
+    private void calledBack(String id) {
+        Call call = pendingCalls.remove(id);
+        if (call != null) {
+            endToEndTime.record(AsrMetrics.elapsedMillisSince(call.startTime));
+            calledBack.increment();
+            lastCallbackTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * 提交失败时没有回调，任务句柄已结束但没有jobId（或异常结束）的调用计为提交失败
+     */
+    private void collectSubmitFailures() {
+        Iterator<Map.Entry<String, Call>> iterator = pendingCalls.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Call> entry = iterator.next();
+            Future<?> future = entry.getValue().future;
+            if (future == null || !future.isDone()) {
+                continue;
+            }
+            boolean failed;
+            try {
+                failed = future.get() == null;
+            } catch (ExecutionException | InterruptedException e) {
+                failed = true;
+            }
+            if (failed && pendingCalls.remove(entry.getKey()) != null) {
+                submitFailed.increment();
+            }
+        }
+    }
+
+    private void report(int offered, long offeredTime, long startTime) {
+        double offeredSeconds = offeredTime / 1e9;
+        double completedSeconds = (Math.max(lastCallbackTime, startTime) - startTime) / 1e9;
+        System.out.println("========== load test report ==========");
+        System.out.println(String.format("offered: %d calls in %.1fs (%.1f calls/s)", offered, offeredSeconds,
+                offered / offeredSeconds));
+        System.out.println(String.format("accepted: %d, rejected: %d, submit failed: %d, called back: %d, "
+                + "unfinished: %d", offered - rejected.sum(), rejected.sum(), submitFailed.sum(), calledBack.sum(),
+                pendingCalls.size()));
+        System.out.println(String.format("throughput: %.1f callbacks/s", completedSeconds == 0 ? 0
+                : calledBack.sum() / completedSeconds));
+        System.out.println("end.to.end.time(ms): " + endToEndTime.snapshot());
+        for (Map.Entry<String, Number> metric : AsrMetrics.getInstance().toMap().entrySet()) {
+            System.out.println(metric.getKey() + ": " + metric.getValue());
+        }
+    }
+
+    private static void inject(FakeHttpServer server, String name) {
+        server.setLatency(Long.getLong("loadtest." + name + ".latency", 0))
+                .setErrorRate(doubleProperty("loadtest." + name + ".error.rate"))
+                .setThrottleRate(doubleProperty("loadtest." + name + ".throttle.rate"));
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static double doubleProperty(String key) {
+        return doubleProperty(key, 0);
+    }
+
+    private static double doubleProperty(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static class Call {
+        private final long startTime = AsrMetrics.startTimer();
+        private volatile Future<?> future;
+    }
+}
@@ -0,0 +1,66 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PipelineStageTest {
+
+    @Test
+    public void fullQueueBlocksUpstream() throws Exception {
+        PipelineStage stage = new PipelineStage("test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        try {
+            stage.put(() -> {
+                running.countDown();
+                awaitQuietly(release);
+            });
+            assertTrue(running.await(1, TimeUnit.SECONDS));
+            assertTrue(stage.offer(() -> { }));
+            assertFalse(stage.offer(() -> { }));
+
+            CountDownLatch handedOff = new CountDownLatch(1);
+            Thread upstream = new Thread(() -> {
+                try {
+                    stage.put(() -> { });
+                    handedOff.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            upstream.start();
+            assertFalse(handedOff.await(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, stage.stats().getQueueSize());
+
+            release.countDown();
+            assertTrue(handedOff.await(1, TimeUnit.SECONDS));
+            upstream.join();
+            assertEquals(1, stage.stats().getRejectedCount());
+        } finally {
+            release.countDown();
+            stage.destroy();
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void destroyedStageRejects() throws Exception {
+        PipelineStage stage = new PipelineStage("test", 1, 1);
+        stage.destroy();
+        stage.put(() -> { });
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
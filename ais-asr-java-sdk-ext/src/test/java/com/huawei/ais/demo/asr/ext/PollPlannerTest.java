@@ -0,0 +1,74 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PollPlannerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void firstPollFollowsPredictionThenBacksOff() {
+        PollPlanner pollPlanner = new PollPlanner(true, 30000, 1000, 60000, 2, 10000);
+        PollPlanner.Plan plan = pollPlanner.plan(2 * MB);
+
+        assertEquals(20000, plan.nextDelayInMillis());
+        assertEquals(5000, plan.nextDelayInMillis());
+        assertEquals(10000, plan.nextDelayInMillis());
+        assertEquals(20000, plan.nextDelayInMillis());
+        assertEquals(40000, plan.nextDelayInMillis());
+        assertEquals(60000, plan.nextDelayInMillis());
+    }
+
+    @Test
+    public void predictionLearnsFromCompletedJobs() {
+        PollPlanner pollPlanner = new PollPlanner(true, 30000, 1000, 600000, 2, 10000);
+        for (int i = 0; i < 50; i++) {
+            pollPlanner.record(4 * MB, 4000);
+        }
+
+        long predicted = pollPlanner.predictInMillis(10 * MB);
+        assertTrue("predicted " + predicted, predicted > 8000 && predicted < 12000);
+        //短音频的首次查询不早于最小间隔
+        assertEquals(1000, pollPlanner.plan(1024).nextDelayInMillis());
+    }
+
+    @Test
+    public void jobsFinishedBeforeFirstPollShrinkPrediction() {
+        PollPlanner pollPlanner = new PollPlanner(true, 30000, 100, 600000, 2, 10000);
+        for (int i = 0; i < 100; i++) {
+            PollPlanner.Plan plan = pollPlanner.plan(MB);
+            //首次查询就已完成，实际耗时只知道不超过首次查询的时间
+            plan.finished(plan.nextDelayInMillis());
+        }
+
+        long predicted = pollPlanner.predictInMillis(MB);
+        assertTrue("predicted " + predicted, predicted < 5000);
+    }
+
+    @Test
+    public void completionIsEstimatedBetweenLastTwoPolls() {
+        PollPlanner pollPlanner = new PollPlanner(true, 30000, 100, 600000, 2, 10000);
+        for (int i = 0; i < 50; i++) {
+            PollPlanner.Plan plan = pollPlanner.plan(MB);
+            plan.nextDelayInMillis();
+            plan.finished(8000);
+        }
+
+        long predicted = pollPlanner.predictInMillis(MB);
+        assertTrue("predicted " + predicted, predicted > 3400 && predicted < 4800);
+    }
+
+    @Test
+    public void unknownSizeOrDisabledUsesFixedInterval() {
+        PollPlanner adaptive = new PollPlanner(true, 30000, 1000, 60000, 2, 10000);
+        PollPlanner fixed = new PollPlanner(false, 30000, 1000, 60000, 2, 10000);
+
+        for (PollPlanner.Plan plan : new PollPlanner.Plan[]{adaptive.plan(-1), fixed.plan(2 * MB)}) {
+            assertEquals(30000, plan.nextDelayInMillis());
+            assertEquals(30000, plan.nextDelayInMillis());
+        }
+    }
+}
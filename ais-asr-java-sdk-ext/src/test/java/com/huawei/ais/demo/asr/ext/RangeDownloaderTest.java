@@ -0,0 +1,129 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class RangeDownloaderTest {
+
+    private static final int PART_SIZE = 64 * 1024;
+    private static final int SIZE = 10 * PART_SIZE + 123;
+
+    private PatternSource source;
+    private CloseableHttpClient httpClient;
+    private ExecutorService rangeExecutors;
+    private File destFile;
+
+    @Before
+    public void setUp() throws Exception {
+        source = new PatternSource();
+        source.start();
+        httpClient = HttpClients.custom().setMaxConnPerRoute(8).setMaxConnTotal(8).build();
+        rangeExecutors = Executors.newFixedThreadPool(3);
+        destFile = Files.createTempFile("range", ".wav").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        rangeExecutors.shutdownNow();
+        httpClient.close();
+        source.stop();
+        destFile.delete();
+    }
+
+    @Test
+    public void downloadsPartsConcurrentlyIntoPlace() throws Exception {
+        RangeDownloader downloader = new RangeDownloader(httpClient, rangeExecutors, PART_SIZE, 4, 0);
+        assertEquals(SIZE, downloader.download(source.getUrl() + "/a.wav", destFile));
+        assertArrayEquals(pattern(), Files.readAllBytes(destFile.toPath()));
+        assertEquals(11, source.getRequests());
+    }
+
+    @Test
+    public void resumesFailedRanges() throws Exception {
+        source.truncateOnce = true;
+        RangeDownloader downloader = new RangeDownloader(httpClient, rangeExecutors, PART_SIZE, 4, 1);
+        assertEquals(SIZE, downloader.download(source.getUrl() + "/a.wav", destFile));
+        assertArrayEquals(pattern(), Files.readAllBytes(destFile.toPath()));
+        assertEquals(22, source.getRequests());
+    }
+
+    @Test
+    public void originWithoutRangesIsDownloadedWhole() throws Exception {
+        source.supportRanges = false;
+        RangeDownloader downloader = new RangeDownloader(httpClient, rangeExecutors, PART_SIZE, 4, 0);
+        assertEquals(SIZE, downloader.download(source.getUrl() + "/a.wav", destFile));
+        assertArrayEquals(pattern(), Files.readAllBytes(destFile.toPath()));
+        assertEquals(1, source.getRequests());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenRetriesAreExhausted() throws Exception {
+        source.truncateOnce = true;
+        new RangeDownloader(httpClient, rangeExecutors, PART_SIZE, 4, 0).download(source.getUrl() + "/a.wav",
+                destFile);
+    }
+
+    private static byte[] pattern() {
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    /**
+     * 返回固定内容的音频源，可关闭Range支持，或让每个Range的第一次请求只返回一半数据
+     */
+    private static class PatternSource extends FakeHttpServer {
+
+        private final byte[] data = pattern();
+        private final Map<Long, Boolean> truncated = new ConcurrentHashMap<>();
+        private volatile boolean supportRanges = true;
+        private volatile boolean truncateOnce;
+
+        PatternSource() throws IOException {
+            super("pattern", 8);
+        }
+
+        @Override
+        protected void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            int from = 0;
+            int to = data.length - 1;
+            int status = 200;
+            if (supportRanges && range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                from = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    to = Math.min(to, Integer.parseInt(bounds[1]));
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+                status = 206;
+            }
+            int length = to - from + 1;
+            //每个Range（按结束位置区分，续传请求不再截断）第一次以chunked方式只发送一半数据
+            boolean truncate = truncateOnce && truncated.putIfAbsent((long) to, true) == null;
+            exchange.sendResponseHeaders(status, truncate ? 0 : length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data, from, truncate ? length / 2 : length);
+            }
+        }
+    }
+}
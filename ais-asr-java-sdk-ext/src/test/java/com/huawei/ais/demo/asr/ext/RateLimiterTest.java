@@ -0,0 +1,44 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void burstIsGrantedImmediatelyThenPaced() {
+        RateLimiter rateLimiter = new RateLimiter(10, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.reserve());
+        }
+        long firstWait = rateLimiter.reserve();
+        long secondWait = rateLimiter.reserve();
+
+        assertTrue(firstWait > TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(firstWait <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(secondWait - firstWait > TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void tryReserveDoesNotConsumeWhenWaitIsTooLong() {
+        RateLimiter rateLimiter = new RateLimiter(1, 1);
+        assertEquals(0, rateLimiter.tryReserve(0));
+        assertEquals(-1, rateLimiter.tryReserve(TimeUnit.MILLISECONDS.toNanos(100)));
+
+        long wait = rateLimiter.tryReserve(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(wait <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void nonPositiveRateIsUnlimited() {
+        RateLimiter rateLimiter = RateLimiter.perSecond(0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, rateLimiter.reserve());
+        }
+    }
+}
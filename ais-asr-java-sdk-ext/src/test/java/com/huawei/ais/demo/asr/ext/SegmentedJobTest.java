@@ -0,0 +1,49 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.huawei.ais.demo.asr.model.GetResultRes;
+
+public class SegmentedJobTest {
+
+    @Test
+    public void wordsAreMergedWithShiftedTimestamps() {
+        AtomicReference<String> mergedJobId = new AtomicReference<>();
+        AtomicReference<Object> merged = new AtomicReference<>();
+        SegmentedJob job = new SegmentedJob(Arrays.asList("job-1", "job-2"), new long[]{0, 3599500},
+                (jobId, result) -> {
+                    mergedJobId.set(jobId);
+                    merged.set(result);
+                });
+
+        job.segmentDone(1, new GetResultRes(2, "Finished", "[00:00:00.000,00:00:01.250] 第二段。\n"));
+        assertNull(merged.get());
+        job.segmentDone(0, new GetResultRes(2, "Finished", "[00:00:00.000,00:00:02.000] 第一段。"));
+
+        assertEquals("job-1,job-2", mergedJobId.get());
+        GetResultRes result = (GetResultRes) merged.get();
+        assertEquals(2, result.getStatusCode());
+        assertEquals("[00:00:00.000,00:00:02.000] 第一段。\n[00:59:59.500,01:00:00.750] 第二段。\n",
+                result.getWords());
+    }
+
+    @Test
+    public void failedSegmentFailsTheWholeJob() {
+        AtomicReference<Object> merged = new AtomicReference<>();
+        SegmentedJob job = new SegmentedJob(Arrays.asList("job-1", "job-2"), new long[]{0, 600000},
+                (jobId, result) -> merged.set(result));
+        GetResultRes failed = new GetResultRes(-1, "Failed", null);
+
+        job.segmentDone(0, new GetResultRes(2, "Finished", "[00:00:00.000,00:00:02.000] 第一段。"));
+        job.segmentDone(1, failed);
+
+        assertSame(failed, merged.get());
+    }
+}
@@ -0,0 +1,83 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.huawei.ais.demo.obs.ObsFileHandle;
+import com.huawei.ais.demo.obs.SimpleObsClient;
+
+public class StorageJanitorTest {
+
+    private FakeObsService obsService;
+    private SimpleObsClient obsClient;
+
+    @Before
+    public void setUp() throws Exception {
+        obsService = new FakeObsService(4);
+        obsService.start();
+        obsClient = new SimpleObsClient("ak", "sk", "cn-north-1", obsService.getUrl(), 10000, 30000, null);
+    }
+
+    @After
+    public void tearDown() {
+        obsClient.close();
+        obsService.stop();
+    }
+
+    @Test
+    public void finishedJobsAreDeletedInOneBatch() throws Exception {
+        StorageJanitor janitor = new StorageJanitor(0, 0);
+        File localFile = Files.createTempFile("janitor", ".wav").toFile();
+        janitor.track("job-1", AudioPayload.obs(upload("a.wav"), localFile.getAbsolutePath()));
+        janitor.track("job-2", AudioPayload.obs(upload("b.wav")));
+        ObsFileHandle failed = upload("c.wav");
+        janitor.release(AudioPayload.obs(failed));
+        assertEquals(3, obsService.getObjectCount());
+
+        janitor.jobDone("job-1");
+        janitor.jobDone("job-2");
+        assertFalse(localFile.exists());
+        assertEquals(0, janitor.trackedJobs());
+
+        long requests = obsService.getRequests();
+        assertEquals(3, janitor.cleanUp(false));
+        assertEquals(1, obsService.getRequests() - requests);
+        assertEquals(0, obsService.getObjectCount());
+        assertTrue(failed.isDeleted());
+        assertEquals(0, janitor.pendingDeletes());
+    }
+
+    @Test
+    public void objectsAreKeptForRetentionAndRevivedOnResubmit() throws Exception {
+        StorageJanitor janitor = new StorageJanitor(TimeUnit.HOURS.toMillis(1), 0);
+        ObsFileHandle handle = upload("d.wav");
+        janitor.track("job-1", AudioPayload.obs(handle));
+        janitor.jobDone("job-1");
+        assertEquals(0, janitor.cleanUp(false));
+        assertEquals(1, janitor.pendingDeletes());
+
+        //保留期间重新提交同一个OBS文件，不再删除
+        janitor.track("job-2", AudioPayload.obs(handle));
+        assertEquals(0, janitor.pendingDeletes());
+
+        janitor.jobDone("job-2");
+        janitor.destroy();
+        assertTrue(handle.isDeleted());
+        assertEquals(0, obsService.getObjectCount());
+    }
+
+    private ObsFileHandle upload(String objectKey) {
+        byte[] data = new byte[16];
+        return obsClient.uploadStream("bucket", objectKey, new ByteArrayInputStream(data), data.length);
+    }
+}
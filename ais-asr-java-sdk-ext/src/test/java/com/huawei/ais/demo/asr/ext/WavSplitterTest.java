@@ -0,0 +1,124 @@
+package com.huawei.ais.demo.asr.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WavSplitterTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("asr-segment").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void cutsAtSilenceNearTheBoundary() throws IOException {
+        //25秒音频切成3段，第一个切分点（约8.3秒）前后3秒内在7.0~7.2秒有一段静音
+        File wav = writeWav("long.wav", 25000, 7000, 7200);
+        List<WavSplitter.Segment> segments = new WavSplitter(10000, 3000).split(wav.getPath());
+
+        assertEquals(3, segments.size());
+        assertEquals(0, segments.get(0).getOffsetInMillis());
+        long firstCut = segments.get(1).getOffsetInMillis();
+        assertTrue("cut at " + firstCut, firstCut >= 7000 && firstCut < 7200);
+        long secondCut = segments.get(2).getOffsetInMillis();
+        assertTrue("cut at " + secondCut, Math.abs(secondCut - 16666) <= 20);
+
+        long dataLength = 0;
+        for (WavSplitter.Segment segment : segments) {
+            byte[] content = FileUtils.readFileToByteArray(new File(segment.getFilePath()));
+            ByteBuffer header = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals("RIFF", new String(content, 0, 4, StandardCharsets.US_ASCII));
+            assertEquals(SAMPLE_RATE, header.getInt(24));
+            assertEquals(content.length - 44, header.getInt(40));
+            assertEquals(content.length, segment.getSize());
+            dataLength += content.length - 44;
+        }
+        assertEquals(wav.length() - 44, dataLength);
+    }
+
+    @Test
+    public void shortOrUnknownAudioIsNotSplit() throws IOException {
+        File shortWav = writeWav("short.wav", 5000, 0, 0);
+        assertTrue(new WavSplitter(10000, 3000).split(shortWav.getPath()).isEmpty());
+
+        File mp3 = new File(dir, "long.mp3");
+        FileUtils.writeByteArrayToFile(mp3, new byte[SAMPLE_RATE * 2 * 30]);
+        assertTrue(new WavSplitter(10000, 3000).split(mp3.getPath()).isEmpty());
+    }
+
+    @Test
+    public void extensibleWavIsSplitOnlyWhenSubFormatIsPcm() throws IOException {
+        File pcm = writeExtensibleWav("pcm.wav", 25000, (short) 1);
+        assertEquals(3, new WavSplitter(10000, 0).split(pcm.getPath()).size());
+
+        File ieeeFloat = writeExtensibleWav("float.wav", 25000, (short) 3);
+        assertTrue(new WavSplitter(10000, 0).split(ieeeFloat.getPath()).isEmpty());
+    }
+
+    /**
+     * 生成WAVE_FORMAT_EXTENSIBLE格式的16kHz、16位单声道音频，subFormat为子格式GUID的前两个字节（1为PCM，3为IEEE浮点）
+     */
+    private File writeExtensibleWav(String name, int millis, short subFormat) throws IOException {
+        int frames = SAMPLE_RATE / 1000 * millis;
+        ByteBuffer wav = ByteBuffer.allocate(68 + frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(60 + frames * 2)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(40)
+                .putShort((short) 0xFFFE).putShort((short) 1).putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2)
+                .putShort((short) 2).putShort((short) 16)
+                .putShort((short) 22).putShort((short) 16).putInt(4)
+                .putShort(subFormat).put(new byte[]{0x00, 0x00, 0x00, 0x00, 0x10, 0x00,
+                        (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71})
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt(frames * 2);
+        for (int i = 0; i < frames; i++) {
+            wav.putShort((short) (i % 2 == 0 ? 1000 : -1000));
+        }
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, wav.array());
+        return file;
+    }
+
+    /**
+     * 生成16kHz、16位单声道的音频，[silenceFrom, silenceTo)毫秒内为静音，其余为方波
+     */
+    private File writeWav(String name, int millis, int silenceFrom, int silenceTo) throws IOException {
+        int frames = SAMPLE_RATE / 1000 * millis;
+        ByteBuffer wav = ByteBuffer.allocate(44 + frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + frames * 2)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) 1).putShort((short) 1).putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2)
+                .putShort((short) 2).putShort((short) 16)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt(frames * 2);
+        for (int i = 0; i < frames; i++) {
+            long at = i * 1000L / SAMPLE_RATE;
+            boolean silent = at >= silenceFrom && at < silenceTo;
+            wav.putShort((short) (silent ? 0 : i % 2 == 0 ? 1000 : -1000));
+        }
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, wav.array());
+        return file;
+    }
+}
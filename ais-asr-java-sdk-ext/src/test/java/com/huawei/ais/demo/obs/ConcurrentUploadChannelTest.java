@@ -0,0 +1,291 @@
+package com.huawei.ais.demo.obs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.obs.services.ObsClient;
+import com.obs.services.ObsConfiguration;
+import com.obs.services.exception.ObsException;
+import com.obs.services.model.AbortMultipartUploadRequest;
+import com.obs.services.model.CompleteMultipartUploadRequest;
+import com.obs.services.model.CompleteMultipartUploadResult;
+import com.obs.services.model.HeaderResponse;
+import com.obs.services.model.InitiateMultipartUploadRequest;
+import com.obs.services.model.InitiateMultipartUploadResult;
+import com.obs.services.model.ListPartsRequest;
+import com.obs.services.model.ListPartsResult;
+import com.obs.services.model.Multipart;
+import com.obs.services.model.PartEtag;
+import com.obs.services.model.UploadPartRequest;
+import com.obs.services.model.UploadPartResult;
+
+public class ConcurrentUploadChannelTest {
+
+    private static final int ONE_MB = 1024 * 1024;
+
+    private ExecutorService partUploadExecutor;
+    private FakeObsClient obsClient;
+
+    @Before
+    public void setUp() {
+        partUploadExecutor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(4),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        obsClient = new FakeObsClient();
+    }
+
+    @After
+    public void tearDown() {
+        partUploadExecutor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentUploadsKeepTheirOwnParts() throws Exception {
+        File first = createFile(5 * ONE_MB + 10);
+        File second = createFile(3 * ONE_MB);
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1).setParallelism(2);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<?> f1 = callers.submit(() -> new ConcurrentUploadChannel(obsClient, "bucket", "first", first,
+                partUploadExecutor, options).upload());
+        Future<?> f2 = callers.submit(() -> new ConcurrentUploadChannel(obsClient, "bucket", "second", second,
+                partUploadExecutor, options).upload());
+        f1.get(30, TimeUnit.SECONDS);
+        f2.get(30, TimeUnit.SECONDS);
+        callers.shutdown();
+
+        assertEquals(6, obsClient.completedParts.get("first").size());
+        assertEquals(3, obsClient.completedParts.get("second").size());
+        assertTrue(obsClient.aborted.isEmpty());
+    }
+
+    @Test
+    public void failedPartIsRetriedThenUploadIsAborted() throws Exception {
+        File file = createFile(3 * ONE_MB);
+        obsClient.failingPart = 2;
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1).setPartRetryTimes(1);
+
+        try {
+            new ConcurrentUploadChannel(obsClient, "bucket", "broken", file, partUploadExecutor, options).upload();
+            fail("upload should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(2, obsClient.failedAttempts.get());
+        assertEquals(1, obsClient.aborted.size());
+        assertTrue(!obsClient.completedParts.containsKey("broken"));
+    }
+
+    @Test
+    public void failedUploadIsResumedFromCheckpoint() throws Exception {
+        File file = createFile(3 * ONE_MB);
+        File checkpointDir = Files.createTempDirectory("upload-checkpoint").toFile();
+        obsClient.failingPart = 2;
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1).setPartRetryTimes(0)
+                .setCheckpointDir(checkpointDir.getAbsolutePath());
+
+        try {
+            new ConcurrentUploadChannel(obsClient, "bucket", "resumable", file, partUploadExecutor, options).upload();
+            fail("upload should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertTrue(obsClient.aborted.isEmpty());
+        assertTrue(UploadCheckpoint.locate(checkpointDir.getAbsolutePath(), "bucket", "resumable").isFile());
+
+        obsClient.failingPart = -1;
+        int uploadedBeforeResume = obsClient.uploadedParts.size();
+        new ConcurrentUploadChannel(obsClient, "bucket", "resumable", file, partUploadExecutor, options).upload();
+
+        assertEquals(3 - uploadedBeforeResume, obsClient.uploadedParts.size() - uploadedBeforeResume);
+        assertEquals(3, obsClient.completedParts.get("resumable").size());
+        assertTrue(!UploadCheckpoint.locate(checkpointDir.getAbsolutePath(), "bucket", "resumable").exists());
+    }
+
+    @Test
+    public void redownloadedFileIsResumedByContent() throws Exception {
+        File file = createFile(3 * ONE_MB);
+        File checkpointDir = Files.createTempDirectory("upload-checkpoint").toFile();
+        obsClient.failingPart = 2;
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1).setPartRetryTimes(0)
+                .setCheckpointDir(checkpointDir.getAbsolutePath());
+        try {
+            new ConcurrentUploadChannel(obsClient, "bucket", "redownloaded", file, partUploadExecutor, options)
+                    .upload();
+            fail("upload should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        Set<Integer> uploadedBefore = new HashSet<>();
+        for (Multipart part : obsClient.uploadedParts) {
+            uploadedBefore.add(part.getPartNumber());
+        }
+
+        //重新下载：修改时间不同，第一个分段的内容也变了
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[]{1, 2, 3});
+        }
+        assertTrue(file.setLastModified(file.lastModified() - 60000));
+        obsClient.failingPart = -1;
+        int uploadsBeforeResume = obsClient.uploadedParts.size();
+        new ConcurrentUploadChannel(obsClient, "bucket", "redownloaded", file, partUploadExecutor, options).upload();
+
+        uploadedBefore.remove(1);
+        assertEquals(3 - uploadedBefore.size(), obsClient.uploadedParts.size() - uploadsBeforeResume);
+        assertEquals(3, obsClient.completedParts.get("redownloaded").size());
+        assertTrue(obsClient.aborted.isEmpty());
+    }
+
+    @Test
+    public void expiredCheckpointIsAbortedAndStartedOver() throws Exception {
+        File file = createFile(3 * ONE_MB);
+        File checkpointDir = Files.createTempDirectory("upload-checkpoint").toFile();
+        obsClient.failingPart = 2;
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1).setPartRetryTimes(0)
+                .setCheckpointDir(checkpointDir.getAbsolutePath()).setCheckpointExpiryInSeconds(60);
+        try {
+            new ConcurrentUploadChannel(obsClient, "bucket", "expired", file, partUploadExecutor, options).upload();
+            fail("upload should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        File checkpointFile = UploadCheckpoint.locate(checkpointDir.getAbsolutePath(), "bucket", "expired");
+        assertTrue(checkpointFile.setLastModified(System.currentTimeMillis() - 120000));
+
+        obsClient.failingPart = -1;
+        int uploadsBeforeResume = obsClient.uploadedParts.size();
+        new ConcurrentUploadChannel(obsClient, "bucket", "expired", file, partUploadExecutor, options).upload();
+
+        assertEquals(1, obsClient.aborted.size());
+        assertEquals(3, obsClient.uploadedParts.size() - uploadsBeforeResume);
+        assertTrue(!checkpointFile.exists());
+    }
+
+    @Test
+    public void streamIsUploadedInParts() throws Exception {
+        byte[] data = new byte[3 * ONE_MB + 10];
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1).setParallelism(2);
+
+        new ConcurrentUploadChannel(obsClient, "bucket", "stream", new ByteArrayInputStream(data), data.length,
+                partUploadExecutor, options).upload();
+
+        assertEquals(4, obsClient.completedParts.get("stream").size());
+        assertEquals(10, (long) obsClient.uploadedParts.stream()
+                .filter(part -> part.getPartNumber() == 4).findFirst().get().getSize());
+        assertTrue(obsClient.aborted.isEmpty());
+    }
+
+    @Test
+    public void truncatedStreamIsAborted() throws Exception {
+        byte[] data = new byte[2 * ONE_MB];
+        MultipartUploadOptions options = new MultipartUploadOptions().setPartSizeInMB(1);
+
+        try {
+            new ConcurrentUploadChannel(obsClient, "bucket", "truncated", new ByteArrayInputStream(data),
+                    3 * ONE_MB, partUploadExecutor, options).upload();
+            fail("upload should fail");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(1, obsClient.aborted.size());
+        assertTrue(!obsClient.completedParts.containsKey("truncated"));
+    }
+
+    private static File createFile(long length) throws IOException {
+        File file = File.createTempFile("upload-channel", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+        return file;
+    }
+
+    private static class FakeObsClient extends ObsClient {
+        final Map<String, List<PartEtag>> completedParts = new ConcurrentHashMap<>();
+        final List<String> aborted = new CopyOnWriteArrayList<>();
+        final AtomicInteger failedAttempts = new AtomicInteger();
+        final List<Multipart> uploadedParts = new CopyOnWriteArrayList<>();
+        volatile int failingPart = -1;
+
+        FakeObsClient() {
+            super("ak", "sk", configuration());
+        }
+
+        private static ObsConfiguration configuration() {
+            ObsConfiguration configuration = new ObsConfiguration();
+            configuration.setEndPoint("127.0.0.1");
+            return configuration;
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setBucketName(request.getBucketName());
+            result.setObjectKey(request.getObjectKey());
+            result.setUploadId("upload-" + request.getObjectKey());
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            if (request.getPartNumber() == failingPart) {
+                failedAttempts.incrementAndGet();
+                throw new ObsException("injected failure");
+            }
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setEtag(request.getUploadId() + "-" + request.getPartNumber());
+            uploadedParts.add(new Multipart(request.getPartNumber(), new Date(), result.getEtag(),
+                    request.getPartSize()));
+            return result;
+        }
+
+        @Override
+        public ListPartsResult listParts(ListPartsRequest request) {
+            ListPartsResult result = new ListPartsResult();
+            result.setMultipartList(new ArrayList<>(uploadedParts));
+            result.setTruncated(false);
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            for (PartEtag partEtag : request.getPartEtag()) {
+                assertTrue(partEtag.geteTag().startsWith("upload-" + request.getObjectKey() + "-"));
+            }
+            completedParts.put(request.getObjectKey(), request.getPartEtag());
+            return null;
+        }
+
+        @Override
+        public HeaderResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted.add(request.getUploadId());
+            return null;
+        }
+    }
+}